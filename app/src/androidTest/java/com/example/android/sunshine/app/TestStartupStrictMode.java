@@ -0,0 +1,60 @@
+package com.example.android.sunshine.app;
+
+import android.os.StrictMode;
+import android.preference.PreferenceManager;
+import android.test.ActivityInstrumentationTestCase2;
+
+/**
+ * Launches {@link MainActivity} with a StrictMode policy on the main thread that crashes the
+ * process, and with it this test, on any disk access or account binder call made while the first
+ * frame is being produced.
+ *
+ * @author Gennady Denisov
+ */
+public class TestStartupStrictMode extends ActivityInstrumentationTestCase2<MainActivity> {
+
+    public TestStartupStrictMode() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // Default preferences are loaded once per process and every launch after the first one
+        // reads them from memory, so load them here to measure the steady state launch path.
+        PreferenceManager.getDefaultSharedPreferences(getInstrumentation().getTargetContext())
+                .getAll();
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                        .detectDiskReads()
+                        .detectDiskWrites()
+                        // SunshineSyncAdapter notes account binder calls as custom slow calls.
+                        .detectCustomSlowCalls()
+                        .penaltyLog()
+                        .penaltyDeath()
+                        .build());
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                StrictMode.setThreadPolicy(StrictMode.ThreadPolicy.LAX);
+            }
+        });
+        super.tearDown();
+    }
+
+    public void testLaunchDoesNoDiskOrAccountAccessOnMainThread() {
+        MainActivity activity = getActivity();
+        assertNotNull(activity);
+        // Let the first frames, fragment inflation and loader callbacks run under the policy.
+        getInstrumentation().waitForIdleSync();
+        assertFalse("Error: MainActivity finished during launch", activity.isFinishing());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.sunshine.app.art;
+
+import android.graphics.Bitmap;
+import android.support.v4.graphics.BitmapCompat;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+public class TestArtBitmapCache extends AndroidTestCase {
+    // Condition ids of a 14 day forecast, covering six distinct art.
+    private static final int[] FORTNIGHT = {
+            800, 801, 802, 500, 501, 800, 600, 601, 200, 800, 803, 804, 500, 801
+    };
+
+    private static final int DISTINCT_ART = 6;
+
+    private int mIconSize;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mIconSize = mContext.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    public void testRefreshDecodesOncePerCondition() {
+        ArtBitmapCache cache = new ArtBitmapCache(mContext, 1024 * 1024);
+        // Two refreshes of a 14 row widget.
+        for (int refresh = 0; refresh < 2; refresh++) {
+            for (int weatherId : FORTNIGHT) {
+                assertNotNull(cache.getLocalArt(weatherId, mIconSize));
+            }
+        }
+        assertEquals("Error: Each distinct art should be decoded exactly once",
+                DISTINCT_ART, cache.getDecodeCount());
+    }
+
+    public void testBitmapsAreDownsampledToTheRequestedSize() {
+        ArtBitmapCache cache = new ArtBitmapCache(mContext, 1024 * 1024);
+        Bitmap art = cache.getLocalArt(800, mIconSize);
+        assertTrue("Error: Art larger than requested",
+                Math.max(art.getWidth(), art.getHeight()) <= mIconSize);
+        assertTrue("Error: Art uses more memory than an ARGB square of the requested size",
+                BitmapCompat.getAllocationByteCount(art) <= mIconSize * mIconSize * 4);
+    }
+
+    public void testLocalArtIsDecodedOncePerSize() {
+        ArtBitmapCache cache = new ArtBitmapCache(mContext, 1024 * 1024);
+        Bitmap art = cache.getLocalArt(500, mIconSize);
+        assertNotNull(art);
+        assertTrue(Math.max(art.getWidth(), art.getHeight()) <= mIconSize);
+        assertSame(art, cache.getLocalArt(501, mIconSize));
+        assertEquals(1, cache.getDecodeCount());
+        assertNull(cache.getLocalArt(-1, mIconSize));
+    }
+
+    public void testCacheStaysWithinBudget() {
+        // Room for only a couple of list icons.
+        int budget = mIconSize * mIconSize * 4 * 2;
+        ArtBitmapCache cache = new ArtBitmapCache(mContext, budget);
+        for (int weatherId : FORTNIGHT) {
+            cache.getLocalArt(weatherId, mIconSize);
+            cache.getLocalArt(weatherId, mIconSize * 2);
+            assertTrue("Error: Cache exceeded its budget: " + cache.getSizeBytes() + " > " + budget,
+                    cache.getSizeBytes() <= budget);
+        }
+    }
+
+    public void testDefaultBudget() {
+        ArtBitmapCache cache = ArtBitmapCache.getInstance(mContext);
+        assertTrue(cache.getBudgetBytes() > 0);
+        assertTrue("Error: Default budget should be at most 4 MiB",
+                cache.getBudgetBytes() <= 4 * 1024 * 1024);
+        assertTrue(cache.getSizeBytes() <= cache.getBudgetBytes());
+    }
+
+    public void testInSampleSize() {
+        assertEquals(1, ArtBitmapCache.calculateInSampleSize(100, 100, 100));
+        assertEquals(1, ArtBitmapCache.calculateInSampleSize(199, 100, 100));
+        assertEquals(2, ArtBitmapCache.calculateInSampleSize(200, 100, 100));
+        assertEquals(4, ArtBitmapCache.calculateInSampleSize(480, 480, 120));
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.android.sunshine.app.art;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+
+public class TestArtPackCache extends AndroidTestCase {
+
+    public void testSizeBuckets() {
+        ArtPackCache cache = new ArtPackCache(mContext,
+                new File(mContext.getCacheDir(), "test_art"), new int[]{288, 120, 96, 120});
+        assertEquals(96, cache.getSizeBucket(1));
+        assertEquals(96, cache.getSizeBucket(96));
+        assertEquals(120, cache.getSizeBucket(97));
+        assertEquals(288, cache.getSizeBucket(200));
+        // Never upscale beyond the largest stored size.
+        assertEquals(288, cache.getSizeBucket(1000));
+    }
+
+    public void testEveryConditionMapsToAnArtName() {
+        int[] weatherIds = {200, 300, 500, 511, 520, 600, 701, 781, 800, 801, 804};
+        for (int weatherId : weatherIds) {
+            String artName = Utility.getArtNameForWeatherCondition(weatherId);
+            assertNotNull("Error: No art for " + weatherId, artName);
+            boolean known = false;
+            for (String name : Utility.ART_NAMES) {
+                known |= name.equals(artName);
+            }
+            assertTrue("Error: " + artName + " is not prefetched", known);
+        }
+    }
+
+    public void testArtUrlUsesArtName() {
+        assertTrue(Utility.getArtUrlForWeatherCondition(mContext, 800).contains("art_clear"));
+        assertNull(Utility.getArtUrlForWeatherCondition(mContext, 0));
+    }
+}
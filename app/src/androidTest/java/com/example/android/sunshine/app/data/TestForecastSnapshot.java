@@ -0,0 +1,153 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+    public static final String LOG_TAG = TestForecastSnapshot.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int TIMING_RUNS = 20;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        ForecastSnapshot.delete(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ForecastSnapshot.delete(mContext);
+        super.tearDown();
+    }
+
+    private void insertForecast() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] values = new ContentValues[DAYS];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < DAYS; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationRowId);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE, now + i * 24L * 60 * 60 * 1000);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+    }
+
+    public void testRoundTripMatchesProvider() {
+        insertForecast();
+        assertTrue("Error: Snapshot was not written",
+                ForecastSnapshot.writeFromProvider(mContext, TestUtilities.TEST_LOCATION));
+
+        ForecastSnapshot snapshot = ForecastSnapshot.read(mContext);
+        assertNotNull("Error: Snapshot could not be read back", snapshot);
+        assertEquals(TestUtilities.TEST_LOCATION, snapshot.getLocationSetting());
+        assertEquals(DAYS, snapshot.getCount());
+
+        // Same columns as the snapshot, with the id qualified since the provider joins two tables.
+        String[] projection = ForecastSnapshot.COLUMNS.clone();
+        projection[0] = WeatherContract.WeatherEntry.TABLE_NAME + "." + projection[0];
+
+        Cursor snapshotCursor = snapshot.toCursor(System.currentTimeMillis());
+        Cursor providerCursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        TestUtilities.TEST_LOCATION, System.currentTimeMillis()),
+                projection, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        assertNotNull(providerCursor);
+        assertEquals(providerCursor.getCount(), snapshotCursor.getCount());
+        while (providerCursor.moveToNext()) {
+            assertTrue(snapshotCursor.moveToNext());
+            for (int column = 0; column < ForecastSnapshot.COLUMNS.length; column++) {
+                assertEquals("Error: Mismatch in column " + ForecastSnapshot.COLUMNS[column],
+                        providerCursor.getString(column), snapshotCursor.getString(column));
+            }
+        }
+        providerCursor.close();
+        snapshotCursor.close();
+    }
+
+    public void testCorruptSnapshotIsIgnored() throws Exception {
+        FileOutputStream out = new FileOutputStream(ForecastSnapshot.getFile(mContext));
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        out.close();
+        assertNull("Error: Corrupt snapshot should be ignored", ForecastSnapshot.read(mContext));
+    }
+
+    public void testCorruptRowCountIsIgnored() throws Exception {
+        insertForecast();
+        ForecastSnapshot.writeFromProvider(mContext, TestUtilities.TEST_LOCATION);
+        ByteBuffer buffer = readFile();
+        // The row count follows magic, version, written at, location and coordinates.
+        int countOffset = 4 + 4 + 8 + 2 + (buffer.getShort(16) & 0xffff) + 8 + 8;
+        assertEquals(DAYS, buffer.getInt(countOffset));
+
+        buffer.putInt(countOffset, Integer.MAX_VALUE);
+        assertNull("Error: Huge row count should be rejected", ForecastSnapshot.parse(buffer));
+        buffer.rewind();
+        buffer.putInt(countOffset, -1);
+        assertNull("Error: Negative row count should be rejected", ForecastSnapshot.parse(buffer));
+        buffer.rewind();
+        int rowBytes = buffer.capacity() - countOffset - 4;
+        buffer.putInt(countOffset, rowBytes / ForecastSnapshot.MIN_ROW_BYTES + 1);
+        assertNull("Error: More rows than the file can hold should be rejected",
+                ForecastSnapshot.parse(buffer));
+    }
+
+    private ByteBuffer readFile() throws Exception {
+        FileInputStream in = new FileInputStream(ForecastSnapshot.getFile(mContext));
+        byte[] bytes = new byte[(int) ForecastSnapshot.getFile(mContext).length()];
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /*
+        Compares reading the snapshot against opening the database and running the forecast join,
+        which is what the first frame waits for without a snapshot.
+     */
+    public void testSnapshotReadTiming() {
+        insertForecast();
+        ForecastSnapshot.writeFromProvider(mContext, TestUtilities.TEST_LOCATION);
+
+        long snapshotNanos = 0;
+        long databaseNanos = 0;
+        for (int i = 0; i < TIMING_RUNS; i++) {
+            long start = System.nanoTime();
+            Cursor cursor = ForecastSnapshot.read(mContext).toCursor(System.currentTimeMillis());
+            cursor.getCount();
+            snapshotNanos += System.nanoTime() - start;
+            cursor.close();
+
+            // A fresh helper forces the database to be opened, as on a cold start.
+            start = System.nanoTime();
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            cursor = helper.getReadableDatabase().rawQuery("SELECT * FROM "
+                    + WeatherContract.WeatherEntry.TABLE_NAME + " INNER JOIN "
+                    + WeatherContract.LocationEntry.TABLE_NAME + " ON "
+                    + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = "
+                    + WeatherContract.LocationEntry.TABLE_NAME + "."
+                    + WeatherContract.LocationEntry._ID, null);
+            cursor.getCount();
+            databaseNanos += System.nanoTime() - start;
+            cursor.close();
+            helper.close();
+        }
+        Log.i(LOG_TAG, "Average snapshot read " + snapshotNanos / TIMING_RUNS / 1000
+                + "us, database open and query " + databaseNanos / TIMING_RUNS / 1000 + "us");
+    }
+}
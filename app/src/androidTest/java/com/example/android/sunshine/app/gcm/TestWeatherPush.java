@@ -0,0 +1,223 @@
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+
+public class TestWeatherPush extends AndroidTestCase {
+    private static final long DAY_IN_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int FORECAST_DAYS = 3;
+
+    private long mToday;
+
+    /**
+     * Stands in for the server: builds the data bundle of a push message.
+     */
+    static class PushSender {
+        private final JSONObject mMessage = new JSONObject();
+        private final JSONArray mDays = new JSONArray();
+
+        PushSender(String location) throws JSONException {
+            mMessage.put(WeatherDelta.KEY_LOCATION, location);
+        }
+
+        PushSender day(long date, Object... fields) throws JSONException {
+            JSONObject day = new JSONObject();
+            day.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+            for (int i = 0; i < fields.length; i += 2) {
+                day.put((String) fields[i], fields[i + 1]);
+            }
+            mDays.put(day);
+            return this;
+        }
+
+        Bundle send() throws JSONException {
+            mMessage.put(WeatherDelta.KEY_DAYS, mDays);
+            Bundle data = new Bundle();
+            data.putString(WeatherPushHandler.EXTRA_DATA, mMessage.toString());
+            return data;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mToday = WeatherContract.normalizeDate(System.currentTimeMillis());
+        deleteForecast();
+        insertForecast();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteForecast();
+        super.tearDown();
+    }
+
+    private void deleteForecast() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private void insertForecast() {
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(mContext));
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, location);
+        assertNotNull(locationUri);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] values = new ContentValues[FORECAST_DAYS];
+        for (int i = 0; i < FORECAST_DAYS; i++) {
+            values[i] = new ContentValues();
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE, mToday + i * DAY_IN_MILLIS);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1010);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 20);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 10);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+    }
+
+    private int apply(Bundle data) throws JSONException {
+        return WeatherPushHandler.apply(mContext,
+                WeatherDelta.parse(data.getString(WeatherPushHandler.EXTRA_DATA)));
+    }
+
+    private Cursor queryDay(long date) {
+        return mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                        Utility.getPreferredLocation(mContext), date),
+                new String[]{
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+                },
+                null, null, null);
+    }
+
+    public void testChangedFieldsAreApplied() throws JSONException {
+        Bundle data = new PushSender(Utility.getPreferredLocation(mContext))
+                .day(mToday + DAY_IN_MILLIS,
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 501,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 14.5)
+                .send();
+        assertEquals(WeatherPushHandler.APPLIED, apply(data));
+
+        Cursor cursor = queryDay(mToday + DAY_IN_MILLIS);
+        assertTrue("Error: Pushed day is missing", cursor.moveToFirst());
+        assertEquals(501, cursor.getInt(0));
+        assertEquals(14.5, cursor.getDouble(1));
+        assertEquals("Error: Fields missing from the delta should be kept",
+                10.0, cursor.getDouble(2));
+        cursor.close();
+    }
+
+    public void testCompleteNewDayIsInserted() throws JSONException {
+        long date = mToday + FORECAST_DAYS * DAY_IN_MILLIS;
+        Bundle data = new PushSender(Utility.getPreferredLocation(mContext))
+                .day(date,
+                        WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 600,
+                        WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Snow",
+                        WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, -5,
+                        WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 1,
+                        WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 90,
+                        WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1000,
+                        WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3,
+                        WeatherContract.WeatherEntry.COLUMN_DEGREES, 270)
+                .send();
+        assertEquals(WeatherPushHandler.APPLIED, apply(data));
+
+        Cursor cursor = queryDay(date);
+        assertTrue("Error: Complete new day should be inserted", cursor.moveToFirst());
+        assertEquals(600, cursor.getInt(0));
+        cursor.close();
+    }
+
+    public void testPartialNewDayNeedsSync() throws JSONException {
+        long date = mToday + FORECAST_DAYS * DAY_IN_MILLIS;
+        Bundle data = new PushSender(Utility.getPreferredLocation(mContext))
+                .day(mToday, WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 22)
+                .day(date, WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 600)
+                .send();
+        assertEquals(WeatherPushHandler.INCOMPLETE, apply(data));
+
+        Cursor cursor = queryDay(date);
+        assertFalse("Error: Partial new day should not be inserted", cursor.moveToFirst());
+        cursor.close();
+        cursor = queryDay(mToday);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Known days of the delta should still be applied",
+                22.0, cursor.getDouble(1));
+        cursor.close();
+    }
+
+    public void testOtherLocationIsIgnored() throws JSONException {
+        Bundle data = new PushSender("not-" + Utility.getPreferredLocation(mContext))
+                .day(mToday, WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 200)
+                .send();
+        assertEquals(WeatherPushHandler.IGNORED, apply(data));
+
+        Cursor cursor = queryDay(mToday);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(800, cursor.getInt(0));
+        cursor.close();
+    }
+
+    public void testMergedBurstKeepsLatestFields() throws JSONException {
+        String location = Utility.getPreferredLocation(mContext);
+        WeatherDelta first = WeatherDelta.parse(new JSONObject()
+                .put(WeatherDelta.KEY_LOCATION, location)
+                .put(WeatherDelta.KEY_SEQ, 1)
+                .put(WeatherDelta.KEY_DAYS, new JSONArray().put(new JSONObject()
+                        .put(WeatherContract.WeatherEntry.COLUMN_DATE, mToday)
+                        .put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 500)
+                        .put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 15)))
+                .toString());
+        WeatherDelta second = WeatherDelta.parse(new JSONObject()
+                .put(WeatherDelta.KEY_LOCATION, location)
+                .put(WeatherDelta.KEY_SEQ, 2)
+                .put(WeatherDelta.KEY_DAYS, new JSONArray().put(new JSONObject()
+                        .put(WeatherContract.WeatherEntry.COLUMN_DATE, mToday)
+                        .put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 501)))
+                .toString());
+        WeatherDelta merged = WeatherDelta.merge(location, Arrays.asList(first, second));
+        assertEquals(2, merged.getSeq());
+        assertEquals(1, merged.getDays().size());
+        assertEquals(WeatherPushHandler.APPLIED, WeatherPushHandler.apply(mContext, merged));
+
+        Cursor cursor = queryDay(mToday);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(501, cursor.getInt(0));
+        assertEquals(15.0, cursor.getDouble(1));
+        cursor.close();
+    }
+
+    public void testLegacyAlertNeedsSync() throws JSONException {
+        JSONObject alert = new JSONObject();
+        alert.put("weather", "Storm");
+        alert.put(WeatherDelta.KEY_LOCATION, Utility.getPreferredLocation(mContext));
+        assertEquals(WeatherPushHandler.INCOMPLETE,
+                WeatherPushHandler.apply(mContext, WeatherDelta.parse(alert.toString())));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.sunshine.app.muzei;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+public class TestMuzeiArtworkStore extends AndroidTestCase {
+    private File mDirectory;
+    private File mLogFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(mContext.getCacheDir(), "test_muzei");
+        deleteDirectory();
+        assertTrue(mDirectory.mkdirs());
+        mLogFile = new File(mContext.getCacheDir(), MuzeiPublishLog.FILE_NAME);
+        //noinspection ResultOfMethodCallIgnored
+        mLogFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        //noinspection ResultOfMethodCallIgnored
+        mLogFile.delete();
+        super.tearDown();
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.delete();
+    }
+
+    private File createArtwork(String name, long lastModified) throws Exception {
+        File file = new File(mDirectory, name);
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+        assertTrue(file.setLastModified(lastModified));
+        return file;
+    }
+
+    public void testOnlyStoredArtworkIsServed() throws Exception {
+        MuzeiArtworkStore store = new MuzeiArtworkStore(mContext, mDirectory);
+        File artwork = createArtwork("a.jpg", 1000);
+        assertEquals(artwork, store.getFile("a.jpg"));
+        assertNull(store.getFile("missing.jpg"));
+        assertNull("Error: Names outside the store should not be served",
+                store.getFile("../" + mDirectory.getName() + "/a.jpg"));
+        assertNull(store.getFile(null));
+    }
+
+    public void testTrimKeepsMostRecentlyUsed() throws Exception {
+        MuzeiArtworkStore store = new MuzeiArtworkStore(mContext, mDirectory);
+        // Roughly one second apart, file systems may not keep milliseconds
+        for (int i = 0; i < MuzeiArtworkStore.MAX_ARTWORK + 2; i++) {
+            createArtwork(i + ".jpg", 100000L + i * 1000L);
+        }
+        File keep = new File(mDirectory, "0.jpg");
+        store.trim(keep);
+        assertTrue("Error: The published artwork should be kept", keep.exists());
+        assertFalse("Error: The least recently used artwork should be removed",
+                new File(mDirectory, "1.jpg").exists());
+        assertTrue(new File(mDirectory, (MuzeiArtworkStore.MAX_ARTWORK + 1) + ".jpg").exists());
+    }
+
+    public void testArtworkNameIdentifiesTheImage() {
+        String rain = "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg";
+        String snow = "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG";
+        assertEquals(MuzeiArtworkStore.getArtworkName(rain),
+                MuzeiArtworkStore.getArtworkName(rain));
+        assertFalse(MuzeiArtworkStore.getArtworkName(rain)
+                .equals(MuzeiArtworkStore.getArtworkName(snow)));
+    }
+
+    public void testInSampleSizeCoversTheScreen() {
+        assertEquals(1, MuzeiArtworkStore.calculateInSampleSize(1920, 1080, 1920));
+        assertEquals(2, MuzeiArtworkStore.calculateInSampleSize(5184, 3888, 1920));
+        assertEquals(4, MuzeiArtworkStore.calculateInSampleSize(8000, 6000, 1280));
+    }
+
+    public void testProviderServesPublishedArtwork() throws Exception {
+        MuzeiArtworkStore store = MuzeiArtworkStore.getInstance(mContext);
+        File directory = new File(mContext.getFilesDir(), MuzeiArtworkStore.DIRECTORY);
+        assertTrue(directory.isDirectory() || directory.mkdirs());
+        File artwork = new File(directory, "test.jpg");
+        FileOutputStream out = new FileOutputStream(artwork);
+        out.write(new byte[]{4, 5, 6});
+        out.close();
+        try {
+            InputStream in = mContext.getContentResolver().openInputStream(store.publish(artwork));
+            assertNotNull(in);
+            assertEquals(4, in.read());
+            in.close();
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            artwork.delete();
+        }
+    }
+
+    public void testPublishLogIsBounded() {
+        for (int i = 0; i < MuzeiPublishLog.MAX_LINES + 10; i++) {
+            MuzeiPublishLog.append(mLogFile, "line " + i);
+        }
+        List<String> lines = MuzeiPublishLog.read(mLogFile);
+        assertEquals(MuzeiPublishLog.MAX_LINES, lines.size());
+        assertEquals("line " + (MuzeiPublishLog.MAX_LINES + 9), lines.get(lines.size() - 1));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+public class TestSyncJournal extends AndroidTestCase {
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(mContext.getCacheDir(), SyncJournal.FILE_NAME);
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        super.tearDown();
+    }
+
+    private static SyncJournal.Entry createEntry(int totalMs) {
+        SyncJournal.Entry entry = new SyncJournal.Entry(SyncJournal.TRIGGER_MANUAL, "94043");
+        entry.setHttpStatus(200);
+        entry.setOutcome(SunshineSyncAdapter.LOCATION_STATUS_OK);
+        entry.set(SyncJournal.METRIC_TOTAL_MS, totalMs);
+        entry.set(SyncJournal.METRIC_ROWS, 14);
+        return entry;
+    }
+
+    public void testRoundTrip() {
+        SyncJournal.appendNow(mFile, createEntry(120));
+        SyncJournal.Entry failed = createEntry(30);
+        failed.setOutcome(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        SyncJournal.appendNow(mFile, failed);
+
+        List<SyncJournal.Entry> entries = SyncJournal.read(mFile);
+        assertEquals(2, entries.size());
+        SyncJournal.Entry first = entries.get(0);
+        assertEquals(SyncJournal.TRIGGER_MANUAL, first.getTrigger());
+        assertEquals("94043", first.getLocation());
+        assertEquals(200, first.getHttpStatus());
+        assertEquals(120, first.get(SyncJournal.METRIC_TOTAL_MS));
+        assertEquals(14, first.get(SyncJournal.METRIC_ROWS));
+        assertTrue(first.isSuccessful());
+        assertFalse(entries.get(1).isSuccessful());
+    }
+
+    public void testTruncatedTailIsDropped() throws Exception {
+        SyncJournal.appendNow(mFile, createEntry(120));
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        // A record header promising more bytes than follow.
+        out.write(new byte[]{0, 60, 1, 2, 3});
+        out.close();
+        assertEquals(1, SyncJournal.read(mFile).size());
+    }
+
+    public void testAppendAfterTruncatedTail() throws Exception {
+        SyncJournal.appendNow(mFile, createEntry(120));
+        SyncJournal.appendNow(mFile, createEntry(130));
+        FileOutputStream out = new FileOutputStream(mFile, true);
+        // Killed in the middle of the next record.
+        out.write(new byte[]{0, 60, 1, 2, 3});
+        out.close();
+
+        SyncJournal.appendNow(mFile, createEntry(140));
+        SyncJournal.appendNow(mFile, createEntry(150));
+        List<SyncJournal.Entry> entries = SyncJournal.read(mFile);
+        assertEquals(4, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(120 + 10 * i, entries.get(i).get(SyncJournal.METRIC_TOTAL_MS));
+            assertEquals("94043", entries.get(i).getLocation());
+        }
+    }
+
+    public void testJournalIsBounded() {
+        for (int i = 0; i < 5000; i++) {
+            SyncJournal.appendNow(mFile, createEntry(i));
+        }
+        assertTrue("Error: Journal exceeded its budget",
+                mFile.length() <= SyncJournal.MAX_BYTES + 256);
+        List<SyncJournal.Entry> entries = SyncJournal.read(mFile);
+        assertEquals("Error: Newest entry should be kept",
+                4999, entries.get(entries.size() - 1).get(SyncJournal.METRIC_TOTAL_MS));
+    }
+
+    public void testPercentiles() {
+        for (int i = 1; i <= 100; i++) {
+            SyncJournal.appendNow(mFile, createEntry(i));
+        }
+        SyncJournal.Summary summary = SyncJournal.summarize(SyncJournal.read(mFile), 1000);
+        assertEquals(100, summary.getCount());
+        assertEquals(0, summary.getFailures());
+        assertEquals(50, summary.getPercentile(SyncJournal.METRIC_TOTAL_MS, 50));
+        assertEquals(90, summary.getPercentile(SyncJournal.METRIC_TOTAL_MS, 90));
+        assertEquals(100, summary.getPercentile(SyncJournal.METRIC_TOTAL_MS, 100));
+
+        // Only the newest ten entries.
+        summary = SyncJournal.summarize(SyncJournal.read(mFile), 10);
+        assertEquals(91, summary.getPercentile(SyncJournal.METRIC_TOTAL_MS, 1));
+    }
+}
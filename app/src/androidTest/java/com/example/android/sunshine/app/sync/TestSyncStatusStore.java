@@ -0,0 +1,90 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestSyncStatusStore extends AndroidTestCase {
+    private File mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = new File(mContext.getCacheDir(), SyncStatusStore.FILE_NAME);
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testValuesArePersisted() {
+        SyncStatusStore store = new SyncStatusStore(mContext, mFile);
+        store.setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        store.setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_OK);
+        store.setLastNotification(1234L);
+        store.flush();
+
+        SyncStatusStore reloaded = new SyncStatusStore(mContext, mFile);
+        reloaded.flush();
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, reloaded.getLocationStatus());
+        assertEquals(1234L, reloaded.getLastNotification());
+    }
+
+    public void testReadRightAfterCreationSeesPersistedValues() {
+        SyncStatusStore store = new SyncStatusStore(mContext, mFile);
+        store.setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        store.setLastNotification(5678L);
+        store.flush();
+
+        // No flush(): the getters have to wait for the file themselves.
+        SyncStatusStore reloaded = new SyncStatusStore(mContext, mFile);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN,
+                reloaded.getLocationStatus());
+        assertEquals(5678L, reloaded.getLastNotification());
+    }
+
+    public void testSeededFromPreferences() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putInt(mContext.getString(R.string.pref_location_status_key),
+                        SunshineSyncAdapter.LOCATION_STATUS_INVALID)
+                .putLong(mContext.getString(R.string.pref_last_notification), 42L)
+                .commit();
+
+        SyncStatusStore store = new SyncStatusStore(mContext, mFile);
+        store.flush();
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, store.getLocationStatus());
+        assertEquals(42L, store.getLastNotification());
+        assertTrue("Error: Seeded values should be written to the store file", mFile.exists());
+        assertFalse("Error: Legacy preference should be removed",
+                PreferenceManager.getDefaultSharedPreferences(mContext)
+                        .contains(mContext.getString(R.string.pref_location_status_key)));
+    }
+
+    public void testListenerCalledOnMainThread() throws Exception {
+        SyncStatusStore store = new SyncStatusStore(mContext, mFile);
+        store.flush();
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean[] onMainThread = new boolean[1];
+        store.registerListener(new SyncStatusStore.OnSyncStatusChangedListener() {
+            @Override
+            public void onSyncStatusChanged(SyncStatusStore store) {
+                onMainThread[0] = Looper.myLooper() == Looper.getMainLooper();
+                latch.countDown();
+            }
+        });
+        store.setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID);
+        assertTrue("Error: Listener was not called", latch.await(5, TimeUnit.SECONDS));
+        assertTrue("Error: Listener should be called on the main thread", onMainThread[0]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import com.geaden.android.shunshine.shared.WeatherRequest;
+
+public class TestSendWeatherDataService extends AndroidTestCase {
+    private static final String PREFS_NAME = "test_wear_delivery";
+
+    private SharedPreferences mPrefs;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    private void deliver(long dataVersion, long contentChecksum) {
+        mPrefs.edit()
+                .putLong(SendWeatherDataService.PREF_DATA_VERSION, dataVersion)
+                .putLong(SendWeatherDataService.PREF_CONTENT_CHECKSUM, contentChecksum)
+                .commit();
+    }
+
+    public void testNothingDelivered() {
+        assertFalse("Error: Nothing was sent yet",
+                SendWeatherDataService.isDelivered(mPrefs, 1000L, 42L));
+        assertFalse("Error: Wearable without data should always get it",
+                SendWeatherDataService.isDelivered(mPrefs, WeatherRequest.NO_DATA_VERSION, -1L));
+    }
+
+    public void testDeliveredVersionIsNotModified() {
+        deliver(1000L, 42L);
+        assertTrue("Error: Wearable has the last payload sent",
+                SendWeatherDataService.isDelivered(mPrefs, 1000L, 42L));
+    }
+
+    public void testOtherVersionIsSent() {
+        deliver(1000L, 42L);
+        assertFalse("Error: Wearable has an older payload",
+                SendWeatherDataService.isDelivered(mPrefs, 900L, 42L));
+    }
+
+    public void testChangedContentIsSent() {
+        deliver(1000L, 42L);
+        assertFalse("Error: Forecast changed since it was sent",
+                SendWeatherDataService.isDelivered(mPrefs, 1000L, 43L));
+    }
+}
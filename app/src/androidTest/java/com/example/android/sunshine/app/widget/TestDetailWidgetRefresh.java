@@ -0,0 +1,107 @@
+package com.example.android.sunshine.app.widget;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+public class TestDetailWidgetRefresh extends AndroidTestCase {
+    public static final String LOG_TAG = TestDetailWidgetRefresh.class.getSimpleName();
+
+    // Condition ids of a 14 day forecast, covering six distinct conditions.
+    private static final int[] FORTNIGHT = {
+            800, 801, 802, 500, 501, 800, 600, 601, 200, 800, 803, 804, 500, 801
+    };
+
+    private static final int TIMING_RUNS = 10;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteForecast();
+        insertForecast();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteForecast();
+        super.tearDown();
+    }
+
+    private void deleteForecast() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private void insertForecast() {
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                Utility.getPreferredLocation(mContext));
+        location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(
+                WeatherContract.LocationEntry.CONTENT_URI, location);
+        assertNotNull(locationUri);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] values = new ContentValues[FORTNIGHT.length];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < FORTNIGHT.length; i++) {
+            values[i] = new ContentValues();
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationRowId);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DATE, now + i * 24L * 60 * 60 * 1000);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 1.1);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1.3);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            values[i].put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, FORTNIGHT[i]);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, values);
+    }
+
+    public void testRowsArePreparedOnRefresh() {
+        DetailWidgetRemoteViewsFactory factory = new DetailWidgetRemoteViewsFactory(mContext);
+        factory.onCreate();
+        factory.onDataSetChanged();
+        assertEquals(FORTNIGHT.length, factory.getCount());
+        for (int position = 0; position < factory.getCount(); position++) {
+            assertNotNull("Error: Row " + position + " was not prepared",
+                    factory.getViewAt(position));
+        }
+        assertNull(factory.getViewAt(FORTNIGHT.length));
+        factory.onDestroy();
+        assertEquals(0, factory.getCount());
+    }
+
+    public void testRefreshTime() {
+        DetailWidgetRemoteViewsFactory factory = new DetailWidgetRemoteViewsFactory(mContext);
+        factory.onCreate();
+        // The first refresh pays for the art decodes, later ones mostly hit the bitmap cache.
+        long start = System.nanoTime();
+        factory.onDataSetChanged();
+        long coldUs = (System.nanoTime() - start) / 1000;
+
+        long totalUs = 0;
+        for (int run = 0; run < TIMING_RUNS; run++) {
+            start = System.nanoTime();
+            factory.onDataSetChanged();
+            for (int position = 0; position < factory.getCount(); position++) {
+                factory.getViewAt(position);
+            }
+            totalUs += (System.nanoTime() - start) / 1000;
+        }
+        Log.i(LOG_TAG, "Detail widget refresh of " + FORTNIGHT.length + " rows: cold "
+                + coldUs + "us, warm " + totalUs / TIMING_RUNS + "us on average");
+        assertTrue("Error: Refresh should not wait much longer than the art deadline",
+                coldUs / 1000 < DetailWidgetRemoteViewsFactory.ART_DEADLINE_MS + 1000);
+        factory.onDestroy();
+    }
+}
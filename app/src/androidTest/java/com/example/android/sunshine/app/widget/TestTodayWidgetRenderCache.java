@@ -0,0 +1,55 @@
+package com.example.android.sunshine.app.widget;
+
+import android.test.AndroidTestCase;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.R;
+
+public class TestTodayWidgetRenderCache extends AndroidTestCase {
+
+    public void testUnchangedContentIsNotRenderedAgain() {
+        TodayWidgetRenderCache cache = new TodayWidgetRenderCache();
+        int dataHash = TodayWidgetRenderCache.hashData(800, "Clear", "21°", "8°");
+        TodayWidgetRenderCache.Key key =
+                new TodayWidgetRenderCache.Key(R.layout.widget_today, dataHash, true);
+        assertFalse(cache.isRendered(1, key));
+        cache.setRendered(1, key);
+        assertTrue(cache.isRendered(1,
+                new TodayWidgetRenderCache.Key(R.layout.widget_today, dataHash, true)));
+        assertFalse("Error: Other widgets should still be rendered", cache.isRendered(2, key));
+    }
+
+    public void testChangesAreRendered() {
+        TodayWidgetRenderCache cache = new TodayWidgetRenderCache();
+        int dataHash = TodayWidgetRenderCache.hashData(800, "Clear", "21°", "8°");
+        cache.setRendered(1, new TodayWidgetRenderCache.Key(R.layout.widget_today, dataHash, true));
+
+        assertFalse("Error: New data should be rendered", cache.isRendered(1,
+                new TodayWidgetRenderCache.Key(R.layout.widget_today,
+                        TodayWidgetRenderCache.hashData(800, "Clear", "22°", "8°"), true)));
+        assertFalse("Error: A resize into another bucket should be rendered", cache.isRendered(1,
+                new TodayWidgetRenderCache.Key(R.layout.widget_today_large, dataHash, true)));
+        assertFalse("Error: A change of units should be rendered", cache.isRendered(1,
+                new TodayWidgetRenderCache.Key(R.layout.widget_today, dataHash, false)));
+
+        cache.forget(new int[]{1});
+        assertFalse("Error: Forgotten widgets should be rendered", cache.isRendered(1,
+                new TodayWidgetRenderCache.Key(R.layout.widget_today, dataHash, true)));
+    }
+
+    public void testViewsAreSharedPerBucket() {
+        TodayWidgetRenderCache cache = new TodayWidgetRenderCache();
+        int dataHash = TodayWidgetRenderCache.hashData(500, "Rain", "12°", "7°");
+        TodayWidgetRenderCache.Key key =
+                new TodayWidgetRenderCache.Key(R.layout.widget_today_small, dataHash, true);
+        assertNull(cache.getViews(key));
+        RemoteViews views = new RemoteViews(mContext.getPackageName(), R.layout.widget_today_small);
+        cache.putViews(key, views);
+        assertSame(views, cache.getViews(
+                new TodayWidgetRenderCache.Key(R.layout.widget_today_small, dataHash, true)));
+        assertNull("Error: Views of stale data should not be reused", cache.getViews(
+                new TodayWidgetRenderCache.Key(R.layout.widget_today_small, dataHash + 1, true)));
+        assertNull(cache.getViews(
+                new TodayWidgetRenderCache.Key(R.layout.widget_today, dataHash, true)));
+    }
+}
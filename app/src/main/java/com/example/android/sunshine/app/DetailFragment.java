@@ -37,10 +37,14 @@ import android.view.ViewParent;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.art.ArtPackCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.File;
+
 /**
  * A placeholder fragment containing a simple view.
  */
@@ -203,10 +207,13 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             if ( Utility.usingLocalGraphics(getActivity()) ) {
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
             } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                // Use weather art image, from the art cache once the pack has been prefetched
+                File cachedArt = ArtPackCache.getInstance(getActivity()).getArtFile(weatherId,
+                        getResources().getDimensionPixelSize(R.dimen.today_icon));
+                DrawableRequestBuilder<?> request = cachedArt != null
+                        ? Glide.with(this).load(cachedArt)
+                        : Glide.with(this).load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId));
+                request.error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
             }
@@ -29,9 +29,13 @@ import android.widget.Checkable;
 import android.widget.ImageView;
 import android.widget.TextView;
 
+import com.bumptech.glide.DrawableRequestBuilder;
 import com.bumptech.glide.Glide;
+import com.example.android.sunshine.app.art.ArtPackCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.io.File;
+
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
@@ -142,9 +146,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
-                    .error(defaultImage)
+            // Prefer the prefetched art, only going to the network until the pack is cached
+            int iconSize = mContext.getResources().getDimensionPixelSize(
+                    useLongToday ? R.dimen.today_icon : R.dimen.list_icon);
+            File cachedArt = ArtPackCache.getInstance(mContext).getArtFile(weatherId, iconSize);
+            DrawableRequestBuilder<?> request = cachedArt != null
+                    ? Glide.with(mContext).load(cachedArt)
+                    : Glide.with(mContext).load(Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+            request.error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
         }
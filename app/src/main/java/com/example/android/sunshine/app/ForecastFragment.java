@@ -18,13 +18,12 @@ package com.example.android.sunshine.app;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.SystemClock;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
@@ -47,12 +46,14 @@ import android.widget.TextView;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStatusStore;
+import com.example.android.sunshine.app.trace.StartupTrace;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
 public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
-        SharedPreferences.OnSharedPreferenceChangeListener {
+        SyncStatusStore.OnSyncStatusChangedListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -61,9 +62,16 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
 
+    // Whether the database loader has delivered, after which the snapshot is no longer shown.
+    private boolean mDatabaseLoaded;
+    // Used to log the time to the first frame showing forecast data.
+    private long mCreatedAt;
+    private boolean mFirstPopulatedFrameLogged;
+
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
+    private static final int SNAPSHOT_LOADER = 1;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
     private static final String[] FORECAST_COLUMNS = {
@@ -114,21 +122,20 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        mCreatedAt = SystemClock.elapsedRealtime();
         // Add this line in order for this fragment to handle menu events.
         setHasOptionsMenu(true);
     }
 
     @Override
     public void onResume() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        sp.registerOnSharedPreferenceChangeListener(this);
+        SyncStatusStore.getInstance(getActivity()).registerListener(this);
         super.onResume();
     }
 
     @Override
     public void onPause() {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
-        sp.unregisterOnSharedPreferenceChangeListener(this);
+        SyncStatusStore.getInstance(getActivity()).unregisterListener(this);
         super.onPause();
     }
 
@@ -169,8 +176,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     @Override
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
-
-
+        StartupTrace.begin("ForecastFragment.onCreateView");
         View rootView = inflater.inflate(R.layout.fragment_main, container, false);
 
         // Get a reference to the RecyclerView, and attach this adapter to it.
@@ -249,6 +255,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
 
+        StartupTrace.end();
         return rootView;
     }
 
@@ -260,6 +267,10 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if (mHoldForTransition) {
             getActivity().supportPostponeEnterTransition();
         }
+        // The snapshot is only worth reading while nothing is shown yet, i.e. on a fresh start.
+        if (savedInstanceState == null && getResources().getBoolean(R.bool.use_forecast_snapshot)) {
+            getLoaderManager().initLoader(SNAPSHOT_LOADER, null, this);
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
@@ -304,8 +315,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
-        // This is called when a new Loader needs to be created.  This
-        // fragment only uses one loader, so we don't care about checking the id.
+        // This is called when a new Loader needs to be created.
+        String locationSetting = Utility.getPreferredLocation(getActivity());
+        if (i == SNAPSHOT_LOADER) {
+            return new ForecastSnapshotLoader(getActivity(), locationSetting);
+        }
 
         // To only show current and future dates, filter the query to return weather only for
         // dates after or including today.
@@ -313,7 +327,6 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // Sort order:  Ascending, by date.
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
-        String locationSetting = Utility.getPreferredLocation(getActivity());
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
@@ -327,8 +340,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        if (loader.getId() == SNAPSHOT_LOADER) {
+            // Show the snapshot only until the database catches up.
+            if (!mDatabaseLoaded && null != data && data.getCount() > 0) {
+                mForecastAdapter.swapCursor(data);
+                logFirstPopulatedFrame("snapshot");
+            }
+            return;
+        }
+        if (!mDatabaseLoaded) {
+            mDatabaseLoaded = true;
+            getLoaderManager().destroyLoader(SNAPSHOT_LOADER);
+        }
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
+        if (data.getCount() > 0) {
+            logFirstPopulatedFrame("database");
+        }
         if (data.getCount() == 0) {
             getActivity().supportStartPostponedEnterTransition();
         } else {
@@ -374,6 +402,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     }
 
 
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private void reportFullyDrawn() {
+        Activity activity = getActivity();
+        if (null != activity) {
+            activity.reportFullyDrawn();
+        }
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -384,7 +420,37 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
-        mForecastAdapter.swapCursor(null);
+        // The snapshot loader is reset once the database has delivered its own cursor.
+        if (loader.getId() == FORECAST_LOADER) {
+            mForecastAdapter.swapCursor(null);
+        }
+    }
+
+    /**
+     * Logs the time from fragment creation to the first frame drawn with forecast rows.
+     *
+     * @param source where the rows came from, either the snapshot or the database.
+     */
+    private void logFirstPopulatedFrame(final String source) {
+        if (mFirstPopulatedFrameLogged) {
+            return;
+        }
+        mFirstPopulatedFrameLogged = true;
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                if (mRecyclerView.getChildCount() > 0) {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    StartupTrace.mark("ForecastFragment.firstPopulatedFrame." + source,
+                            (SystemClock.elapsedRealtime() - mCreatedAt) * 1000);
+                    // Lets "am start -W" and the platform launch metrics see the populated list.
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                        reportFullyDrawn();
+                    }
+                }
+                return true;
+            }
+        });
     }
 
     public void setUseTodayLayout(boolean useTodayLayout) {
@@ -430,9 +496,7 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     }
 
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
-        if (key.equals(getString(R.string.pref_location_status_key))) {
-            updateEmptyView();
-        }
+    public void onSyncStatusChanged(SyncStatusStore store) {
+        updateEmptyView();
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+
+/**
+ * Loads the forecast list from the {@link ForecastSnapshot} so the first frame can be populated
+ * while the database is still being opened by the regular {@link android.support.v4.content.CursorLoader}.
+ * Delivers null if there is no usable snapshot for the given location.
+ *
+ * @author Gennady Denisov
+ */
+class ForecastSnapshotLoader extends AsyncTaskLoader<Cursor> {
+    private final String mLocationSetting;
+    private Cursor mCursor;
+
+    ForecastSnapshotLoader(Context context, String locationSetting) {
+        super(context);
+        mLocationSetting = locationSetting;
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        ForecastSnapshot snapshot = ForecastSnapshot.read(getContext());
+        if (null == snapshot || !snapshot.getLocationSetting().equals(mLocationSetting)) {
+            return null;
+        }
+        return snapshot.toCursor(System.currentTimeMillis());
+    }
+
+    @Override
+    public void deliverResult(Cursor cursor) {
+        mCursor = cursor;
+        if (isStarted()) {
+            super.deliverResult(cursor);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mCursor != null) {
+            deliverResult(mCursor);
+        } else {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        // Snapshot cursors are in-memory, so there is nothing to close.
+        mCursor = null;
+    }
+}
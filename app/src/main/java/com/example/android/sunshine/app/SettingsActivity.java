@@ -29,8 +29,10 @@ import android.text.TextUtils;
 import android.view.View;
 import android.widget.ImageView;
 
+import com.example.android.sunshine.app.art.ArtPackCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStatusStore;
 import com.example.android.sunshine.app.wear.SendWeatherDataService;
 import com.google.android.gms.location.places.Place;
 import com.google.android.gms.location.places.ui.PlacePicker;
@@ -45,7 +47,8 @@ import com.google.android.gms.maps.model.LatLng;
  * API Guide</a> for more information on developing a Settings UI.
  */
 public class SettingsActivity extends PreferenceActivity
-        implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
+        implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener,
+        SyncStatusStore.OnSyncStatusChangedListener {
     protected final static int PLACE_PICKER_REQUEST = 9090;
     private ImageView mAttribution;
 
@@ -80,6 +83,7 @@ public class SettingsActivity extends PreferenceActivity
     protected void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.registerOnSharedPreferenceChangeListener(this);
+        SyncStatusStore.getInstance(this).registerListener(this);
         super.onResume();
     }
 
@@ -88,6 +92,7 @@ public class SettingsActivity extends PreferenceActivity
     protected void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(this);
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        SyncStatusStore.getInstance(this).unregisterListener(this);
         super.onPause();
     }
 
@@ -174,16 +179,21 @@ public class SettingsActivity extends PreferenceActivity
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
             // Send update to the wearables.
             SendWeatherDataService.launchService(this);
-        } else if (key.equals(getString(R.string.pref_location_status_key))) {
-            // our location status has changed.  Update the summary accordingly
-            Preference locationPreference = findPreference(getString(R.string.pref_location_key));
-            bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
+            // art pack have changed. drop the cached art and prefetch the new pack
+            ArtPackCache.getInstance(this).invalidate();
+            // update lists of weather entries accordingly
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
         }
     }
 
+    // Our location status has changed. Update the summary accordingly
+    @Override
+    public void onSyncStatusChanged(SyncStatusStore store) {
+        Preference locationPreference = findPreference(getString(R.string.pref_location_key));
+        bindPreferenceSummaryToValue(locationPreference);
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
     @Override
     public Intent getParentActivityIntent() {
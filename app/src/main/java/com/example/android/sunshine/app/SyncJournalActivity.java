@@ -0,0 +1,132 @@
+package com.example.android.sunshine.app;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.text.format.DateFormat;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.muzei.MuzeiPublishLog;
+import com.example.android.sunshine.app.sync.SyncJournal;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Debug screen showing sync percentiles, the most recent syncs, the metrics snapshot and the
+ * Muzei publish log.
+ * Only reachable from the overflow menu of debug builds.
+ *
+ * @author Gennady Denisov
+ */
+public class SyncJournalActivity extends AppCompatActivity {
+    // Number of the newest syncs percentiles are computed over.
+    private static final int SUMMARY_LIMIT = 200;
+
+    // Number of the newest syncs listed individually.
+    private static final int RECENT_LIMIT = 20;
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    private TextView mTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sync_journal);
+        Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+        mTextView = (TextView) findViewById(R.id.sync_journal_text);
+        new LoadJournalTask().execute();
+    }
+
+    private class LoadJournalTask extends AsyncTask<Void, Void, String> {
+        private final File mMetricsFile = new File(getFilesDir(),
+                MetricsRegistry.SNAPSHOT_FILE_NAME);
+        private final File mMuzeiLogFile = MuzeiPublishLog.getFile(SyncJournalActivity.this);
+
+        @Override
+        protected String doInBackground(Void... params) {
+            List<SyncJournal.Entry> entries = SyncJournal.read(SyncJournalActivity.this);
+            SyncJournal.Summary summary = SyncJournal.summarize(entries, SUMMARY_LIMIT);
+
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.US, "syncs=%d failures=%d%n%n",
+                    summary.getCount(), summary.getFailures()));
+            appendPercentiles(sb, summary, "total ms", SyncJournal.METRIC_TOTAL_MS);
+            appendPercentiles(sb, summary, "fetch ms", SyncJournal.METRIC_FETCH_MS);
+            appendPercentiles(sb, summary, "parse ms", SyncJournal.METRIC_PARSE_MS);
+            appendPercentiles(sb, summary, "write ms", SyncJournal.METRIC_WRITE_MS);
+            appendPercentiles(sb, summary, "fan-out ms", SyncJournal.METRIC_FAN_OUT_MS);
+            appendPercentiles(sb, summary, "bytes", SyncJournal.METRIC_BYTES);
+            appendPercentiles(sb, summary, "rows", SyncJournal.METRIC_ROWS);
+
+            sb.append("\nRecent syncs\n");
+            for (int i = entries.size() - 1; i >= Math.max(0, entries.size() - RECENT_LIMIT); i--) {
+                SyncJournal.Entry entry = entries.get(i);
+                sb.append(DateFormat.format("MM-dd kk:mm:ss", entry.getTimestamp()))
+                        .append(String.format(Locale.US,
+                                " trigger=%d outcome=%d http=%d total=%dms rows=%d %s%n",
+                                entry.getTrigger(), entry.getOutcome(), entry.getHttpStatus(),
+                                entry.get(SyncJournal.METRIC_TOTAL_MS),
+                                entry.get(SyncJournal.METRIC_ROWS), entry.getLocation()));
+            }
+
+            sb.append("\nMetrics\n");
+            appendFile(sb, mMetricsFile);
+
+            sb.append("\nMuzei publishes\n");
+            appendFile(sb, mMuzeiLogFile);
+            return sb.toString();
+        }
+
+        @Override
+        protected void onPostExecute(String text) {
+            mTextView.setText(text);
+        }
+    }
+
+    private static void appendPercentiles(StringBuilder sb, SyncJournal.Summary summary,
+                                          String label, int metric) {
+        sb.append(String.format(Locale.US, "%-10s", label));
+        for (double percentile : PERCENTILES) {
+            sb.append(String.format(Locale.US, " p%d=%d", (int) percentile,
+                    summary.getPercentile(metric, percentile)));
+        }
+        sb.append('\n');
+    }
+
+    private static void appendFile(StringBuilder sb, File file) {
+        if (!file.exists()) {
+            sb.append("(nothing recorded yet)\n");
+            return;
+        }
+        FileReader reader = null;
+        try {
+            reader = new FileReader(file);
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) > 0) {
+                sb.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            sb.append(e.getMessage()).append('\n');
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                    // Nothing to do.
+                }
+            }
+        }
+    }
+}
@@ -23,6 +23,7 @@ import android.preference.PreferenceManager;
 import android.text.format.Time;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.sync.SyncStatusStore;
 import com.geaden.android.shunshine.shared.Utils;
 
 import java.text.DateFormat;
@@ -31,6 +32,11 @@ import java.util.Date;
 import java.util.Locale;
 
 public class Utility {
+    // Every art name an art pack provides, see #getArtNameForWeatherCondition.
+    public static final String[] ART_NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
     // We'll default our latlong to 0. Yay, "Earth!"
     public static float DEFAULT_LATLONG = 0F;
 
@@ -275,6 +281,18 @@ public class Utility {
                 sunshineArtPack).equals(sunshineArtPack);
     }
 
+    /**
+     * Helper method to return the selected art pack.
+     *
+     * @param context Context to use for retrieving the preference
+     * @return the URL format of the selected art pack, taking the art name as its only argument.
+     */
+    public static String getArtPack(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_art_pack_key),
+                context.getString(R.string.pref_art_pack_sunshine));
+    }
+
     /**
      * Helper method to provide the art urls according to the weather condition id returned
      * by the OpenWeatherMap call.
@@ -284,34 +302,45 @@ public class Utility {
      * @return url for the corresponding weather artwork. null if no relation is found.
      */
     public static String getArtUrlForWeatherCondition(Context context, int weatherId) {
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String formatArtUrl = prefs.getString(context.getString(R.string.pref_art_pack_key),
-                context.getString(R.string.pref_art_pack_sunshine));
+        String artName = getArtNameForWeatherCondition(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        return String.format(Locale.US, getArtPack(context), artName);
+    }
 
+    /**
+     * Helper method to provide the name of the art within an art pack according to the weather
+     * condition id returned by the OpenWeatherMap call.
+     *
+     * @param weatherId from OpenWeatherMap API response
+     * @return art name, one of {@link #ART_NAMES}. null if no relation is found.
+     */
+    public static String getArtNameForWeatherCondition(int weatherId) {
         // Based on weather code data found at:
         // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
         if (weatherId >= 200 && weatherId <= 232) {
-            return String.format(Locale.US, formatArtUrl, "storm");
+            return "storm";
         } else if (weatherId >= 300 && weatherId <= 321) {
-            return String.format(Locale.US, formatArtUrl, "light_rain");
+            return "light_rain";
         } else if (weatherId >= 500 && weatherId <= 504) {
-            return String.format(Locale.US, formatArtUrl, "rain");
+            return "rain";
         } else if (weatherId == 511) {
-            return String.format(Locale.US, formatArtUrl, "snow");
+            return "snow";
         } else if (weatherId >= 520 && weatherId <= 531) {
-            return String.format(Locale.US, formatArtUrl, "rain");
+            return "rain";
         } else if (weatherId >= 600 && weatherId <= 622) {
-            return String.format(Locale.US, formatArtUrl, "snow");
+            return "snow";
         } else if (weatherId >= 701 && weatherId <= 761) {
-            return String.format(Locale.US, formatArtUrl, "fog");
+            return "fog";
         } else if (weatherId == 761 || weatherId == 781) {
-            return String.format(Locale.US, formatArtUrl, "storm");
+            return "storm";
         } else if (weatherId == 800) {
-            return String.format(Locale.US, formatArtUrl, "clear");
+            return "clear";
         } else if (weatherId == 801) {
-            return String.format(Locale.US, formatArtUrl, "light_clouds");
+            return "light_clouds";
         } else if (weatherId >= 802 && weatherId <= 804) {
-            return String.format(Locale.US, formatArtUrl, "clouds");
+            return "clouds";
         }
         return null;
     }
@@ -583,26 +612,21 @@ public class Utility {
     }
 
     /**
-     * @param c Context used to get the SharedPreferences
+     * @param c Context used to get the SyncStatusStore
      * @return the location status integer type
      */
-    @SuppressWarnings("ResourceType")
     static public
     @SunshineSyncAdapter.LocationStatus
     int getLocationStatus(Context c) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        return sp.getInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        return SyncStatusStore.getInstance(c).getLocationStatus();
     }
 
     /**
      * Resets the location status.  (Sets it to SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN)
      *
-     * @param c Context used to get the SharedPreferences
+     * @param c Context used to get the SyncStatusStore
      */
     static public void resetLocationStatus(Context c) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
-        spe.apply();
+        SyncStatusStore.getInstance(c).setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
     }
 }
\ No newline at end of file
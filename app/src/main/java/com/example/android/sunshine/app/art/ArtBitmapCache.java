@@ -0,0 +1,254 @@
+package com.example.android.sunshine.app.art;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.v4.graphics.BitmapCompat;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * In-memory LRU cache of decoded weather art, keyed by (condition, art pack, size)
+ * and bounded by a byte budget.
+ * <p/>
+ * Bitmaps are decoded straight to the size they are displayed at, so a widget refresh or a
+ * notification costs at most one decode per distinct condition, and a cached list icon takes
+ * a few kilobytes instead of a full resolution image. Art of a remote pack is decoded from the
+ * {@link ArtPackCache} when available and only fetched from the network otherwise.
+ * <p/>
+ * Lookups may decode or even fetch, so never call them from the main thread.
+ *
+ * @author Gennady Denisov
+ */
+public final class ArtBitmapCache {
+    private static final String LOG_TAG = ArtBitmapCache.class.getSimpleName();
+
+    // Upper bound of the default budget, a process wide share of the heap otherwise.
+    private static final int MAX_DEFAULT_BUDGET_BYTES = 4 * 1024 * 1024;
+
+    private static final String KIND_ART = "art";
+    private static final String PACK_LOCAL = "local";
+
+    // Timeout of a remote art lookup that may take as long as the fetch does.
+    private static final long NO_TIMEOUT = 0;
+
+    private static ArtBitmapCache sInstance;
+
+    private final Context mContext;
+    private final int mBudgetBytes;
+    private final LruCache<String, Bitmap> mCache;
+    private final AtomicInteger mDecodeCount = new AtomicInteger();
+
+    ArtBitmapCache(Context context, int budgetBytes) {
+        mContext = context.getApplicationContext();
+        mBudgetBytes = budgetBytes;
+        mCache = new LruCache<String, Bitmap>(budgetBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return BitmapCompat.getAllocationByteCount(bitmap);
+            }
+        };
+    }
+
+    public static synchronized ArtBitmapCache getInstance(Context context) {
+        if (sInstance == null) {
+            int budget = (int) Math.min(MAX_DEFAULT_BUDGET_BYTES,
+                    Runtime.getRuntime().maxMemory() / 16);
+            sInstance = new ArtBitmapCache(context, budget);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the art of the selected art pack for the weather condition.
+     *
+     * @param weatherId condition id from the OpenWeatherMap API response.
+     * @param sizePx    size of the square the art has to fit in.
+     * @return the art or null if there is no art for the condition.
+     */
+    public Bitmap getArt(int weatherId, int sizePx) {
+        String artName = Utility.getArtNameForWeatherCondition(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        if (Utility.usingLocalGraphics(mContext)) {
+            return getLocalArt(weatherId, sizePx);
+        }
+        Bitmap bitmap = getPackArt(artName, weatherId, sizePx, NO_TIMEOUT);
+        if (bitmap == null) {
+            // Not cached under the pack, so the pack art is picked up once it can be fetched.
+            return getLocalArt(weatherId, sizePx);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the art of the selected remote art pack for the weather condition. Unlike
+     * {@link #getArt(int, int)} it never falls back to the bundled art.
+     *
+     * @param weatherId condition id from the OpenWeatherMap API response.
+     * @param sizePx    size of the square the art has to fit in.
+     * @param timeoutMs how long a fetch from the network may take.
+     * @return the art or null if the bundled art is selected, there is no art for the
+     * condition or it could not be loaded in time.
+     */
+    public Bitmap getRemoteArt(int weatherId, int sizePx, long timeoutMs) {
+        String artName = Utility.getArtNameForWeatherCondition(weatherId);
+        if (artName == null || Utility.usingLocalGraphics(mContext)) {
+            return null;
+        }
+        return getPackArt(artName, weatherId, sizePx, timeoutMs);
+    }
+
+    /**
+     * Returns the bundled art for the weather condition, whatever art pack is selected. Never
+     * touches the network.
+     *
+     * @param weatherId condition id from the OpenWeatherMap API response.
+     * @param sizePx    size of the square the art has to fit in.
+     * @return the art or null if there is no art for the condition.
+     */
+    public Bitmap getLocalArt(int weatherId, int sizePx) {
+        String artName = Utility.getArtNameForWeatherCondition(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        String key = getKey(KIND_ART, PACK_LOCAL, artName, sizePx);
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        return put(key, decodeResource(mContext.getResources(),
+                Utility.getArtResourceForWeatherCondition(weatherId), sizePx));
+    }
+
+    public int getBudgetBytes() {
+        return mBudgetBytes;
+    }
+
+    /**
+     * @return bytes currently held by the cached bitmaps.
+     */
+    public int getSizeBytes() {
+        return mCache.size();
+    }
+
+    int getDecodeCount() {
+        return mDecodeCount.get();
+    }
+
+    void evictAll() {
+        mCache.evictAll();
+    }
+
+    private Bitmap put(String key, Bitmap bitmap) {
+        if (bitmap != null) {
+            mCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    private Bitmap getPackArt(String artName, int weatherId, int sizePx, long timeoutMs) {
+        String pack = Integer.toHexString(Utility.getArtPack(mContext).hashCode());
+        String key = getKey(KIND_ART, pack, artName, sizePx);
+        Bitmap bitmap = mCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        return put(key, decodeRemoteArt(weatherId, sizePx, timeoutMs));
+    }
+
+    private Bitmap decodeRemoteArt(int weatherId, int sizePx, long timeoutMs) {
+        File cachedArt = ArtPackCache.getInstance(mContext).getArtFile(weatherId, sizePx);
+        if (cachedArt != null) {
+            Bitmap bitmap = decodeFile(cachedArt.getPath(), sizePx);
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+        String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+        mDecodeCount.incrementAndGet();
+        FutureTarget<Bitmap> target = Glide.with(mContext)
+                .load(artUrl)
+                .asBitmap()
+                .fitCenter()
+                .into(sizePx, sizePx);
+        try {
+            return timeoutMs == NO_TIMEOUT
+                    ? target.get() : target.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            Log.d(LOG_TAG, "Timed out retrieving art from " + artUrl);
+            target.cancel(true);
+            return null;
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving art from " + artUrl, e);
+            return null;
+        }
+    }
+
+    private Bitmap decodeResource(Resources resources, int resourceId, int sizePx) {
+        mDecodeCount.incrementAndGet();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resourceId, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, sizePx);
+        options.inJustDecodeBounds = false;
+        return fit(BitmapFactory.decodeResource(resources, resourceId, options), sizePx);
+    }
+
+    private Bitmap decodeFile(String path, int sizePx) {
+        mDecodeCount.incrementAndGet();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, sizePx);
+        options.inJustDecodeBounds = false;
+        return fit(BitmapFactory.decodeFile(path, options), sizePx);
+    }
+
+    /**
+     * Largest power of two sample size which keeps the decoded image at least as large as the
+     * requested size, so the final scale to the exact size only ever shrinks.
+     */
+    static int calculateInSampleSize(int width, int height, int sizePx) {
+        int inSampleSize = 1;
+        int largest = Math.max(width, height);
+        while (largest / (inSampleSize * 2) >= sizePx) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static Bitmap fit(Bitmap bitmap, int sizePx) {
+        if (bitmap == null) {
+            return null;
+        }
+        int largest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (largest <= sizePx) {
+            return bitmap;
+        }
+        float scale = (float) sizePx / largest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+
+    private static String getKey(String kind, String pack, String name, int sizePx) {
+        return kind + '/' + pack + '/' + name + '/' + sizePx;
+    }
+}
@@ -0,0 +1,318 @@
+package com.example.android.sunshine.app.art;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of the weather art of the selected art pack.
+ * <p/>
+ * A pack only has {@link Utility#ART_NAMES} images, so the whole pack is fetched once by
+ * {@link ArtPrefetchService}, downsampled to each size the app displays art at and stored as
+ * PNG files under {@code cache/art/<pack>/}. Consumers ask for a file with
+ * {@link #getArtFile(int, int)} and only fall back to the network while the prefetch has not
+ * finished yet. The cache is dropped when the art pack preference changes.
+ * <p/>
+ * Lookups only touch an in-memory index, so they are safe on the main thread.
+ *
+ * @author Gennady Denisov
+ */
+public final class ArtPackCache {
+    private static final String LOG_TAG = ArtPackCache.class.getSimpleName();
+
+    static final String DIRECTORY = "art";
+
+    // Don't hammer the network with prefetches while offline.
+    private static final long PREFETCH_RETRY_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private static ArtPackCache sInstance;
+
+    private final Context mContext;
+    private final File mRoot;
+    // Sizes in pixels art is stored at, ascending.
+    private final int[] mSizes;
+    private final Executor mExecutor = Executors.newSingleThreadExecutor();
+
+    // Pack the index belongs to, null until indexed.
+    private volatile String mIndexedPack;
+    private volatile Map<String, File> mIndex = Collections.emptyMap();
+    private boolean mIndexing;
+    private boolean mPrefetchPending;
+    private long mLastPrefetch;
+
+    ArtPackCache(Context context, File root, int[] sizes) {
+        mContext = context.getApplicationContext();
+        mRoot = root;
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int size : sorted) {
+            if (distinct == 0 || sorted[distinct - 1] != size) {
+                sorted[distinct++] = size;
+            }
+        }
+        mSizes = Arrays.copyOf(sorted, distinct);
+    }
+
+    public static synchronized ArtPackCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ArtPackCache(context, new File(context.getCacheDir(), DIRECTORY),
+                    getDisplaySizes(context.getResources()));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the cached art for the weather condition, downsampled to the smallest stored size
+     * that is at least the given size. Schedules a prefetch of the pack if it is not cached yet.
+     *
+     * @param weatherId condition id from the OpenWeatherMap API response.
+     * @param sizePx    size of the view the art is displayed in.
+     * @return the art file or null if it is not cached (yet) or local graphics are in use.
+     */
+    public File getArtFile(int weatherId, int sizePx) {
+        if (Utility.usingLocalGraphics(mContext)) {
+            return null;
+        }
+        String artName = Utility.getArtNameForWeatherCondition(weatherId);
+        if (artName == null) {
+            return null;
+        }
+        String pack = Utility.getArtPack(mContext);
+        if (!pack.equals(mIndexedPack)) {
+            index(pack);
+            return null;
+        }
+        File file = mIndex.get(getFileName(artName, getSizeBucket(sizePx)));
+        if (file == null) {
+            requestPrefetch();
+        }
+        return file;
+    }
+
+    /**
+     * Drops the cached art. Called when the art pack preference changes, which is the only
+     * time the cache can become stale.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            mIndexedPack = null;
+            mIndex = Collections.emptyMap();
+            mLastPrefetch = 0;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                String pack = Utility.getArtPack(mContext);
+                File[] packDirectories = mRoot.listFiles();
+                if (packDirectories != null) {
+                    File current = getPackDirectory(pack);
+                    for (File directory : packDirectories) {
+                        if (!directory.equals(current)) {
+                            delete(directory);
+                        }
+                    }
+                }
+            }
+        });
+        requestPrefetch();
+    }
+
+    /**
+     * Fetches and stores every missing art of the selected pack. Blocks on the network, so it
+     * must only be called from a worker thread, see {@link ArtPrefetchService}.
+     */
+    void prefetch() {
+        String pack = Utility.getArtPack(mContext);
+        try {
+            if (Utility.usingLocalGraphics(mContext)) {
+                return;
+            }
+            File directory = getPackDirectory(pack);
+            if (!directory.exists() && !directory.mkdirs()) {
+                Log.w(LOG_TAG, "Unable to create " + directory);
+                return;
+            }
+            for (String artName : Utility.ART_NAMES) {
+                if (isCached(directory, artName)) {
+                    continue;
+                }
+                String url = String.format(Locale.US, pack, artName);
+                Bitmap original;
+                try {
+                    original = Glide.with(mContext)
+                            .load(url)
+                            .asBitmap()
+                            .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                            .get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Log.w(LOG_TAG, "Unable to fetch " + url, e);
+                    continue;
+                }
+                for (int size : mSizes) {
+                    store(directory, artName, size, original);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                mPrefetchPending = false;
+            }
+            buildIndex(pack);
+        }
+    }
+
+    int getSizeBucket(int sizePx) {
+        for (int size : mSizes) {
+            if (size >= sizePx) {
+                return size;
+            }
+        }
+        return mSizes[mSizes.length - 1];
+    }
+
+    private void index(final String pack) {
+        synchronized (this) {
+            if (mIndexing) {
+                return;
+            }
+            mIndexing = true;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                buildIndex(pack);
+            }
+        });
+    }
+
+    private void buildIndex(String pack) {
+        Map<String, File> index = new ConcurrentHashMap<>();
+        File[] files = getPackDirectory(pack).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                index.put(file.getName(), file);
+            }
+        }
+        synchronized (this) {
+            mIndex = index;
+            mIndexedPack = pack;
+            mIndexing = false;
+        }
+        if (index.size() < Utility.ART_NAMES.length * mSizes.length) {
+            requestPrefetch();
+        }
+    }
+
+    private void requestPrefetch() {
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (mPrefetchPending || (mLastPrefetch != 0 && now - mLastPrefetch < PREFETCH_RETRY_MS)) {
+                return;
+            }
+            mPrefetchPending = true;
+            mLastPrefetch = now;
+        }
+        ArtPrefetchService.start(mContext);
+    }
+
+    private boolean isCached(File directory, String artName) {
+        for (int size : mSizes) {
+            if (!new File(directory, getFileName(artName, size)).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void store(File directory, String artName, int size, Bitmap original) {
+        // Fit into a size x size square, never upscaling.
+        float scale = Math.min(1f, (float) size
+                / Math.max(original.getWidth(), original.getHeight()));
+        Bitmap scaled = Bitmap.createScaledBitmap(original,
+                Math.max(1, Math.round(original.getWidth() * scale)),
+                Math.max(1, Math.round(original.getHeight() * scale)), true);
+        File file = new File(directory, getFileName(artName, size));
+        File tmp = new File(directory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            scaled.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to store " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to store " + file, e);
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tmp, e);
+                }
+            }
+            if (scaled != original) {
+                scaled.recycle();
+            }
+        }
+    }
+
+    private File getPackDirectory(String pack) {
+        return new File(mRoot, Integer.toHexString(pack.hashCode()));
+    }
+
+    static String getFileName(String artName, int size) {
+        return artName + "_" + size + ".png";
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Sizes art is displayed at: list icons, notification large icons and the today/detail art.
+     */
+    @SuppressLint("InlinedApi")
+    static int[] getDisplaySizes(Resources resources) {
+        int notificationSize = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        return new int[]{
+                resources.getDimensionPixelSize(R.dimen.list_icon),
+                notificationSize,
+                resources.getDimensionPixelSize(R.dimen.today_icon)
+        };
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.android.sunshine.app.art;
+
+import android.app.IntentService;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Fetches the art of the selected art pack into the {@link ArtPackCache} in the background.
+ *
+ * @author Gennady Denisov
+ */
+public class ArtPrefetchService extends IntentService {
+
+    public ArtPrefetchService() {
+        super("ArtPrefetchService");
+    }
+
+    /**
+     * Helper method to start prefetching the selected art pack.
+     *
+     * @param context the context.
+     */
+    static void start(Context context) {
+        context.startService(new Intent(context, ArtPrefetchService.class));
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        ArtPackCache.getInstance(this).prefetch();
+    }
+}
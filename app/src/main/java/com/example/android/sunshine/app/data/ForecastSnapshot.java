@@ -0,0 +1,322 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Compact, versioned binary copy of the forecast list for the preferred location.
+ * <p/>
+ * The snapshot is written after every successful sync and read back with a single NIO read on
+ * cold start, so the forecast list can be populated before the database is even opened. The
+ * database stays the source of truth and replaces the snapshot as soon as its loader finishes.
+ * <p/>
+ * Layout (big endian):
+ * <pre>
+ * int magic, int version, long writtenAt, str location, double lat, double lon, int count,
+ * count * (long id, long date, int weatherId, double max, double min, str desc)
+ * </pre>
+ * where {@code str} is an unsigned short byte length followed by UTF-8 bytes.
+ *
+ * @author Gennady Denisov
+ */
+public final class ForecastSnapshot {
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    static final String FILE_NAME = "forecast.snapshot";
+
+    private static final int MAGIC = 0x53534e50; // "SSNP"
+    private static final int VERSION = 1;
+
+    // Smallest possible row: id, date, weather id, max, min and an empty description.
+    static final int MIN_ROW_BYTES = 8 + 8 + 4 + 8 + 8 + 2;
+
+    // Columns of the cursor returned by #toCursor. These mirror the forecast list projection
+    // used by ForecastFragment, so the adapter can bind snapshot rows unchanged.
+    public static final String[] COLUMNS = {
+            WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // Projection used to read the rows to persist from the provider.
+    private static final String[] SNAPSHOT_PROJECTION = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_MAX_TEMP = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_SHORT_DESC = 5;
+    private static final int INDEX_COORD_LAT = 6;
+    private static final int INDEX_COORD_LONG = 7;
+
+    private final long mWrittenAt;
+    private final String mLocationSetting;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+    private final String[] mDescriptions;
+
+    private ForecastSnapshot(long writtenAt, String locationSetting, double latitude,
+                             double longitude, int count) {
+        mWrittenAt = writtenAt;
+        mLocationSetting = locationSetting;
+        mLatitude = latitude;
+        mLongitude = longitude;
+        mIds = new long[count];
+        mDates = new long[count];
+        mWeatherIds = new int[count];
+        mMaxTemps = new double[count];
+        mMinTemps = new double[count];
+        mDescriptions = new String[count];
+    }
+
+    public long getWrittenAt() {
+        return mWrittenAt;
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public int getCount() {
+        return mIds.length;
+    }
+
+    /**
+     * Builds a cursor with {@link #COLUMNS} containing the rows dated on or after the given day.
+     *
+     * @param startDate rows before the (normalized) start date are skipped.
+     * @return a cursor suitable for {@link com.example.android.sunshine.app.ForecastAdapter}.
+     */
+    public Cursor toCursor(long startDate) {
+        long normalizedStart = WeatherContract.normalizeDate(startDate);
+        MatrixCursor cursor = new MatrixCursor(COLUMNS, mIds.length);
+        for (int i = 0; i < mIds.length; i++) {
+            if (mDates[i] < normalizedStart) {
+                continue;
+            }
+            cursor.addRow(new Object[]{
+                    mIds[i],
+                    mDates[i],
+                    mDescriptions[i],
+                    mMaxTemps[i],
+                    mMinTemps[i],
+                    mLocationSetting,
+                    mWeatherIds[i],
+                    mLatitude,
+                    mLongitude
+            });
+        }
+        return cursor;
+    }
+
+    /**
+     * Reads the forecast for the location from the provider and persists it as the snapshot.
+     * Should never be called from the main thread.
+     *
+     * @param context         the context.
+     * @param locationSetting the location the forecast is stored for.
+     * @return true if a snapshot was written.
+     */
+    public static boolean writeFromProvider(Context context, String locationSetting) {
+        Uri uri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(uri, SNAPSHOT_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == cursor) {
+            return false;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return false;
+            }
+            ForecastSnapshot snapshot = new ForecastSnapshot(System.currentTimeMillis(),
+                    locationSetting, cursor.getDouble(INDEX_COORD_LAT),
+                    cursor.getDouble(INDEX_COORD_LONG), cursor.getCount());
+            int i = 0;
+            do {
+                snapshot.mIds[i] = cursor.getLong(INDEX_ID);
+                snapshot.mDates[i] = cursor.getLong(INDEX_DATE);
+                snapshot.mWeatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                snapshot.mMaxTemps[i] = cursor.getDouble(INDEX_MAX_TEMP);
+                snapshot.mMinTemps[i] = cursor.getDouble(INDEX_MIN_TEMP);
+                snapshot.mDescriptions[i] = cursor.getString(INDEX_SHORT_DESC);
+                i++;
+            } while (cursor.moveToNext());
+            return snapshot.write(getFile(context));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Reads the snapshot with a single read of the whole file.
+     *
+     * @param context the context.
+     * @return the snapshot or null if it is missing, corrupt or of an unknown version.
+     */
+    public static ForecastSnapshot read(Context context) {
+        File file = getFile(context);
+        if (!file.exists()) {
+            return null;
+        }
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return parse(buffer);
+        } catch (IOException | RuntimeException e) {
+            // A broken snapshot is never fatal, the database will populate the list anyway.
+            Log.w(LOG_TAG, "Unable to read forecast snapshot", e);
+            return null;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing snapshot", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return when the snapshot was last written, i.e. when the forecast last changed, or 0 if
+     * there is none. Cheaper than {@link #read(Context)} as the file is not opened.
+     */
+    public static long getWrittenAt(Context context) {
+        return getFile(context).lastModified();
+    }
+
+    /**
+     * Removes the snapshot, e.g. when the location it was written for is no longer relevant.
+     */
+    public static void delete(Context context) {
+        //noinspection ResultOfMethodCallIgnored
+        getFile(context).delete();
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    static ForecastSnapshot parse(ByteBuffer buffer) throws UnsupportedEncodingException {
+        if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long writtenAt = buffer.getLong();
+        String location = readString(buffer);
+        double latitude = buffer.getDouble();
+        double longitude = buffer.getDouble();
+        int count = buffer.getInt();
+        // A corrupt count must not allocate arrays the file cannot fill.
+        if (count < 0 || count > buffer.remaining() / MIN_ROW_BYTES) {
+            return null;
+        }
+        ForecastSnapshot snapshot = new ForecastSnapshot(writtenAt, location, latitude, longitude,
+                count);
+        for (int i = 0; i < count; i++) {
+            snapshot.mIds[i] = buffer.getLong();
+            snapshot.mDates[i] = buffer.getLong();
+            snapshot.mWeatherIds[i] = buffer.getInt();
+            snapshot.mMaxTemps[i] = buffer.getDouble();
+            snapshot.mMinTemps[i] = buffer.getDouble();
+            snapshot.mDescriptions[i] = readString(buffer);
+        }
+        return snapshot;
+    }
+
+    private boolean write(File file) {
+        // Write next to the real file and rename, so readers never see a half written snapshot.
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(mWrittenAt);
+            writeString(out, mLocationSetting);
+            out.writeDouble(mLatitude);
+            out.writeDouble(mLongitude);
+            out.writeInt(mIds.length);
+            for (int i = 0; i < mIds.length; i++) {
+                out.writeLong(mIds[i]);
+                out.writeLong(mDates[i]);
+                out.writeInt(mWeatherIds[i]);
+                out.writeDouble(mMaxTemps[i]);
+                out.writeDouble(mMinTemps[i]);
+                writeString(out, mDescriptions[i]);
+            }
+            out.close();
+            out = null;
+            return tmp.renameTo(file);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write forecast snapshot", e);
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing snapshot", e);
+                }
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = (value == null ? "" : value).getBytes("UTF-8");
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws UnsupportedEncodingException {
+        int length = buffer.getShort() & 0xffff;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -24,6 +24,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
@@ -35,6 +38,20 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
+    // Latency per match code, so slow joins are not hidden behind fast location lookups.
+    private static final Histogram sQueryWeatherLatency =
+            MetricsRegistry.histogram("provider.query.weather_us");
+    private static final Histogram sQueryWeatherWithLocationLatency =
+            MetricsRegistry.histogram("provider.query.weather_with_location_us");
+    private static final Histogram sQueryWeatherWithLocationAndDateLatency =
+            MetricsRegistry.histogram("provider.query.weather_with_location_and_date_us");
+    private static final Histogram sQueryLocationLatency =
+            MetricsRegistry.histogram("provider.query.location_us");
+    private static final Histogram sWriteLatency =
+            MetricsRegistry.histogram("provider.write_us");
+    private static final Histogram sBulkInsertLatency =
+            MetricsRegistry.histogram("provider.bulk_insert_us");
+
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
@@ -174,8 +191,10 @@ public class WeatherProvider extends ContentProvider {
                         String sortOrder) {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
+        long start = System.nanoTime();
+        final int match = sUriMatcher.match(uri);
         Cursor retCursor;
-        switch (sUriMatcher.match(uri)) {
+        switch (match) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
@@ -218,14 +237,29 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         retCursor.setNotificationUri(getContext().getContentResolver(), uri);
+        getQueryLatency(match).recordSince(start);
         return retCursor;
     }
 
+    private static Histogram getQueryLatency(int match) {
+        switch (match) {
+            case WEATHER_WITH_LOCATION_AND_DATE:
+                return sQueryWeatherWithLocationAndDateLatency;
+            case WEATHER_WITH_LOCATION:
+                return sQueryWeatherWithLocationLatency;
+            case LOCATION:
+                return sQueryLocationLatency;
+            default:
+                return sQueryWeatherLatency;
+        }
+    }
+
     /*
         Student: Add the ability to insert Locations to the implementation of this function.
      */
     @Override
     public Uri insert(Uri uri, ContentValues values) {
+        long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
@@ -252,11 +286,13 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         getContext().getContentResolver().notifyChange(uri, null);
+        sWriteLatency.recordSince(start);
         return returnUri;
     }
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
@@ -278,6 +314,7 @@ public class WeatherProvider extends ContentProvider {
         if (rowsDeleted != 0) {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+        sWriteLatency.recordSince(start);
         return rowsDeleted;
     }
 
@@ -292,6 +329,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        long start = System.nanoTime();
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
@@ -312,6 +350,7 @@ public class WeatherProvider extends ContentProvider {
         if (rowsUpdated != 0) {
             getContext().getContentResolver().notifyChange(uri, null);
         }
+        sWriteLatency.recordSince(start);
         return rowsUpdated;
     }
 
@@ -321,6 +360,7 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
+                long start = System.nanoTime();
                 db.beginTransaction();
                 int returnCount = 0;
                 try {
@@ -336,6 +376,7 @@ public class WeatherProvider extends ContentProvider {
                     db.endTransaction();
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
+                sBulkInsertLatency.recordSince(start);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
@@ -0,0 +1,177 @@
+package com.example.android.sunshine.app.gcm;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Orders and deduplicates push messages until they are applied in one pass.
+ * <p/>
+ * A message is dropped if its id was seen before, or if its sequence number is not above the
+ * high-water mark of its location, the highest sequence number applied so far. Accepted
+ * messages are held until {@link #drain()}, which hands them out per location in sequence
+ * order and advances the marks. Messages without a sequence number, like the ones of older
+ * servers, are never stale and come after the sequenced ones in arrival order.
+ * <p/>
+ * Free of Android dependencies; {@link WeatherPushHandler} persists the marks and the recent
+ * message ids with {@link #writeTo(DataOutput)} and {@link #readFrom(DataInput)}.
+ *
+ * @author Gennady Denisov
+ */
+final class PushQueue<T> {
+    private static final int VERSION = 1;
+
+    static final long UNSEQUENCED = -1;
+
+    static final int ACCEPTED = 0;
+    static final int DUPLICATE = 1;
+    static final int STALE = 2;
+
+    // Message ids remembered for deduplication, GCM redelivers within minutes.
+    static final int MAX_MESSAGE_IDS = 100;
+
+    private static final Comparator<Message<?>> SEQUENCE_ORDER = new Comparator<Message<?>>() {
+        @Override
+        public int compare(Message<?> lhs, Message<?> rhs) {
+            long lhsSeq = lhs.mSeq == UNSEQUENCED ? Long.MAX_VALUE : lhs.mSeq;
+            long rhsSeq = rhs.mSeq == UNSEQUENCED ? Long.MAX_VALUE : rhs.mSeq;
+            return lhsSeq < rhsSeq ? -1 : (lhsSeq == rhsSeq ? 0 : 1);
+        }
+    };
+
+    private static final class Message<T> {
+        final long mSeq;
+        final T mPayload;
+
+        Message(long seq, T payload) {
+            mSeq = seq;
+            mPayload = payload;
+        }
+    }
+
+    private final Map<String, Long> mHighWaterMarks = new HashMap<>();
+    private final LinkedHashSet<String> mMessageIds = new LinkedHashSet<>();
+    private final Map<String, List<Message<T>>> mPending = new LinkedHashMap<>();
+
+    /**
+     * Queues a message until the next {@link #drain()}.
+     *
+     * @param messageId id of the message or null if it has none.
+     * @param seq       sequence number of the message for its location or
+     *                  {@link #UNSEQUENCED}.
+     * @return {@link #ACCEPTED}, or {@link #DUPLICATE} or {@link #STALE} if it was dropped.
+     */
+    synchronized int offer(String messageId, String location, long seq, T payload) {
+        if (messageId != null) {
+            if (!mMessageIds.add(messageId)) {
+                return DUPLICATE;
+            }
+            if (mMessageIds.size() > MAX_MESSAGE_IDS) {
+                Iterator<String> it = mMessageIds.iterator();
+                it.next();
+                it.remove();
+            }
+        }
+        if (seq != UNSEQUENCED && seq <= getHighWaterMark(location)) {
+            return STALE;
+        }
+        List<Message<T>> messages = mPending.get(location);
+        if (messages == null) {
+            messages = new ArrayList<>();
+            mPending.put(location, messages);
+        }
+        messages.add(new Message<>(seq, payload));
+        return ACCEPTED;
+    }
+
+    /**
+     * Hands out the queued messages and advances the high-water marks past them.
+     *
+     * @return the payloads per location in sequence order. A sequence number queued twice
+     * under different message ids is handed out once.
+     */
+    synchronized Map<String, List<T>> drain() {
+        if (mPending.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<T>> batches = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Message<T>>> entry : mPending.entrySet()) {
+            List<Message<T>> messages = entry.getValue();
+            Collections.sort(messages, SEQUENCE_ORDER);
+            List<T> payloads = new ArrayList<>(messages.size());
+            long highWaterMark = getHighWaterMark(entry.getKey());
+            for (Message<T> message : messages) {
+                if (message.mSeq != UNSEQUENCED) {
+                    if (message.mSeq <= highWaterMark) {
+                        continue;
+                    }
+                    highWaterMark = message.mSeq;
+                }
+                payloads.add(message.mPayload);
+            }
+            if (highWaterMark != UNSEQUENCED) {
+                mHighWaterMarks.put(entry.getKey(), highWaterMark);
+            }
+            batches.put(entry.getKey(), payloads);
+        }
+        mPending.clear();
+        return batches;
+    }
+
+    synchronized long getHighWaterMark(String location) {
+        Long highWaterMark = mHighWaterMarks.get(location);
+        return highWaterMark == null ? UNSEQUENCED : highWaterMark;
+    }
+
+    synchronized int getPendingCount() {
+        int count = 0;
+        for (List<Message<T>> messages : mPending.values()) {
+            count += messages.size();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the high-water marks and recent message ids. Pending messages are not written,
+     * a message lost that way is recovered by the next sync.
+     */
+    synchronized void writeTo(DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(mHighWaterMarks.size());
+        for (Map.Entry<String, Long> entry : mHighWaterMarks.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(mMessageIds.size());
+        for (String messageId : mMessageIds) {
+            out.writeUTF(messageId);
+        }
+    }
+
+    /**
+     * Restores the state written by {@link #writeTo(DataOutput)}. State of another version is
+     * ignored, so a redelivered or stale message may be applied once more.
+     */
+    synchronized void readFrom(DataInput in) throws IOException {
+        if (in.readByte() != VERSION) {
+            return;
+        }
+        mHighWaterMarks.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            mHighWaterMarks.put(in.readUTF(), in.readLong());
+        }
+        mMessageIds.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            mMessageIds.add(in.readUTF());
+        }
+    }
+}
@@ -24,6 +24,7 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
 import com.google.android.gms.iid.InstanceID;
 
@@ -49,24 +50,35 @@ public class RegistrationIntentService extends IntentService {
 
                 // TODO: gcm_default sender ID comes from the API console
                 String senderId = getString(R.string.gcm_defaultSenderId);
+                boolean pushRegistered = false;
                 if ( senderId.length() != 0 ) {
                     String token = instanceID.getToken(senderId,
                             GoogleCloudMessaging.INSTANCE_ID_SCOPE, null);
                     sendRegistrationToServer(token);
+                    pushRegistered = token != null;
                 }
 
                 // You should store a boolean that indicates whether the generated token has been
                 // sent to your server. If the boolean is false, send the token to your server,
                 // otherwise your server should have already received the token.
-                sharedPreferences.edit().putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, true).apply();
+                sharedPreferences.edit()
+                        .putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, true)
+                        .putBoolean(MainActivity.PUSH_REGISTERED, pushRegistered)
+                        .apply();
             }
         } catch (Exception e) {
             Log.d(TAG, "Failed to complete token refresh", e);
 
             // If an exception happens while fetching the new token or updating our registration data
             // on a third-party server, this ensures that we'll attempt the update at a later time.
-            sharedPreferences.edit().putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false).apply();
+            sharedPreferences.edit()
+                    .putBoolean(MainActivity.SENT_TOKEN_TO_SERVER, false)
+                    .putBoolean(MainActivity.PUSH_REGISTERED, false)
+                    .apply();
         }
+
+        // Pushes carry the forecast changes, so the periodic sync can back off while registered.
+        SunshineSyncAdapter.configurePeriodicSync(this);
     }
 
     /**
@@ -0,0 +1,185 @@
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Forecast changes pushed by the server for one location:
+ * <pre>
+ * {"id": "m-42", "location": "94043", "seq": 17,
+ *  "days": [{"date": 1451606400000, "weather_id": 500, "max": 12.5}, ...]}
+ * </pre>
+ * Each day carries its date and only the fields that changed, named like the
+ * {@link WeatherContract.WeatherEntry} columns. Unknown fields are dropped. A message without
+ * days, like the legacy weather alert, is a delta the app cannot apply on its own. The id and
+ * the per location sequence number are optional and used by {@link PushQueue}.
+ *
+ * @author Gennady Denisov
+ */
+final class WeatherDelta {
+    static final String KEY_ID = "id";
+    static final String KEY_LOCATION = "location";
+    static final String KEY_SEQ = "seq";
+    static final String KEY_DAYS = "days";
+
+    // Columns a day may carry besides its date, the ones needed for a new row.
+    static final String[] FIELDS = {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    private final String mId;
+    private final String mLocation;
+    private final long mSeq;
+    private final List<ContentValues> mDays;
+    private final boolean mHasDays;
+
+    WeatherDelta(String id, String location, long seq, List<ContentValues> days,
+                 boolean hasDays) {
+        mId = id;
+        mLocation = location;
+        mSeq = seq;
+        mDays = days;
+        mHasDays = hasDays;
+    }
+
+    static WeatherDelta parse(String json) throws JSONException {
+        JSONObject jsonObject = new JSONObject(json);
+        String id = jsonObject.has(KEY_ID) ? jsonObject.getString(KEY_ID) : null;
+        String location = jsonObject.getString(KEY_LOCATION);
+        long seq = jsonObject.optLong(KEY_SEQ, PushQueue.UNSEQUENCED);
+        JSONArray daysArray = jsonObject.optJSONArray(KEY_DAYS);
+        if (daysArray == null) {
+            return new WeatherDelta(id, location, seq,
+                    Collections.<ContentValues>emptyList(), false);
+        }
+        List<ContentValues> days = new ArrayList<>(daysArray.length());
+        for (int i = 0; i < daysArray.length(); i++) {
+            JSONObject dayObject = daysArray.getJSONObject(i);
+            ContentValues values = new ContentValues();
+            values.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(
+                            dayObject.getLong(WeatherContract.WeatherEntry.COLUMN_DATE)));
+            for (String field : FIELDS) {
+                if (!dayObject.has(field)) {
+                    continue;
+                }
+                if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(field)) {
+                    values.put(field, dayObject.getInt(field));
+                } else if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(field)) {
+                    values.put(field, dayObject.getString(field));
+                } else {
+                    values.put(field, dayObject.getDouble(field));
+                }
+            }
+            days.add(values);
+        }
+        return new WeatherDelta(id, location, seq, days, true);
+    }
+
+    /**
+     * Combines the deltas of a location into one, later deltas overriding the fields of
+     * earlier ones for the same day.
+     *
+     * @param deltas deltas of the location in sequence order.
+     */
+    static WeatherDelta merge(String location, List<WeatherDelta> deltas) {
+        if (deltas.size() == 1) {
+            return deltas.get(0);
+        }
+        Map<Long, ContentValues> days = new TreeMap<>();
+        boolean hasDays = true;
+        long seq = PushQueue.UNSEQUENCED;
+        for (WeatherDelta delta : deltas) {
+            hasDays &= delta.hasDays();
+            seq = Math.max(seq, delta.getSeq());
+            for (ContentValues day : delta.getDays()) {
+                Long date = day.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                ContentValues merged = days.get(date);
+                if (merged == null) {
+                    days.put(date, new ContentValues(day));
+                } else {
+                    putFields(merged, day);
+                }
+            }
+        }
+        return new WeatherDelta(null, location, seq, new ArrayList<>(days.values()), hasDays);
+    }
+
+    // ContentValues#putAll needs API 11.
+    private static void putFields(ContentValues to, ContentValues from) {
+        for (String field : FIELDS) {
+            if (!from.containsKey(field)) {
+                continue;
+            }
+            if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(field)) {
+                to.put(field, from.getAsInteger(field));
+            } else if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(field)) {
+                to.put(field, from.getAsString(field));
+            } else {
+                to.put(field, from.getAsDouble(field));
+            }
+        }
+    }
+
+    /**
+     * @return the message id or null if the server did not set one.
+     */
+    String getId() {
+        return mId;
+    }
+
+    String getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * @return the sequence number for the location or {@link PushQueue#UNSEQUENCED}.
+     */
+    long getSeq() {
+        return mSeq;
+    }
+
+    /**
+     * @return the changed days, each with its normalized date and the changed fields.
+     */
+    List<ContentValues> getDays() {
+        return mDays;
+    }
+
+    /**
+     * @return false if the message carried no forecast, only that something changed.
+     */
+    boolean hasDays() {
+        return mHasDays;
+    }
+
+    /**
+     * @return true if the day carries every field, so it can be inserted as a new row.
+     */
+    static boolean isComplete(ContentValues day) {
+        for (String field : FIELDS) {
+            if (!day.containsKey(field)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
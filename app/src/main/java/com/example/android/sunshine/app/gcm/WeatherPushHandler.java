@@ -0,0 +1,339 @@
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.notification.ForecastDay;
+import com.example.android.sunshine.app.notification.WeatherNotifier;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the {@link WeatherDelta} of a push message straight to the weather provider.
+ * <p/>
+ * Messages go through a {@link PushQueue} first, which drops redelivered and stale ones. A
+ * burst of messages arriving within {@link #COALESCE_WINDOW_MS} is merged per location and
+ * applied in one pass, so it notifies and syncs at most once.
+ * <p/>
+ * Days already stored are updated in place and complete new days are inserted, followed by
+ * the same fan-out as a sync. Only when the delta cannot be applied on its own, because the
+ * location or a day is unknown and the delta lacks fields, a sync is requested. Deltas for
+ * another location than the preferred one are ignored.
+ * <p/>
+ * Deltas are applied on a background executor, the state of the queue is kept in
+ * {@code files/push.state}. {@link #handle(Context, Bundle)} waits until the burst of its
+ * message has been applied and the state written, so the service receiving the message, and
+ * with it the process, stays alive until then and a lost delta is redelivered rather than
+ * marked as seen.
+ *
+ * @author Gennady Denisov
+ */
+public final class WeatherPushHandler {
+    private static final String LOG_TAG = WeatherPushHandler.class.getSimpleName();
+
+    static final String EXTRA_DATA = "data";
+    // Set by GCM, used when the message itself carries no id.
+    static final String EXTRA_MESSAGE_ID = "google.message_id";
+
+    static final String QUEUE_STATE_FILE_NAME = "push.state";
+
+    // Messages arriving within this window of the first one are applied together.
+    static final long COALESCE_WINDOW_MS = 500;
+
+    static final int APPLIED = 0;
+    static final int INCOMPLETE = 1;
+    static final int IGNORED = 2;
+
+    private static final String[] FORECAST_DAY_PROJECTION = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_PRESSURE = 4;
+
+    private static final String sDaySelection =
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                    + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+    private static final Counter sApplied = MetricsRegistry.counter("push.applied");
+    private static final Counter sIncomplete = MetricsRegistry.counter("push.incomplete");
+    private static final Counter sIgnored = MetricsRegistry.counter("push.ignored");
+    private static final Counter sDuplicate = MetricsRegistry.counter("push.duplicate");
+    private static final Counter sStale = MetricsRegistry.counter("push.stale");
+    private static final Counter sCoalesced = MetricsRegistry.counter("push.coalesced");
+    private static final Histogram sApplyLatency = MetricsRegistry.histogram("push.apply_us");
+
+    private static final ScheduledExecutorService sExecutor =
+            Executors.newSingleThreadScheduledExecutor();
+
+    private static PushQueue<WeatherDelta> sQueue;
+    // Drain of the current burst, null if none is scheduled.
+    private static Future<?> sDrain;
+
+    private WeatherPushHandler() {
+    }
+
+    /**
+     * Queues the data of a push message and waits until it has been applied with the rest of
+     * its burst. Redelivered and stale messages are dropped right away. Should never be called
+     * from Main/UI thread.
+     *
+     * @param context Context used to reach the provider.
+     * @param data    Data bundle of the message.
+     */
+    public static void handle(Context context, Bundle data) {
+        String json = data.getString(EXTRA_DATA);
+        if (json == null) {
+            return;
+        }
+        WeatherDelta delta;
+        try {
+            delta = WeatherDelta.parse(json);
+        } catch (JSONException e) {
+            // JSON parsing failed, so we just let this message go, the next sync catches up.
+            Log.w(LOG_TAG, "Unable to parse push message", e);
+            return;
+        }
+        String messageId = delta.getId() != null
+                ? delta.getId() : data.getString(EXTRA_MESSAGE_ID);
+        final Context appContext = context.getApplicationContext();
+        Future<?> drain;
+        synchronized (WeatherPushHandler.class) {
+            int result = getQueue(appContext)
+                    .offer(messageId, delta.getLocation(), delta.getSeq(), delta);
+            if (result == PushQueue.DUPLICATE) {
+                sDuplicate.inc();
+                return;
+            } else if (result == PushQueue.STALE) {
+                sStale.inc();
+                return;
+            }
+            if (sDrain == null) {
+                sDrain = sExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain(appContext);
+                    }
+                }, COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+            }
+            drain = sDrain;
+        }
+        try {
+            drain.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(LOG_TAG, "Unable to apply push messages", e.getCause());
+        }
+    }
+
+    /**
+     * Applies the queued deltas, merged into one per location, and requests at most one sync.
+     */
+    static void drain(Context context) {
+        Map<String, List<WeatherDelta>> batches;
+        synchronized (WeatherPushHandler.class) {
+            sDrain = null;
+            PushQueue<WeatherDelta> queue = getQueue(context);
+            int pending = queue.getPendingCount();
+            batches = queue.drain();
+            sCoalesced.add(pending - batches.size());
+        }
+        boolean incomplete = false;
+        for (Map.Entry<String, List<WeatherDelta>> batch : batches.entrySet()) {
+            if (batch.getValue().isEmpty()) {
+                continue;
+            }
+            WeatherDelta delta = WeatherDelta.merge(batch.getKey(), batch.getValue());
+            incomplete |= apply(context, delta) == INCOMPLETE;
+        }
+        synchronized (WeatherPushHandler.class) {
+            writeQueueState(getQueueStateFile(context), sQueue);
+        }
+        if (incomplete) {
+            SunshineSyncAdapter.syncForPush(context);
+        }
+    }
+
+    private static PushQueue<WeatherDelta> getQueue(Context context) {
+        if (sQueue == null) {
+            sQueue = new PushQueue<>();
+            readQueueState(getQueueStateFile(context), sQueue);
+        }
+        return sQueue;
+    }
+
+    /**
+     * Writes the delta to the provider.
+     *
+     * @return {@link #APPLIED} if the delta was written, {@link #INCOMPLETE} if a sync is
+     * needed and {@link #IGNORED} if the delta is not about the preferred location.
+     */
+    static int apply(Context context, WeatherDelta delta) {
+        long start = System.nanoTime();
+        String locationSetting = Utility.getPreferredLocation(context);
+        if (!locationSetting.equals(delta.getLocation())) {
+            sIgnored.inc();
+            return IGNORED;
+        }
+        long locationId = queryLocationId(context, locationSetting);
+        if (locationId == -1) {
+            sIncomplete.inc();
+            return INCOMPLETE;
+        }
+
+        boolean incomplete = !delta.hasDays();
+        int changed = 0;
+        String[] selectionArgs = {Long.toString(locationId), null};
+        for (ContentValues day : delta.getDays()) {
+            selectionArgs[1] = day.getAsString(WeatherContract.WeatherEntry.COLUMN_DATE);
+            int updated = context.getContentResolver().update(
+                    WeatherContract.WeatherEntry.CONTENT_URI, day, sDaySelection, selectionArgs);
+            if (updated > 0) {
+                changed++;
+            } else if (WeatherDelta.isComplete(day)) {
+                ContentValues values = new ContentValues(day);
+                values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                context.getContentResolver().insert(
+                        WeatherContract.WeatherEntry.CONTENT_URI, values);
+                changed++;
+            } else {
+                incomplete = true;
+            }
+        }
+
+        if (changed > 0) {
+            ForecastSnapshot.writeFromProvider(context, locationSetting);
+            SunshineSyncAdapter.notifyForecastChanged(context);
+            WeatherNotifier.notifyWeather(context);
+            WeatherNotifier.notifyAlerts(context, locationSetting,
+                    queryForecastDays(context, locationSetting));
+        }
+        sApplyLatency.recordSince(start);
+        if (incomplete) {
+            sIncomplete.inc();
+            return INCOMPLETE;
+        }
+        sApplied.inc();
+        return APPLIED;
+    }
+
+    private static long queryLocationId(Context context, String locationSetting) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static List<ForecastDay> queryForecastDays(Context context, String locationSetting) {
+        List<ForecastDay> days = new ArrayList<>();
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()),
+                FORECAST_DAY_PROJECTION,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return days;
+        }
+        try {
+            while (cursor.moveToNext()) {
+                days.add(new ForecastDay(
+                        cursor.getLong(INDEX_DATE),
+                        cursor.getInt(INDEX_WEATHER_ID),
+                        cursor.getDouble(INDEX_MAX_TEMP),
+                        cursor.getDouble(INDEX_MIN_TEMP),
+                        cursor.getDouble(INDEX_PRESSURE)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return days;
+    }
+
+    private static AtomicFile getQueueStateFile(Context context) {
+        return new AtomicFile(new File(context.getFilesDir(), QUEUE_STATE_FILE_NAME));
+    }
+
+    private static void readQueueState(AtomicFile file, PushQueue<WeatherDelta> queue) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            queue.readFrom(in);
+        } catch (FileNotFoundException e) {
+            // Nothing written yet
+        } catch (IOException e) {
+            // Start over, a redelivered message may be applied once more
+            Log.w(LOG_TAG, "Unable to read " + file.getBaseFile(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file.getBaseFile(), e);
+                }
+            }
+        }
+    }
+
+    private static void writeQueueState(AtomicFile file, PushQueue<WeatherDelta> queue) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            queue.writeTo(data);
+            data.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write " + file.getBaseFile(), e);
+            file.failWrite(out);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Read-only provider of the wallpapers stored by {@link MuzeiArtworkStore}.
+ * <p/>
+ * Not exported: Muzei is granted read access to each published wallpaper instead.
+ *
+ * @author Gennady Denisov
+ */
+public class MuzeiArtworkProvider extends ContentProvider {
+    public static final String AUTHORITY = "com.example.android.sunshine.app.muzei.artwork";
+
+    private static final String MIME_TYPE = "image/jpeg";
+
+    static Uri buildArtworkUri(String name) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(name)
+                .build();
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+                        String[] selectionArgs, String sortOrder) {
+        File file = getFile(uri);
+        if (file == null) {
+            return null;
+        }
+        if (projection == null) {
+            projection = new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+        }
+        Object[] row = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            if (OpenableColumns.DISPLAY_NAME.equals(projection[i])) {
+                row[i] = file.getName();
+            } else if (OpenableColumns.SIZE.equals(projection[i])) {
+                row[i] = file.length();
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(row);
+        return cursor;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return MIME_TYPE;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode)
+            throws FileNotFoundException {
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("Read-only: " + uri);
+        }
+        File file = getFile(uri);
+        if (file == null) {
+            throw new FileNotFoundException(uri.toString());
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection,
+                      String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    private File getFile(Uri uri) {
+        if (uri.getPathSegments().size() != 1) {
+            return null;
+        }
+        return MuzeiArtworkStore.getInstance(getContext()).getFile(uri.getLastPathSegment());
+    }
+}
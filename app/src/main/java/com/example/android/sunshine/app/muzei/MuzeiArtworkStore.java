@@ -0,0 +1,229 @@
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.target.Target;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Local copies of the Muzei wallpapers, one per condition class, served to Muzei through
+ * {@link MuzeiArtworkProvider}.
+ * <p/>
+ * A wallpaper is downloaded once, downsampled to what the screen can show and stored as a
+ * JPEG under {@code files/muzei/}. After that publishing it needs no network I/O, and Muzei
+ * only has to process a screen sized image instead of the full resolution original. The few
+ * most recently used wallpapers are kept.
+ * <p/>
+ * Rendering blocks on the network, so only call it from a worker thread.
+ *
+ * @author Gennady Denisov
+ */
+public final class MuzeiArtworkStore {
+    private static final String LOG_TAG = MuzeiArtworkStore.class.getSimpleName();
+
+    static final String DIRECTORY = "muzei";
+
+    // Wallpapers kept on disk, the one being published is never removed.
+    static final int MAX_ARTWORK = 4;
+
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
+    private static final int JPEG_QUALITY = 90;
+
+    private static MuzeiArtworkStore sInstance;
+
+    private final Context mContext;
+    private final File mDirectory;
+
+    MuzeiArtworkStore(Context context, File directory) {
+        mContext = context.getApplicationContext();
+        mDirectory = directory;
+    }
+
+    public static synchronized MuzeiArtworkStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new MuzeiArtworkStore(context,
+                    new File(context.getFilesDir(), DIRECTORY));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Name of the local wallpaper of an image. Conditions sharing an image share the name, so
+     * it also identifies the condition class.
+     */
+    static String getArtworkName(String imageUrl) {
+        return Integer.toHexString(imageUrl.hashCode()) + ".jpg";
+    }
+
+    /**
+     * @return the stored wallpaper for the image or null if it has not been rendered yet.
+     */
+    File getArtwork(String imageUrl) {
+        return getFile(getArtworkName(imageUrl));
+    }
+
+    /**
+     * @return the stored wallpaper with the given name or null, also for names outside the
+     * store directory.
+     */
+    File getFile(String name) {
+        if (name == null) {
+            return null;
+        }
+        File file = new File(mDirectory, name);
+        if (!mDirectory.equals(file.getParentFile()) || !file.isFile()) {
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Downloads the image and stores it downsampled to the screen.
+     *
+     * @return the stored wallpaper or null if the image could not be fetched or stored.
+     */
+    File render(String imageUrl) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Unable to create " + mDirectory);
+            return null;
+        }
+        File source;
+        try {
+            // Only the encoded bytes, decoding happens below at a fraction of the size
+            source = Glide.with(mContext)
+                    .load(imageUrl)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.w(LOG_TAG, "Unable to fetch " + imageUrl, e);
+            return null;
+        }
+
+        // Muzei fills the screen height and pans horizontally, so the shorter side of the
+        // wallpaper has to cover the longer side of the screen.
+        DisplayMetrics displayMetrics = mContext.getResources().getDisplayMetrics();
+        int targetPx = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, targetPx);
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeFile(source.getPath(), options);
+        if (bitmap == null) {
+            Log.w(LOG_TAG, "Unable to decode " + imageUrl);
+            return null;
+        }
+        bitmap = scale(bitmap, targetPx);
+
+        File file = new File(mDirectory, getArtworkName(imageUrl));
+        File tmp = new File(mDirectory, file.getName() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(tmp));
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to store " + file);
+                return null;
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to store " + file, e);
+            return null;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tmp, e);
+                }
+            }
+            bitmap.recycle();
+        }
+        trim(file);
+        return file;
+    }
+
+    /**
+     * Marks the wallpaper as used and lets Muzei read it.
+     *
+     * @return the content URI of the wallpaper.
+     */
+    Uri publish(File file) {
+        //noinspection ResultOfMethodCallIgnored
+        file.setLastModified(System.currentTimeMillis());
+        Uri uri = MuzeiArtworkProvider.buildArtworkUri(file.getName());
+        // The provider is not exported, Muzei gets read access to this wallpaper only
+        mContext.grantUriPermission(MUZEI_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        return uri;
+    }
+
+    /**
+     * Removes the least recently used wallpapers beyond {@link #MAX_ARTWORK}.
+     */
+    void trim(File keep) {
+        File[] files = mDirectory.listFiles();
+        if (files == null || files.length <= MAX_ARTWORK) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+                return lhsModified < rhsModified ? 1 : (lhsModified == rhsModified ? 0 : -1);
+            }
+        });
+        for (int i = MAX_ARTWORK; i < files.length; i++) {
+            if (!files[i].equals(keep)) {
+                //noinspection ResultOfMethodCallIgnored
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Largest power of two sample size which keeps the shorter side of the image at least
+     * the target size.
+     */
+    static int calculateInSampleSize(int width, int height, int targetPx) {
+        int inSampleSize = 1;
+        int shortest = Math.min(width, height);
+        while (shortest / (inSampleSize * 2) >= targetPx) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private static Bitmap scale(Bitmap bitmap, int targetPx) {
+        int shortest = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (shortest <= targetPx) {
+            return bitmap;
+        }
+        float scale = (float) targetPx / shortest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.round(bitmap.getWidth() * scale),
+                Math.round(bitmap.getHeight() * scale), true);
+        if (scaled != bitmap) {
+            bitmap.recycle();
+        }
+        return scaled;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.android.sunshine.app.muzei;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plain text log of the most recent Muzei publish decisions and their timings, shown on the
+ * sync journal screen of debug builds.
+ *
+ * @author Gennady Denisov
+ */
+public final class MuzeiPublishLog {
+    private static final String LOG_TAG = MuzeiPublishLog.class.getSimpleName();
+
+    static final String FILE_NAME = "muzei_publish.log";
+
+    static final int MAX_LINES = 50;
+
+    private MuzeiPublishLog() {
+    }
+
+    public static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * Appends a line, dropping the oldest ones beyond {@link #MAX_LINES}. Called from the
+     * Muzei source worker thread only.
+     */
+    static synchronized void append(File file, String line) {
+        List<String> lines = read(file);
+        lines.add(line);
+        int first = Math.max(0, lines.size() - MAX_LINES);
+        File tmp = new File(file.getPath() + ".tmp");
+        Writer writer = null;
+        try {
+            writer = new FileWriter(tmp);
+            for (int i = first; i < lines.size(); i++) {
+                writer.write(lines.get(i));
+                writer.write('\n');
+            }
+            writer.close();
+            writer = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to write " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write " + file, e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + tmp, e);
+                }
+            }
+        }
+    }
+
+    static List<String> read(File file) {
+        List<String> lines = new ArrayList<>();
+        if (!file.exists()) {
+            return lines;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to read " + file, e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file, e);
+                }
+            }
+        }
+        return lines;
+    }
+}
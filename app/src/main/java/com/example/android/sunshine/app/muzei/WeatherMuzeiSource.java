@@ -15,19 +15,31 @@
  */
 package com.example.android.sunshine.app.muzei;
 
+import android.content.ContentResolver;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.format.DateFormat;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
 /**
- * Muzei source that changes your background based on the current weather conditions
+ * Muzei source that changes your background based on the current weather conditions.
+ *
+ * Wallpapers are served from {@link MuzeiArtworkStore} and only published again when the
+ * condition class or the location changes.
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final String[] FORECAST_COLUMNS = new String[]{
@@ -38,6 +50,13 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
 
+    private static final Histogram sPublishLatency =
+            MetricsRegistry.histogram("muzei.publish_us");
+    private static final Histogram sRenderLatency =
+            MetricsRegistry.histogram("muzei.render_us");
+    private static final Counter sPublished = MetricsRegistry.counter("muzei.published");
+    private static final Counter sSkipped = MetricsRegistry.counter("muzei.skipped");
+
     public WeatherMuzeiSource() {
         super("WeatherMuzeiSource");
     }
@@ -54,26 +73,93 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
 
     @Override
     protected void onUpdate(int reason) {
+        long start = System.nanoTime();
         String location = Utility.getPreferredLocation(this);
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
-
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+        if (cursor == null) {
+            return;
+        }
+        int weatherId;
+        String desc;
+        String tomorrowImageUrl = null;
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
             }
+            weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            desc = cursor.getString(INDEX_SHORT_DESC);
+            if (cursor.moveToNext()) {
+                tomorrowImageUrl = Utility.getImageUrlForWeatherCondition(
+                        cursor.getInt(INDEX_WEATHER_ID));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Only publish a new wallpaper if we have a valid image
+        if (imageUrl != null) {
+            publish(reason, imageUrl, desc, location, start);
+        }
+
+        // Render tomorrow's wallpaper now, so publishing it needs no network
+        MuzeiArtworkStore store = MuzeiArtworkStore.getInstance(this);
+        if (tomorrowImageUrl != null && store.getArtwork(tomorrowImageUrl) == null) {
+            long renderStart = System.nanoTime();
+            File file = store.render(tomorrowImageUrl);
+            sRenderLatency.recordSince(renderStart);
+            log(String.format(Locale.US, "prerender %s %s render=%dms",
+                    MuzeiArtworkStore.getArtworkName(tomorrowImageUrl),
+                    file != null ? "ok" : "failed", millisSince(renderStart)));
         }
-        cursor.close();
+    }
+
+    private void publish(int reason, String imageUrl, String desc, String location, long start) {
+        // The wallpaper only changes with the condition class and the location
+        String token = MuzeiArtworkStore.getArtworkName(imageUrl) + "@" + location;
+        Artwork current = getCurrentArtwork();
+        if (reason != UPDATE_REASON_INITIAL && current != null
+                && token.equals(current.getToken()) && current.getImageUri() != null
+                && ContentResolver.SCHEME_CONTENT.equals(current.getImageUri().getScheme())) {
+            sSkipped.inc();
+            log(String.format(Locale.US, "skip %s total=%dms", token, millisSince(start)));
+            return;
+        }
+
+        MuzeiArtworkStore store = MuzeiArtworkStore.getInstance(this);
+        long renderStart = System.nanoTime();
+        File file = store.getArtwork(imageUrl);
+        boolean cached = file != null;
+        if (!cached) {
+            file = store.render(imageUrl);
+            sRenderLatency.recordSince(renderStart);
+        }
+        long renderMs = millisSince(renderStart);
+        // Fall back to the remote image, it is rendered again on the next update
+        Uri imageUri = file != null ? store.publish(file) : Uri.parse(imageUrl);
+        publishArtwork(new Artwork.Builder()
+                .imageUri(imageUri)
+                .title(desc)
+                .byline(location)
+                .token(token)
+                .viewIntent(new Intent(this, MainActivity.class))
+                .build());
+        sPublished.inc();
+        sPublishLatency.recordSince(start);
+        log(String.format(Locale.US, "publish %s %s render=%dms total=%dms", token,
+                cached ? "cached" : (file != null ? "rendered" : "remote"), renderMs,
+                millisSince(start)));
+    }
+
+    private void log(String line) {
+        MuzeiPublishLog.append(MuzeiPublishLog.getFile(this),
+                DateFormat.format("MM-dd kk:mm:ss", System.currentTimeMillis()) + " " + line);
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 }
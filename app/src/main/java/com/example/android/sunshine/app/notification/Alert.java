@@ -0,0 +1,53 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * A weather alert raised by an {@link AlertRule} for a forecast day.
+ *
+ * @author Gennady Denisov
+ */
+public final class Alert {
+    private final String mRuleId;
+    private final long mDate;
+    private final int mWeatherId;
+    private final double mValue;
+
+    Alert(String ruleId, long date, int weatherId, double value) {
+        mRuleId = ruleId;
+        mDate = date;
+        mWeatherId = weatherId;
+        mValue = value;
+    }
+
+    public String getRuleId() {
+        return mRuleId;
+    }
+
+    /**
+     * @return date of the forecast day the alert is about.
+     */
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    /**
+     * @return magnitude of the alert, its meaning depends on the rule.
+     */
+    public double getValue() {
+        return mValue;
+    }
+
+    /**
+     * Alerts with the same key are only raised once.
+     */
+    String getKey() {
+        return getKey(mRuleId, mDate);
+    }
+
+    static String getKey(String ruleId, long date) {
+        return ruleId + ':' + date;
+    }
+}
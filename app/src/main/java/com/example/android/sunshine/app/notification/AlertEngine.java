@@ -0,0 +1,271 @@
+package com.example.android.sunshine.app.notification;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Evaluates {@link AlertRule}s against the forecast of each sync.
+ * <p/>
+ * The engine keeps the last known forecast, so a sync only costs a comparison per day, and
+ * rules are evaluated for the days that changed (plus the days looking back at them) and the
+ * days that came within the horizon of a rule since the last update, instead of the whole
+ * forecast. Alerts are deduplicated per rule and day, and each rule is rate limited by its
+ * {@link AlertRule#getMinIntervalMillis()}. Alerts held back by the rate limit are evaluated
+ * again on the next updates and raised once the limit allows, if they still apply.
+ * <p/>
+ * Free of Android dependencies; {@link WeatherNotifier} persists the state with
+ * {@link #writeTo(DataOutput)} and {@link #readFrom(DataInput)}.
+ *
+ * @author Gennady Denisov
+ */
+public final class AlertEngine implements AlertRule.Window {
+    private static final int VERSION = 2;
+
+    // Days before today kept for the rules looking back.
+    private static final int HISTORY_DAYS = 3;
+
+    private final Clock mClock;
+    private final List<AlertRule> mRules;
+    private final int mMaxLookbackDays;
+
+    private String mLocation = "";
+    private final TreeMap<Long, ForecastDay> mDays = new TreeMap<>();
+    // Last time each rule raised an alert.
+    private final Map<String, Long> mLastAlertByRule = new HashMap<>();
+    // Keys of raised alerts and the day they were about.
+    private final Map<String, Long> mAlertedKeys = new HashMap<>();
+
+    // Alerts held back by the rate limit of their rule.
+    private List<Alert> mHeldBack = new ArrayList<>();
+    private long mLastUpdate;
+
+    private int mEvaluationCount;
+
+    public AlertEngine(Clock clock, List<AlertRule> rules) {
+        mClock = clock;
+        mRules = rules;
+        int maxLookbackDays = 0;
+        for (AlertRule rule : rules) {
+            maxLookbackDays = Math.max(maxLookbackDays, rule.getLookbackDays());
+        }
+        mMaxLookbackDays = maxLookbackDays;
+    }
+
+    public static List<AlertRule> createDefaultRules() {
+        return Arrays.asList(
+                new TemperatureDropRule(8),
+                new RainTomorrowRule(),
+                new PressureTrendRule(6, 2));
+    }
+
+    /**
+     * Applies the forecast of a sync and returns the alerts to raise, oldest day first.
+     *
+     * @param location location setting the forecast is for. A new location starts over.
+     * @param days     forecast of the sync, in any order.
+     */
+    public List<Alert> update(String location, List<ForecastDay> days) {
+        long now = mClock.currentTimeMillis();
+        if (!mLocation.equals(location)) {
+            mLocation = location;
+            mDays.clear();
+            mAlertedKeys.clear();
+            mHeldBack.clear();
+        }
+
+        // Days to evaluate: the changed ones and the ones looking back at them
+        TreeSet<Long> dirty = new TreeSet<>();
+        for (ForecastDay day : days) {
+            if (!day.equals(mDays.put(day.getDate(), day))) {
+                dirty.add(day.getDate());
+            }
+        }
+        if (mMaxLookbackDays > 0) {
+            for (Long date : new ArrayList<>(dirty)) {
+                long until = date + mMaxLookbackDays * AlertRule.DAY_IN_MILLIS
+                        + AlertRule.DAY_IN_MILLIS / 2;
+                dirty.addAll(mDays.subMap(date, true, until, true).keySet());
+            }
+        }
+
+        List<Alert> candidates = new ArrayList<>();
+        Set<String> evaluated = new HashSet<>();
+        for (Long date : dirty) {
+            for (AlertRule rule : mRules) {
+                evaluate(rule, mDays.get(date), now, candidates, evaluated);
+            }
+        }
+        // Days that came within the horizon of a rule since the last update
+        if (now > mLastUpdate) {
+            for (AlertRule rule : mRules) {
+                long horizon = rule.getHorizonDays() * AlertRule.DAY_IN_MILLIS;
+                for (ForecastDay day : mDays.subMap(mLastUpdate + horizon, false,
+                        now + horizon, true).values()) {
+                    evaluate(rule, day, now, candidates, evaluated);
+                }
+            }
+        }
+        for (Alert heldBack : mHeldBack) {
+            ForecastDay day = mDays.get(heldBack.getDate());
+            AlertRule rule = getRule(heldBack.getRuleId());
+            // The rule may be gone since the state was written
+            if (day != null && rule != null) {
+                evaluate(rule, day, now, candidates, evaluated);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Alert>() {
+            @Override
+            public int compare(Alert lhs, Alert rhs) {
+                long lhsDate = lhs.getDate();
+                long rhsDate = rhs.getDate();
+                return lhsDate < rhsDate ? -1 : (lhsDate == rhsDate ? 0 : 1);
+            }
+        });
+
+        List<Alert> alerts = new ArrayList<>();
+        List<Alert> heldBack = new ArrayList<>();
+        for (Alert alert : candidates) {
+            if (mAlertedKeys.containsKey(alert.getKey())) {
+                continue;
+            }
+            Long lastAlert = mLastAlertByRule.get(alert.getRuleId());
+            AlertRule rule = getRule(alert.getRuleId());
+            if (lastAlert != null && now - lastAlert < rule.getMinIntervalMillis()) {
+                heldBack.add(alert);
+                continue;
+            }
+            mAlertedKeys.put(alert.getKey(), alert.getDate());
+            mLastAlertByRule.put(alert.getRuleId(), now);
+            alerts.add(alert);
+        }
+        mHeldBack = heldBack;
+        mLastUpdate = now;
+
+        prune(now);
+        return alerts.isEmpty() ? Collections.<Alert>emptyList() : alerts;
+    }
+
+    private void evaluate(AlertRule rule, ForecastDay day, long now, List<Alert> candidates,
+                          Set<String> evaluated) {
+        if (!evaluated.add(Alert.getKey(rule.getId(), day.getDate()))) {
+            return;
+        }
+        mEvaluationCount++;
+        Alert alert = rule.evaluate(this, day, now);
+        if (alert != null) {
+            candidates.add(alert);
+        }
+    }
+
+    @Override
+    public ForecastDay getDayBefore(ForecastDay day, int days) {
+        // Half a day of slack for daylight saving time changes
+        long date = day.getDate() - days * AlertRule.DAY_IN_MILLIS;
+        Map.Entry<Long, ForecastDay> entry = mDays.floorEntry(date + AlertRule.DAY_IN_MILLIS / 2);
+        if (entry == null || entry.getKey() < date - AlertRule.DAY_IN_MILLIS / 2) {
+            return null;
+        }
+        return entry.getValue();
+    }
+
+    int getEvaluationCount() {
+        return mEvaluationCount;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(VERSION);
+        out.writeUTF(mLocation);
+        out.writeInt(mDays.size());
+        for (ForecastDay day : mDays.values()) {
+            out.writeLong(day.getDate());
+            out.writeInt(day.getWeatherId());
+            out.writeDouble(day.getHigh());
+            out.writeDouble(day.getLow());
+            out.writeDouble(day.getPressure());
+        }
+        out.writeInt(mLastAlertByRule.size());
+        for (Map.Entry<String, Long> entry : mLastAlertByRule.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(mAlertedKeys.size());
+        for (Map.Entry<String, Long> entry : mAlertedKeys.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeInt(mHeldBack.size());
+        for (Alert alert : mHeldBack) {
+            out.writeUTF(alert.getRuleId());
+            out.writeLong(alert.getDate());
+        }
+        out.writeLong(mLastUpdate);
+    }
+
+    /**
+     * Restores the state written by {@link #writeTo(DataOutput)}. State of another version is
+     * ignored, which only means the next sync evaluates every day once more.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        if (in.readByte() != VERSION) {
+            return;
+        }
+        mLocation = in.readUTF();
+        mDays.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            ForecastDay day = new ForecastDay(in.readLong(), in.readInt(), in.readDouble(),
+                    in.readDouble(), in.readDouble());
+            mDays.put(day.getDate(), day);
+        }
+        mLastAlertByRule.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            mLastAlertByRule.put(in.readUTF(), in.readLong());
+        }
+        mAlertedKeys.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            mAlertedKeys.put(in.readUTF(), in.readLong());
+        }
+        // Only the rule and the day matter, held back alerts are evaluated again.
+        mHeldBack.clear();
+        for (int i = in.readInt(); i > 0; i--) {
+            mHeldBack.add(new Alert(in.readUTF(), in.readLong(), 0, 0));
+        }
+        mLastUpdate = in.readLong();
+    }
+
+    private AlertRule getRule(String id) {
+        for (AlertRule rule : mRules) {
+            if (rule.getId().equals(id)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private void prune(long now) {
+        long oldest = now - HISTORY_DAYS * AlertRule.DAY_IN_MILLIS;
+        mDays.headMap(oldest).clear();
+        for (Iterator<Alert> it = mHeldBack.iterator(); it.hasNext(); ) {
+            if (it.next().getDate() < oldest) {
+                it.remove();
+            }
+        }
+        for (Iterator<Long> it = mAlertedKeys.values().iterator(); it.hasNext(); ) {
+            if (it.next() < oldest) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * A condition on the forecast worth notifying the user about.
+ * <p/>
+ * Rules are evaluated by {@link AlertEngine} for each forecast day that changed, and for the
+ * days that look back at it, so a rule must only depend on the day itself and the
+ * {@link #getLookbackDays()} days before it. As time passes, days entering the
+ * {@link #getHorizonDays()} after now are evaluated as well, so a rule must not alert for days
+ * further ahead.
+ *
+ * @author Gennady Denisov
+ */
+public abstract class AlertRule {
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private final String mId;
+    private final long mMinIntervalMillis;
+    private final int mHorizonDays;
+
+    AlertRule(String id, long minIntervalMillis, int horizonDays) {
+        mId = id;
+        mMinIntervalMillis = minIntervalMillis;
+        mHorizonDays = horizonDays;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * @return minimum time between two alerts of this rule.
+     */
+    public long getMinIntervalMillis() {
+        return mMinIntervalMillis;
+    }
+
+    /**
+     * @return number of days after now the rule alerts for.
+     */
+    int getHorizonDays() {
+        return mHorizonDays;
+    }
+
+    /**
+     * @return number of days before the evaluated day the rule looks at.
+     */
+    int getLookbackDays() {
+        return 0;
+    }
+
+    /**
+     * @param window gives access to the days before the evaluated one.
+     * @param day    the evaluated day.
+     * @param now    current time.
+     * @return the alert or null if the rule does not apply.
+     */
+    abstract Alert evaluate(Window window, ForecastDay day, long now);
+
+    /**
+     * @return true if the day is today or within the given number of days after it.
+     */
+    static boolean isUpcoming(ForecastDay day, long now, int days) {
+        return day.getDate() + DAY_IN_MILLIS > now && day.getDate() <= now + days * DAY_IN_MILLIS;
+    }
+
+    /**
+     * Forecast known to the engine.
+     */
+    interface Window {
+        /**
+         * @return the forecast the given number of days before the day or null if unknown.
+         */
+        ForecastDay getDayBefore(ForecastDay day, int days);
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * Source of the current time, replaced by a fake one in tests.
+ *
+ * @author Gennady Denisov
+ */
+public interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    long currentTimeMillis();
+}
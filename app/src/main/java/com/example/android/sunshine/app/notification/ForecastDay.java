@@ -0,0 +1,68 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * Forecast values of one day the alert rules look at. Temperatures are in Celsius and
+ * pressure in hPa, as stored by the sync adapter.
+ *
+ * @author Gennady Denisov
+ */
+public final class ForecastDay {
+    private final long mDate;
+    private final int mWeatherId;
+    private final double mHigh;
+    private final double mLow;
+    private final double mPressure;
+
+    public ForecastDay(long date, int weatherId, double high, double low, double pressure) {
+        mDate = date;
+        mWeatherId = weatherId;
+        mHigh = high;
+        mLow = low;
+        mPressure = pressure;
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public double getHigh() {
+        return mHigh;
+    }
+
+    public double getLow() {
+        return mLow;
+    }
+
+    public double getPressure() {
+        return mPressure;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ForecastDay)) return false;
+        ForecastDay that = (ForecastDay) o;
+        return mDate == that.mDate
+                && mWeatherId == that.mWeatherId
+                && Double.compare(that.mHigh, mHigh) == 0
+                && Double.compare(that.mLow, mLow) == 0
+                && Double.compare(that.mPressure, mPressure) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (mDate ^ (mDate >>> 32));
+        result = 31 * result + mWeatherId;
+        long temp = Double.doubleToLongBits(mHigh);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(mLow);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        temp = Double.doubleToLongBits(mPressure);
+        result = 31 * result + (int) (temp ^ (temp >>> 32));
+        return result;
+    }
+}
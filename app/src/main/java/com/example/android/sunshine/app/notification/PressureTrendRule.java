@@ -0,0 +1,44 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * Alerts when the pressure of an upcoming day falls more than a threshold over the days
+ * before it, a sign of unsettled weather.
+ *
+ * @author Gennady Denisov
+ */
+final class PressureTrendRule extends AlertRule {
+    static final String ID = "pressure_falling";
+
+    private static final int HORIZON_DAYS = 3;
+
+    private final double mThreshold;
+    private final int mDays;
+
+    /**
+     * @param threshold fall of the pressure in hPa.
+     * @param days      number of days the fall is measured over.
+     */
+    PressureTrendRule(double threshold, int days) {
+        super(ID, DAY_IN_MILLIS, HORIZON_DAYS);
+        mThreshold = threshold;
+        mDays = days;
+    }
+
+    @Override
+    int getLookbackDays() {
+        return mDays;
+    }
+
+    @Override
+    Alert evaluate(Window window, ForecastDay day, long now) {
+        if (!isUpcoming(day, now, getHorizonDays())) {
+            return null;
+        }
+        ForecastDay before = window.getDayBefore(day, mDays);
+        if (before == null) {
+            return null;
+        }
+        double fall = before.getPressure() - day.getPressure();
+        return fall > mThreshold ? new Alert(ID, day.getDate(), day.getWeatherId(), fall) : null;
+    }
+}
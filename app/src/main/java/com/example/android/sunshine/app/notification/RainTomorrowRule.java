@@ -0,0 +1,29 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * Alerts when tomorrow brings rain, drizzle or a thunderstorm.
+ *
+ * @author Gennady Denisov
+ */
+final class RainTomorrowRule extends AlertRule {
+    static final String ID = "rain_tomorrow";
+
+    RainTomorrowRule() {
+        super(ID, DAY_IN_MILLIS / 2, 1);
+    }
+
+    @Override
+    Alert evaluate(Window window, ForecastDay day, long now) {
+        boolean tomorrow = day.getDate() > now && day.getDate() <= now + DAY_IN_MILLIS;
+        if (!tomorrow || !isRain(day.getWeatherId())) {
+            return null;
+        }
+        return new Alert(ID, day.getDate(), day.getWeatherId(), 0);
+    }
+
+    static boolean isRain(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        return weatherId >= 200 && weatherId <= 531;
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.android.sunshine.app.notification;
+
+/**
+ * Alerts when the high temperature of an upcoming day is more than a threshold below the day
+ * before.
+ *
+ * @author Gennady Denisov
+ */
+final class TemperatureDropRule extends AlertRule {
+    static final String ID = "temperature_drop";
+
+    private static final int HORIZON_DAYS = 3;
+
+    private final double mThreshold;
+
+    /**
+     * @param threshold drop of the high temperature in Celsius.
+     */
+    TemperatureDropRule(double threshold) {
+        super(ID, DAY_IN_MILLIS, HORIZON_DAYS);
+        mThreshold = threshold;
+    }
+
+    @Override
+    int getLookbackDays() {
+        return 1;
+    }
+
+    @Override
+    Alert evaluate(Window window, ForecastDay day, long now) {
+        if (!isUpcoming(day, now, getHorizonDays())) {
+            return null;
+        }
+        ForecastDay previous = window.getDayBefore(day, 1);
+        if (previous == null) {
+            return null;
+        }
+        double drop = previous.getHigh() - day.getHigh();
+        return drop > mThreshold ? new Alert(ID, day.getDate(), day.getWeatherId(), drop) : null;
+    }
+}
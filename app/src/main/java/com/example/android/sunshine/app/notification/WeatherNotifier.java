@@ -0,0 +1,359 @@
+package com.example.android.sunshine.app.notification;
+
+import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Build;
+import android.preference.PreferenceManager;
+import android.service.notification.StatusBarNotification;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.support.v4.util.AtomicFile;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.ArtBitmapCache;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SyncStatusStore;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts the daily weather notification.
+ * <p/>
+ * The notification is posted right away with the bundled art, decoded at the large icon size
+ * and kept in {@link ArtBitmapCache}, so posting never waits on the network. When an art pack
+ * is selected its art is loaded in the background and replaces the bundled art only if it
+ * arrives within {@link #UPGRADE_BUDGET_MS}; a late icon is dropped rather than changing a
+ * notification the user has already looked at.
+ * <p/>
+ * Alerts raised by the {@link AlertEngine} on the forecast of each sync are posted as a
+ * separate notification listing all of them.
+ *
+ * @author Gennady Denisov
+ */
+public final class WeatherNotifier {
+    private static final String LOG_TAG = WeatherNotifier.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    static final int WEATHER_NOTIFICATION_ID = 3004;
+    static final int ALERT_NOTIFICATION_ID = 3005;
+
+    static final String ALERT_STATE_FILE_NAME = "alerts.state";
+
+    // Time the art pack icon may take to replace the bundled art.
+    static final long UPGRADE_BUDGET_MS = 5000;
+
+    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+
+    private static final Histogram sTimeToPost =
+            MetricsRegistry.histogram("notification.time_to_post_us");
+    private static final Histogram sUpgradeLatency =
+            MetricsRegistry.histogram("notification.upgrade_us");
+    private static final Counter sUpgraded = MetricsRegistry.counter("notification.upgraded");
+    private static final Counter sUpgradeMissed =
+            MetricsRegistry.counter("notification.upgrade_missed");
+    private static final Histogram sAlertLatency =
+            MetricsRegistry.histogram("notification.alert_rules_us");
+    private static final Counter sAlerts = MetricsRegistry.counter("notification.alerts");
+
+    private static final Executor sUpgradeExecutor = Executors.newSingleThreadExecutor();
+
+    private static AlertEngine sAlertEngine;
+
+    private WeatherNotifier() {
+    }
+
+    /**
+     * Posts today's weather if notifications are enabled and the last one is more than a day
+     * old. Only reads local data, the art upgrade runs on its own thread.
+     */
+    public static void notifyWeather(Context context) {
+        long start = System.nanoTime();
+        //checking the last update and notify if it' the first of the day
+        if (!isEnabled(context)) {
+            return;
+        }
+
+        SyncStatusStore statusStore = SyncStatusStore.getInstance(context);
+        long lastSync = statusStore.getLastNotification();
+        if (System.currentTimeMillis() - lastSync < DAY_IN_MILLIS) {
+            return;
+        }
+
+        // Last sync was more than 1 day ago, let's send a notification with the weather.
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery,
+                System.currentTimeMillis());
+
+        // we'll query our contentProvider, as always
+        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION,
+                null, null, null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return;
+            }
+            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            double high = cursor.getDouble(INDEX_MAX_TEMP);
+            double low = cursor.getDouble(INDEX_MIN_TEMP);
+            String desc = cursor.getString(INDEX_SHORT_DESC);
+            post(context, weatherId, high, low, desc, start);
+        } finally {
+            cursor.close();
+        }
+
+        //refreshing last sync
+        statusStore.setLastNotification(System.currentTimeMillis());
+    }
+
+    /**
+     * Runs the alert rules on the forecast of a sync and posts the raised alerts, if any, in a
+     * single notification. Called from the sync thread.
+     *
+     * @param location location setting the forecast is for.
+     * @param days     forecast written by the sync.
+     */
+    public static synchronized void notifyAlerts(Context context, String location,
+                                                 List<ForecastDay> days) {
+        long start = System.nanoTime();
+        AtomicFile stateFile =
+                new AtomicFile(new File(context.getFilesDir(), ALERT_STATE_FILE_NAME));
+        if (sAlertEngine == null) {
+            sAlertEngine = new AlertEngine(Clock.SYSTEM, AlertEngine.createDefaultRules());
+            readAlertState(stateFile, sAlertEngine);
+        }
+        List<Alert> alerts = sAlertEngine.update(location, days);
+        writeAlertState(stateFile, sAlertEngine);
+        sAlertLatency.recordSince(start);
+        if (alerts.isEmpty() || !isEnabled(context)) {
+            return;
+        }
+        sAlerts.add(alerts.size());
+
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        for (Alert alert : alerts) {
+            style.addLine(formatAlert(context, alert));
+        }
+        Alert first = alerts.get(0);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setColor(context.getResources().getColor(R.color.primary_light))
+                .setSmallIcon(Utility.getIconResourceForWeatherCondition(first.getWeatherId()))
+                .setContentTitle(context.getString(R.string.title_alerts))
+                .setContentText(formatAlert(context, first))
+                .setNumber(alerts.size())
+                .setStyle(style)
+                .setContentIntent(createContentIntent(context));
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(ALERT_NOTIFICATION_ID, builder.build());
+    }
+
+    private static String formatAlert(Context context, Alert alert) {
+        String day = Utility.getDayName(context, alert.getDate());
+        switch (alert.getRuleId()) {
+            case TemperatureDropRule.ID: {
+                // The value is a difference, so only the scale changes
+                double drop = Utility.isMetric(context) ? alert.getValue() : alert.getValue() * 1.8;
+                return context.getString(R.string.format_alert_temperature_drop, day,
+                        context.getString(R.string.format_temperature, drop));
+            }
+            case RainTomorrowRule.ID:
+                return context.getString(R.string.format_alert_rain_tomorrow,
+                        Utility.getStringForWeatherCondition(context, alert.getWeatherId()));
+            case PressureTrendRule.ID:
+                return context.getString(R.string.format_alert_pressure_falling, day,
+                        alert.getValue());
+            default:
+                throw new IllegalArgumentException("Unknown rule: " + alert.getRuleId());
+        }
+    }
+
+    private static void readAlertState(AtomicFile file, AlertEngine engine) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(file.openRead()));
+            engine.readFrom(in);
+        } catch (FileNotFoundException e) {
+            // Nothing written yet
+        } catch (IOException e) {
+            // Start over, the next sync evaluates every day once more
+            Log.w(LOG_TAG, "Unable to read " + file.getBaseFile(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error closing " + file.getBaseFile(), e);
+                }
+            }
+        }
+    }
+
+    private static void writeAlertState(AtomicFile file, AlertEngine engine) {
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+            engine.writeTo(data);
+            data.flush();
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write " + file.getBaseFile(), e);
+            file.failWrite(out);
+        }
+    }
+
+    private static boolean isEnabled(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
+        return prefs.getBoolean(displayNotificationsKey,
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+    }
+
+    private static PendingIntent createContentIntent(Context context) {
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.
+        Intent resultIntent = new Intent(context, MainActivity.class);
+
+        // The stack builder object will contain an artificial back stack for the
+        // started Activity.
+        // This ensures that navigating backward from the Activity leads out of
+        // your application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntent(resultIntent);
+        return stackBuilder.getPendingIntent(
+                0,
+                PendingIntent.FLAG_UPDATE_CURRENT
+        );
+    }
+
+    private static void post(Context context, final int weatherId, double high, double low,
+                             String desc, long start) {
+        Resources resources = context.getResources();
+        final int largeIconSize = getLargeIconSize(resources);
+        ArtBitmapCache artCache = ArtBitmapCache.getInstance(context);
+        String title = context.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(context.getString(R.string.format_notification),
+                desc,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        final NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(context)
+                        .setColor(resources.getColor(R.color.primary_light))
+                        .setSmallIcon(Utility.getIconResourceForWeatherCondition(weatherId))
+                        .setLargeIcon(artCache.getLocalArt(weatherId, largeIconSize))
+                        .setContentTitle(title)
+                        .setContentText(contentText);
+
+        builder.setContentIntent(createContentIntent(context));
+
+        final NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
+        sTimeToPost.recordSince(start);
+
+        if (Utility.usingLocalGraphics(context)) {
+            return;
+        }
+        final long upgradeStart = System.nanoTime();
+        final Context appContext = context.getApplicationContext();
+        sUpgradeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Null on the way back to the bundled art, which is already showing
+                Bitmap art = ArtBitmapCache.getInstance(appContext).getRemoteArt(weatherId,
+                        largeIconSize, UPGRADE_BUDGET_MS);
+                long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - upgradeStart);
+                sUpgradeLatency.recordSince(upgradeStart);
+                if (art == null || elapsedMs > UPGRADE_BUDGET_MS) {
+                    Log.d(LOG_TAG, "Art pack icon missed the budget: " + elapsedMs + "ms");
+                    sUpgradeMissed.inc();
+                    return;
+                }
+                if (!isShowing(notificationManager)) {
+                    // Dismissed in the meantime, don't bring it back
+                    return;
+                }
+                notificationManager.notify(WEATHER_NOTIFICATION_ID, builder
+                        .setLargeIcon(art)
+                        .setOnlyAlertOnce(true)
+                        .build());
+                sUpgraded.inc();
+            }
+        });
+    }
+
+    private static boolean isShowing(NotificationManager notificationManager) {
+        // Prior to Marshmallow there is no way to tell, the short budget keeps the window small
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            return true;
+        }
+        return isActive(notificationManager);
+    }
+
+    @TargetApi(Build.VERSION_CODES.M)
+    private static boolean isActive(NotificationManager notificationManager) {
+        for (StatusBarNotification notification : notificationManager.getActiveNotifications()) {
+            if (notification.getId() == WEATHER_NOTIFICATION_ID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressLint("InlinedApi")
+    static int getLargeIconSize(Resources resources) {
+        // On Honeycomb and higher devices, we can retrieve the size of the large icon
+        // Prior to that, we use a fixed size
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            return Math.max(
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width),
+                    resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height));
+        }
+        return resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+    }
+}
@@ -2,9 +2,6 @@ package com.example.android.sunshine.app.sync;
 
 import android.accounts.Account;
 import android.accounts.AccountManager;
-import android.annotation.SuppressLint;
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
@@ -12,37 +9,40 @@ import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
-import android.content.res.Resources;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Looper;
+import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
-import android.support.v4.app.NotificationCompat;
-import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.notification.ForecastDay;
+import com.example.android.sunshine.app.notification.WeatherNotifier;
 import com.example.android.sunshine.app.wear.SendWeatherDataService;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Gauge;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -50,33 +50,27 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
-    public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
+    public static final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
     // Interval at which to sync with the weather, in seconds.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
-    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
-    private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // With push registered the server sends the changes, polling is only a safety net.
+    public static final int SYNC_INTERVAL_PUSH = 60 * 720;
+    public static final int SYNC_FLEXTIME_PUSH = SYNC_INTERVAL_PUSH / 3;
 
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[]{
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // Marks a sync requested because a pushed forecast delta could not be applied on its own.
+    static final String EXTRA_PUSH = "com.example.android.sunshine.app.sync.extra.PUSH";
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID, LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -89,6 +83,21 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Sync metrics, see MetricsRegistry.
+    private static final Histogram sFetchLatency = MetricsRegistry.histogram("sync.fetch_us");
+    private static final Histogram sParseLatency = MetricsRegistry.histogram("sync.parse_us");
+    private static final Histogram sWriteLatency = MetricsRegistry.histogram("sync.write_us");
+    private static final Counter sSyncSuccess = MetricsRegistry.counter("sync.success");
+    private static final Counter sSyncFailure = MetricsRegistry.counter("sync.failure");
+    private static final Gauge sRowsInserted = MetricsRegistry.gauge("sync.rows_inserted");
+
+    // The sync account, memoized after it has been resolved through the AccountManager once.
+    // Cleared when the background paths find the account removed, e.g. in the system settings.
+    private static volatile Account sSyncAccount;
+
+    // Runs account resolution and sync requests, which are binder calls, off the main thread.
+    private static final Executor sAccountExecutor = Executors.newSingleThreadExecutor();
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
     }
@@ -103,6 +112,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         String locationQuery = Utility.getPreferredLocation(context);
         String locationLatitude = String.valueOf(Utility.getLocationLatitude(context));
         String locationLongitude = String.valueOf(Utility.getLocationLongitude(context));
+        SyncJournal.Entry entry = new SyncJournal.Entry(getTrigger(extras), locationQuery);
 
         // These two need to be declared outside the try/catch
         // so that they can be closed in the finally block.
@@ -116,6 +126,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         String units = "metric";
         int numDays = 14;
 
+        long fetchStart = System.nanoTime();
         try {
             // Construct the URL for the OpenWeatherMap query
             // Possible parameters are avaiable at OWM's forecast API page, at
@@ -157,6 +168,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
             urlConnection.connect();
+            entry.setHttpStatus(urlConnection.getResponseCode());
 
             // Read the input stream into a String
             InputStream inputStream = urlConnection.getInputStream();
@@ -177,21 +189,32 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (buffer.length() == 0) {
                 // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                setLocationStatus(entry, LOCATION_STATUS_SERVER_DOWN);
+                sSyncFailure.inc();
                 return;
             }
             forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            sFetchLatency.recordSince(fetchStart);
+            entry.set(SyncJournal.METRIC_FETCH_MS, millisSince(fetchStart));
+            int contentLength = urlConnection.getContentLength();
+            entry.set(SyncJournal.METRIC_BYTES, contentLength >= 0 ? contentLength : buffer.length());
+            getWeatherDataFromJson(forecastJsonStr, locationQuery, entry);
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            setLocationStatus(entry, LOCATION_STATUS_SERVER_DOWN);
+            sSyncFailure.inc();
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            setLocationStatus(entry, LOCATION_STATUS_SERVER_INVALID);
+            sSyncFailure.inc();
         } finally {
+            entry.set(SyncJournal.METRIC_TOTAL_MS, millisSince(fetchStart));
+            SyncJournal.append(context, entry);
+            MetricsRegistry.writeSnapshotAsync(
+                    new File(context.getFilesDir(), MetricsRegistry.SNAPSHOT_FILE_NAME));
             if (urlConnection != null) {
                 urlConnection.disconnect();
             }
@@ -214,7 +237,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * into an Object hierarchy for us.
      */
     private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
+                                        String locationSetting,
+                                        SyncJournal.Entry entry)
             throws JSONException {
 
         // Now we have a String representing the complete forecast in JSON Format.
@@ -251,6 +275,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
         final String OWM_MESSAGE_CODE = "cod";
 
+        long parseStart = System.nanoTime();
         try {
             JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
@@ -262,10 +287,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     case HttpURLConnection.HTTP_OK:
                         break;
                     case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
+                        setLocationStatus(entry, LOCATION_STATUS_INVALID);
+                        sSyncFailure.inc();
                         return;
                     default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+                        setLocationStatus(entry, LOCATION_STATUS_SERVER_DOWN);
+                        sSyncFailure.inc();
                         return;
                 }
             }
@@ -355,9 +382,13 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 cVVector.add(weatherValues);
             }
 
+            sParseLatency.recordSince(parseStart);
+            entry.set(SyncJournal.METRIC_PARSE_MS, millisSince(parseStart));
+
             int inserted = 0;
             // add to database
             if (cVVector.size() > 0) {
+                long writeStart = System.nanoTime();
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
                 getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
@@ -367,34 +398,84 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                updateWearable();
+                // refresh the snapshot used to populate the forecast list on cold start
+                ForecastSnapshot.writeFromProvider(getContext(), locationSetting);
+                sWriteLatency.recordSince(writeStart);
+                entry.set(SyncJournal.METRIC_WRITE_MS, millisSince(writeStart));
+
+                long fanOutStart = System.nanoTime();
+                notifyForecastChanged(getContext());
+                WeatherNotifier.notifyWeather(getContext());
+                WeatherNotifier.notifyAlerts(getContext(), locationSetting, toForecastDays(cVVector));
+                entry.set(SyncJournal.METRIC_FAN_OUT_MS, millisSince(fanOutStart));
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+            sRowsInserted.set(cVVector.size());
+            entry.set(SyncJournal.METRIC_ROWS, cVVector.size());
+            sSyncSuccess.inc();
+            setLocationStatus(entry, LOCATION_STATUS_OK);
 
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            setLocationStatus(entry, LOCATION_STATUS_SERVER_INVALID);
+            sSyncFailure.inc();
         }
     }
 
-    private void updateWidgets() {
-        Context context = getContext();
+    private static List<ForecastDay> toForecastDays(Vector<ContentValues> cVVector) {
+        List<ForecastDay> days = new ArrayList<>(cVVector.size());
+        for (ContentValues values : cVVector) {
+            days.add(new ForecastDay(
+                    values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE),
+                    values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_PRESSURE)));
+        }
+        return days;
+    }
+
+    private static int getTrigger(Bundle extras) {
+        if (extras.getBoolean(ContentResolver.SYNC_EXTRAS_INITIALIZE, false)) {
+            return SyncJournal.TRIGGER_INITIALIZE;
+        }
+        if (extras.getBoolean(EXTRA_PUSH, false)) {
+            return SyncJournal.TRIGGER_PUSH;
+        }
+        if (extras.getBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, false)) {
+            return SyncJournal.TRIGGER_MANUAL;
+        }
+        return SyncJournal.TRIGGER_PERIODIC;
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Lets the widgets, Muzei and the wearable pick up a changed forecast. Used after a sync
+     * and after a pushed delta was applied.
+     *
+     * @param context Context used to reach the other components.
+     */
+    public static void notifyForecastChanged(Context context) {
+        updateWidgets(context);
+        updateMuzei(context);
+        updateWearable(context);
+    }
+
+    private static void updateWidgets(Context context) {
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
                 .setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    private static void updateMuzei(Context context) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
         }
@@ -403,116 +484,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     /**
      * Updates info about the weather on wearable.
      */
-    private void updateWearable() {
+    private static void updateWearable(Context context) {
         Log.d(LOG_TAG, "Updating wearable with weather data from SyncAdapter.");
-        SendWeatherDataService.launchService(getContext());
-    }
-
-    private void notifyWeather() {
-        Context context = getContext();
-        //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
-
-        if (displayNotifications) {
-
-            String lastNotificationKey = context.getString(R.string.pref_last_notification);
-            long lastSync = prefs.getLong(lastNotificationKey, 0);
-
-            if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
-                // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
-                }
-                cursor.close();
-            }
-        }
+        SendWeatherDataService.launchService(context);
     }
 
     /**
@@ -565,6 +539,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         return locationId;
     }
 
+    /**
+     * Schedules the periodic sync, rarely when the app receives forecast pushes and at the
+     * regular interval otherwise. Blocks on the account, so call it from a worker thread.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void configurePeriodicSync(Context context) {
+        boolean pushRegistered = PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(MainActivity.PUSH_REGISTERED, false);
+        if (pushRegistered) {
+            configurePeriodicSync(context, SYNC_INTERVAL_PUSH, SYNC_FLEXTIME_PUSH);
+        } else {
+            configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        }
+    }
+
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -585,62 +575,140 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Helper method to have the sync adapter sync immediately
+     * Helper method to have the sync adapter sync immediately. The request is made on a
+     * background thread, so this is safe to call from the UI thread.
      *
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
-        Bundle bundle = new Bundle();
-        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
-        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
-        ContentResolver.requestSync(getSyncAccount(context),
-                context.getString(R.string.content_authority), bundle);
+        final Context appContext = context.getApplicationContext();
+        sAccountExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle bundle = new Bundle();
+                bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+                bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+                ContentResolver.requestSync(getVerifiedSyncAccount(appContext),
+                        appContext.getString(R.string.content_authority), bundle);
+            }
+        });
+    }
+
+    /**
+     * Requests an expedited sync because a pushed forecast delta was incomplete. The request
+     * is made on a background thread, so this is safe to call from any thread.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void syncForPush(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sAccountExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bundle bundle = new Bundle();
+                bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+                bundle.putBoolean(EXTRA_PUSH, true);
+                ContentResolver.requestSync(getVerifiedSyncAccount(appContext),
+                        appContext.getString(R.string.content_authority), bundle);
+            }
+        });
     }
 
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
      * onAccountCreated method so we can initialize things.
+     * <p/>
+     * The account is memoized, so only the first call talks to the AccountManager. That first
+     * call blocks on binder calls and should not be made from the UI thread; use
+     * {@link #initializeSyncAdapter(Context)} there instead. The memoized account is not checked
+     * again, see {@link #getVerifiedSyncAccount(Context)}.
      *
      * @param context The context used to access the account service
      * @return a fake account.
      */
     public static Account getSyncAccount(Context context) {
-        // Get an instance of the Android account manager
-        AccountManager accountManager =
-                (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
+        Account account = sSyncAccount;
+        if (null != account) {
+            return account;
+        }
+        synchronized (SunshineSyncAdapter.class) {
+            if (null != sSyncAccount) {
+                return sSyncAccount;
+            }
+            noteSlowCallOnMainThread("SunshineSyncAdapter.getSyncAccount");
 
-        // Create the account type and default account
-        Account newAccount = new Account(
-                context.getString(R.string.app_name), context.getString(R.string.sync_account_type));
+            // Get an instance of the Android account manager
+            AccountManager accountManager =
+                    (AccountManager) context.getSystemService(Context.ACCOUNT_SERVICE);
 
-        // If the password doesn't exist, the account doesn't exist
-        if (null == accountManager.getPassword(newAccount)) {
+            // Create the account type and default account
+            Account newAccount = new Account(
+                    context.getString(R.string.app_name), context.getString(R.string.sync_account_type));
+
+            // If the password doesn't exist, the account doesn't exist
+            if (null == accountManager.getPassword(newAccount)) {
 
-        /*
-         * Add the account and account type, no password or user data
-         * If successful, return the Account object, otherwise report an error.
-         */
-            if (!accountManager.addAccountExplicitly(newAccount, "", null)) {
-                return null;
-            }
             /*
-             * If you don't set android:syncable="true" in
-             * in your <provider> element in the manifest,
-             * then call ContentResolver.setIsSyncable(account, AUTHORITY, 1)
-             * here.
+             * Add the account and account type, no password or user data
+             * If successful, return the Account object, otherwise report an error.
              */
+                if (!accountManager.addAccountExplicitly(newAccount, "", null)) {
+                    return null;
+                }
+                /*
+                 * If you don't set android:syncable="true" in
+                 * in your <provider> element in the manifest,
+                 * then call ContentResolver.setIsSyncable(account, AUTHORITY, 1)
+                 * here.
+                 */
+
+                // Memoize first, onAccountCreated resolves the account again.
+                sSyncAccount = newAccount;
+                onAccountCreated(newAccount, context);
+            }
+            sSyncAccount = newAccount;
+            return newAccount;
+        }
+    }
 
-            onAccountCreated(newAccount, context);
+    /**
+     * Like {@link #getSyncAccount(Context)}, but first checks that the memoized account still
+     * exists, and adds it again if it has been removed. Costs a binder call, so it is only used
+     * on the background paths that make binder calls with the account anyway.
+     *
+     * @param context The context used to access the account service
+     * @return a fake account.
+     */
+    private static Account getVerifiedSyncAccount(Context context) {
+        Account account = sSyncAccount;
+        // If the password doesn't exist, the account doesn't exist
+        if (null != account && null == AccountManager.get(context).getPassword(account)) {
+            synchronized (SunshineSyncAdapter.class) {
+                if (account.equals(sSyncAccount)) {
+                    sSyncAccount = null;
+                }
+            }
+        }
+        return getSyncAccount(context);
+    }
+
+    /**
+     * Lets StrictMode flag account binder calls made from the main thread, in the same way
+     * as disk access.
+     */
+    private static void noteSlowCallOnMainThread(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Looper.myLooper() == Looper.getMainLooper()) {
+            StrictMode.noteSlowCall(name);
         }
-        return newAccount;
     }
 
     private static void onAccountCreated(Account newAccount, Context context) {
         /*
          * Since we've created an account
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        SunshineSyncAdapter.configurePeriodicSync(context);
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -653,21 +721,38 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         syncImmediately(context);
     }
 
+    /**
+     * Makes sure the sync account exists and periodic sync is configured. The work happens on
+     * a background executor, so this never blocks the caller.
+     *
+     * @param context The context used to access the account service
+     */
     public static void initializeSyncAdapter(Context context) {
-        getSyncAccount(context);
+        final Context appContext = context.getApplicationContext();
+        sAccountExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                getVerifiedSyncAccount(appContext);
+            }
+        });
     }
 
     /**
-     * Sets the location status into shared preference.  This function should not be called from
-     * the UI thread because it uses commit to write to the shared preferences.
+     * Sets the location status in the {@link SyncStatusStore}. The store writes it to disk
+     * asynchronously, batched with any other status change of this sync.
      *
-     * @param c              Context to get the PreferenceManager from.
+     * @param c              Context to get the SyncStatusStore from.
      * @param locationStatus The IntDef value to set
      */
     static private void setLocationStatus(Context c, @LocationStatus int locationStatus) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
-        spe.commit();
+        SyncStatusStore.getInstance(c).setLocationStatus(locationStatus);
+    }
+
+    /**
+     * Records the outcome of the sync in the journal entry and persists it as the location status.
+     */
+    private void setLocationStatus(SyncJournal.Entry entry, @LocationStatus int locationStatus) {
+        entry.setOutcome(locationStatus);
+        setLocationStatus(getContext(), locationStatus);
     }
 }
\ No newline at end of file
@@ -0,0 +1,383 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Append-only history of syncs with per-phase timings and outcomes.
+ * <p/>
+ * Entries are appended on a background executor, so recording never delays the sync itself.
+ * Each record is length prefixed, so a truncated tail (e.g. the process was killed mid-write)
+ * only loses the last entry: readers skip it and it is cut off before the next append. Once
+ * the file grows past {@link #MAX_BYTES} the oldest half of the history is dropped.
+ *
+ * @author Gennady Denisov
+ */
+public final class SyncJournal {
+    private static final String LOG_TAG = SyncJournal.class.getSimpleName();
+
+    static final String FILE_NAME = "sync.journal";
+
+    static final int MAX_BYTES = 64 * 1024;
+
+    private static final int VERSION = 1;
+
+    public static final int TRIGGER_PERIODIC = 0;
+    public static final int TRIGGER_MANUAL = 1;
+    public static final int TRIGGER_INITIALIZE = 2;
+    public static final int TRIGGER_PUSH = 3;
+
+    // Metrics which can be queried through Summary#getPercentile.
+    public static final int METRIC_TOTAL_MS = 0;
+    public static final int METRIC_FETCH_MS = 1;
+    public static final int METRIC_PARSE_MS = 2;
+    public static final int METRIC_WRITE_MS = 3;
+    public static final int METRIC_FAN_OUT_MS = 4;
+    public static final int METRIC_BYTES = 5;
+    public static final int METRIC_ROWS = 6;
+    private static final int METRIC_COUNT = 7;
+
+    private static final Executor sWriteExecutor = Executors.newSingleThreadExecutor();
+
+    // The journal known to end with a complete record, and its length at that point.
+    private static File sCheckedFile;
+    private static long sCheckedLength = -1;
+
+    private SyncJournal() {
+
+    }
+
+    /**
+     * A single sync. Filled in by the sync adapter while the sync progresses.
+     */
+    public static final class Entry {
+        private long mTimestamp;
+        private int mTrigger;
+        private String mLocation;
+        private int mHttpStatus;
+        private int mOutcome = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        private final int[] mValues = new int[METRIC_COUNT];
+
+        Entry(int trigger, String location) {
+            mTimestamp = System.currentTimeMillis();
+            mTrigger = trigger;
+            mLocation = location;
+        }
+
+        private Entry() {
+
+        }
+
+        public long getTimestamp() {
+            return mTimestamp;
+        }
+
+        public int getTrigger() {
+            return mTrigger;
+        }
+
+        public String getLocation() {
+            return mLocation;
+        }
+
+        public int getHttpStatus() {
+            return mHttpStatus;
+        }
+
+        /**
+         * @return one of the {@link SunshineSyncAdapter.LocationStatus} values.
+         */
+        public int getOutcome() {
+            return mOutcome;
+        }
+
+        public boolean isSuccessful() {
+            return mOutcome == SunshineSyncAdapter.LOCATION_STATUS_OK;
+        }
+
+        /**
+         * @param metric one of the METRIC_* constants.
+         */
+        public int get(int metric) {
+            return mValues[metric];
+        }
+
+        void set(int metric, long value) {
+            mValues[metric] = (int) Math.min(Integer.MAX_VALUE, value);
+        }
+
+        void setHttpStatus(int httpStatus) {
+            mHttpStatus = httpStatus;
+        }
+
+        void setOutcome(int outcome) {
+            mOutcome = outcome;
+        }
+    }
+
+    /**
+     * Percentiles over a set of entries, oldest first.
+     */
+    public static final class Summary {
+        private final int mCount;
+        private final int mFailures;
+        private final long[][] mSorted = new long[METRIC_COUNT][];
+
+        Summary(List<Entry> entries) {
+            mCount = entries.size();
+            int failures = 0;
+            for (int metric = 0; metric < METRIC_COUNT; metric++) {
+                mSorted[metric] = new long[mCount];
+            }
+            for (int i = 0; i < mCount; i++) {
+                Entry entry = entries.get(i);
+                if (!entry.isSuccessful()) {
+                    failures++;
+                }
+                for (int metric = 0; metric < METRIC_COUNT; metric++) {
+                    mSorted[metric][i] = entry.get(metric);
+                }
+            }
+            for (long[] values : mSorted) {
+                Arrays.sort(values);
+            }
+            mFailures = failures;
+        }
+
+        public int getCount() {
+            return mCount;
+        }
+
+        public int getFailures() {
+            return mFailures;
+        }
+
+        /**
+         * Nearest-rank percentile of a metric.
+         *
+         * @param metric     one of the METRIC_* constants.
+         * @param percentile percentile in the range (0, 100].
+         * @return the percentile or 0 if there are no entries.
+         */
+        public long getPercentile(int metric, double percentile) {
+            long[] values = mSorted[metric];
+            if (values.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100.0 * values.length);
+            return values[Math.max(0, Math.min(values.length, rank) - 1)];
+        }
+    }
+
+    /**
+     * Appends the entry on a background thread.
+     */
+    static void append(Context context, final Entry entry) {
+        final File file = getFile(context);
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                appendNow(file, entry);
+            }
+        });
+    }
+
+    /**
+     * Reads the whole journal. Should never be called from the main thread.
+     *
+     * @return entries, oldest first.
+     */
+    public static List<Entry> read(Context context) {
+        return read(getFile(context));
+    }
+
+    /**
+     * Summarizes the most recent entries.
+     *
+     * @param entries entries as returned by {@link #read(Context)}.
+     * @param limit   maximum number of the newest entries to take into account.
+     */
+    public static Summary summarize(List<Entry> entries, int limit) {
+        int from = Math.max(0, entries.size() - limit);
+        return new Summary(entries.subList(from, entries.size()));
+    }
+
+    static File getFile(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    static synchronized void appendNow(File file, Entry entry) {
+        if (file.length() > MAX_BYTES) {
+            trim(file);
+        }
+        DataOutputStream out = null;
+        try {
+            if (!file.equals(sCheckedFile) || file.length() != sCheckedLength) {
+                cutPartialRecord(file);
+            }
+            boolean created = !file.exists() || file.length() == 0;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            if (created) {
+                out.writeByte(VERSION);
+            }
+            writeEntry(out, entry);
+            out.close();
+            out = null;
+            sCheckedFile = file;
+            sCheckedLength = file.length();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to append to sync journal", e);
+            sCheckedFile = null;
+        } finally {
+            close(out);
+        }
+    }
+
+    /**
+     * Cuts the file after its last complete record, so the next record does not start in the
+     * middle of a partial one. A journal of another version is emptied.
+     */
+    private static void cutPartialRecord(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            long length = raf.length();
+            long end = 0;
+            if (length > 0 && raf.readUnsignedByte() == VERSION) {
+                end = 1;
+                while (end + 2 <= length) {
+                    raf.seek(end);
+                    long next = end + 2 + raf.readUnsignedShort();
+                    if (next > length) {
+                        break;
+                    }
+                    end = next;
+                }
+            }
+            if (end != length) {
+                Log.w(LOG_TAG, "Dropping " + (length - end) + " bytes of a partial record");
+                raf.setLength(end);
+            }
+        } finally {
+            close(raf);
+        }
+    }
+
+    static synchronized List<Entry> read(File file) {
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        List<Entry> entries = new ArrayList<>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readUnsignedByte() != VERSION) {
+                return Collections.emptyList();
+            }
+            while (true) {
+                int length = in.readUnsignedShort();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                entries.add(readEntry(record));
+            }
+        } catch (EOFException e) {
+            // End of the journal, or a truncated last record which is simply dropped.
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to read sync journal", e);
+        } finally {
+            close(in);
+        }
+        return entries;
+    }
+
+    /**
+     * Keeps the newest entries which fit into half of the budget.
+     */
+    private static void trim(File file) {
+        List<Entry> entries = read(file);
+        File tmp = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            int keep = entries.size() / 2;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeByte(VERSION);
+            for (Entry entry : entries.subList(entries.size() - keep, entries.size())) {
+                writeEntry(out, entry);
+            }
+            out.close();
+            out = null;
+            if (!tmp.renameTo(file)) {
+                Log.w(LOG_TAG, "Unable to replace sync journal");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to trim sync journal", e);
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void writeEntry(DataOutputStream out, Entry entry) throws IOException {
+        byte[] location = (entry.mLocation == null ? "" : entry.mLocation).getBytes("UTF-8");
+        // timestamp, trigger, outcome, status, metrics, location length + bytes
+        int length = 8 + 1 + 1 + 2 + 4 * METRIC_COUNT + 2 + location.length;
+        out.writeShort(length);
+        out.writeLong(entry.mTimestamp);
+        out.writeByte(entry.mTrigger);
+        out.writeByte(entry.mOutcome);
+        out.writeShort(entry.mHttpStatus);
+        for (int value : entry.mValues) {
+            out.writeInt(value);
+        }
+        out.writeShort(location.length);
+        out.write(location);
+    }
+
+    private static Entry readEntry(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        Entry entry = new Entry();
+        entry.mTimestamp = in.readLong();
+        entry.mTrigger = in.readUnsignedByte();
+        entry.mOutcome = in.readUnsignedByte();
+        entry.mHttpStatus = in.readUnsignedShort();
+        for (int metric = 0; metric < METRIC_COUNT; metric++) {
+            entry.mValues[metric] = in.readInt();
+        }
+        byte[] location = new byte[in.readUnsignedShort()];
+        in.readFully(location);
+        entry.mLocation = new String(location, "UTF-8");
+        return entry;
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing sync journal", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sync bookkeeping (location status and the time of the last notification) kept in memory and
+ * backed by a tiny binary file instead of the default shared preferences.
+ * <p/>
+ * Setters only touch memory. Writes are queued on a background thread and coalesced, so any
+ * number of changes made before the write runs end up in a single write of a few bytes.
+ * Listeners are notified on the main thread when a value actually changes, so the UI no
+ * longer reacts to (and re-reads) every unrelated preference change.
+ * <p/>
+ * The file is read on the background thread as well, starting as soon as the store is created.
+ * Getters and setters wait for it, the same way {@link SharedPreferences} waits for its file,
+ * so a caller never sees the defaults in place of the persisted values.
+ *
+ * @author Gennady Denisov
+ */
+public final class SyncStatusStore {
+    private static final String LOG_TAG = SyncStatusStore.class.getSimpleName();
+
+    static final String FILE_NAME = "sync.status";
+
+    private static final int VERSION = 1;
+
+    /**
+     * Interface for receiving changes of the sync status. Always called on the main thread.
+     */
+    public interface OnSyncStatusChangedListener {
+        void onSyncStatusChanged(SyncStatusStore store);
+    }
+
+    private static SyncStatusStore sInstance;
+
+    private final Context mContext;
+    private final File mFile;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final List<OnSyncStatusChangedListener> mListeners = new CopyOnWriteArrayList<>();
+
+    private int mLocationStatus = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+    private long mLastNotification;
+    private boolean mLoaded;
+    private boolean mWritePending;
+
+    private final Runnable mWriteRunnable = new Runnable() {
+        @Override
+        public void run() {
+            write();
+        }
+    };
+
+    private final Runnable mNotifyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            for (OnSyncStatusChangedListener listener : mListeners) {
+                listener.onSyncStatusChanged(SyncStatusStore.this);
+            }
+        }
+    };
+
+    SyncStatusStore(Context context, File file) {
+        mContext = context.getApplicationContext();
+        mFile = file;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    public static synchronized SyncStatusStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SyncStatusStore(context,
+                    new File(context.getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    @SuppressWarnings("ResourceType")
+    public synchronized
+    @SunshineSyncAdapter.LocationStatus
+    int getLocationStatus() {
+        awaitLoadedLocked();
+        return mLocationStatus;
+    }
+
+    public synchronized long getLastNotification() {
+        awaitLoadedLocked();
+        return mLastNotification;
+    }
+
+    public void setLocationStatus(@SunshineSyncAdapter.LocationStatus int locationStatus) {
+        synchronized (this) {
+            awaitLoadedLocked();
+            if (mLocationStatus == locationStatus) {
+                return;
+            }
+            mLocationStatus = locationStatus;
+            scheduleWrite();
+        }
+        notifyListeners();
+    }
+
+    public void setLastNotification(long lastNotification) {
+        synchronized (this) {
+            awaitLoadedLocked();
+            if (mLastNotification == lastNotification) {
+                return;
+            }
+            mLastNotification = lastNotification;
+            scheduleWrite();
+        }
+        notifyListeners();
+    }
+
+    public void registerListener(OnSyncStatusChangedListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void unregisterListener(OnSyncStatusChangedListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Blocks until the file has been read and all pending writes are done. Never call this
+     * from the main thread.
+     */
+    void flush() {
+        try {
+            mExecutor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // Only waits for the tasks queued before.
+                }
+            }).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error waiting for pending writes", e);
+        }
+    }
+
+    // Must be called holding the lock.
+    private void awaitLoadedLocked() {
+        boolean interrupted = false;
+        while (!mLoaded) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Must be called holding the lock.
+    private void scheduleWrite() {
+        if (!mWritePending) {
+            mWritePending = true;
+            mExecutor.execute(mWriteRunnable);
+        }
+    }
+
+    private void notifyListeners() {
+        mMainHandler.removeCallbacks(mNotifyRunnable);
+        mMainHandler.post(mNotifyRunnable);
+    }
+
+    private void load() {
+        int locationStatus = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+        long lastNotification = 0;
+        boolean seeded = false;
+        if (mFile.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+                if (in.readUnsignedByte() == VERSION) {
+                    locationStatus = in.readInt();
+                    lastNotification = in.readLong();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to read sync status, using defaults", e);
+            } finally {
+                close(in);
+            }
+        } else {
+            // First run after the status moved out of the default preferences.
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+            String statusKey = mContext.getString(R.string.pref_location_status_key);
+            String notificationKey = mContext.getString(R.string.pref_last_notification);
+            locationStatus = prefs.getInt(statusKey, SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+            lastNotification = prefs.getLong(notificationKey, 0);
+            prefs.edit().remove(statusKey).remove(notificationKey).apply();
+            seeded = true;
+        }
+        synchronized (this) {
+            mLocationStatus = locationStatus;
+            mLastNotification = lastNotification;
+            mLoaded = true;
+            notifyAll();
+            if (seeded) {
+                scheduleWrite();
+            }
+        }
+    }
+
+    private void write() {
+        int locationStatus;
+        long lastNotification;
+        synchronized (this) {
+            mWritePending = false;
+            locationStatus = mLocationStatus;
+            lastNotification = mLastNotification;
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            out.writeByte(VERSION);
+            out.writeInt(locationStatus);
+            out.writeLong(lastNotification);
+            out.close();
+            out = null;
+            if (!tmp.renameTo(mFile)) {
+                Log.w(LOG_TAG, "Unable to replace sync status");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Unable to write sync status", e);
+        } finally {
+            close(out);
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error closing sync status", e);
+            }
+        }
+    }
+}
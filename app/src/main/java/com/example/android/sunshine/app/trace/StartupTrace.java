@@ -0,0 +1,97 @@
+package com.example.android.sunshine.app.trace;
+
+import android.os.Looper;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+/**
+ * Named trace sections for the application start-up path.
+ * <p/>
+ * Every section shows up in systrace via {@link TraceCompat}. Its duration is logged under
+ * {@link #TAG} in debug builds, or once {@code log.tag.StartupTrace} is set to {@code DEBUG},
+ * which is what {@code benchmark_startup.sh} collects to build per-phase percentile reports.
+ * Sections are expected to be properly nested and to begin and end on the same thread, like
+ * the platform trace sections they wrap.
+ *
+ * @author Gennady Denisov
+ */
+public final class StartupTrace {
+    public static final String TAG = "StartupTrace";
+
+    // Start-up sections are shallow, so a tiny fixed stack is enough and avoids allocations.
+    private static final int MAX_DEPTH = 8;
+
+    // INFO is loggable by default, so a release build only logs once the tag is lowered to DEBUG.
+    private static final boolean LOGGABLE = BuildConfig.DEBUG || Log.isLoggable(TAG, Log.DEBUG);
+
+    private static final ThreadLocal<SectionStack> sStacks = new ThreadLocal<SectionStack>() {
+        @Override
+        protected SectionStack initialValue() {
+            return new SectionStack();
+        }
+    };
+
+    private StartupTrace() {
+
+    }
+
+    /**
+     * Begins a named section on the current thread.
+     *
+     * @param name the section name, e.g. {@code MainActivity.setContentView}.
+     */
+    public static void begin(String name) {
+        TraceCompat.beginSection(name);
+        SectionStack stack = sStacks.get();
+        if (stack.depth < MAX_DEPTH) {
+            stack.names[stack.depth] = name;
+            stack.starts[stack.depth] = System.nanoTime();
+        }
+        stack.depth++;
+    }
+
+    /**
+     * Ends the most recently begun section on the current thread and logs its duration.
+     */
+    public static void end() {
+        SectionStack stack = sStacks.get();
+        if (stack.depth == 0) {
+            Log.w(TAG, "end() called without a matching begin()");
+            return;
+        }
+        stack.depth--;
+        if (stack.depth < MAX_DEPTH) {
+            long durationUs = (System.nanoTime() - stack.starts[stack.depth]) / 1000;
+            log(stack.names[stack.depth], durationUs);
+            stack.names[stack.depth] = null;
+        }
+        TraceCompat.endSection();
+    }
+
+    /**
+     * Logs a single point-in-time measurement, e.g. the time to the first populated frame.
+     *
+     * @param name       the event name.
+     * @param durationUs the measured duration in microseconds.
+     */
+    public static void mark(String name, long durationUs) {
+        log(name, durationUs);
+    }
+
+    private static void log(String name, long durationUs) {
+        if (!LOGGABLE) {
+            return;
+        }
+        // Keep the format stable, benchmark_startup.sh parses it.
+        Log.i(TAG, "section=" + name + " us=" + durationUs
+                + " main=" + (Looper.myLooper() == Looper.getMainLooper()));
+    }
+
+    private static final class SectionStack {
+        final String[] names = new String[MAX_DEPTH];
+        final long[] starts = new long[MAX_DEPTH];
+        int depth;
+    }
+}
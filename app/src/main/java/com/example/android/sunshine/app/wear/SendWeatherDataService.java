@@ -3,18 +3,26 @@ package com.example.android.sunshine.app.wear;
 import android.app.IntentService;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.geaden.android.shunshine.shared.AbstractGoogleApiClientWrapper;
 import com.geaden.android.shunshine.shared.Constants;
-import com.geaden.android.shunshine.shared.Utils;
+import com.geaden.android.shunshine.shared.WeatherPayload;
+import com.geaden.android.shunshine.shared.WeatherRequest;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.PendingResult;
 import com.google.android.gms.wearable.DataApi;
@@ -22,6 +30,8 @@ import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.util.TimeZone;
+
 /**
  * Intent service to send weather data to nearby wearable.
  *
@@ -37,79 +47,211 @@ public class SendWeatherDataService extends IntentService {
         super("SendWeatherDataService");
     }
 
+    // Sends the forecast even if the wearable should already have it.
+    static final String EXTRA_FORCE = "extra_force";
+
+    // Bursts of launches within this window, e.g. a sync followed by a push, send only once.
+    static final long DEBOUNCE_MS = 2000;
+
+    // Checksums of the last payload the wearable got, see WeatherPayload.
+    static final String PREF_CONTENT_CHECKSUM = "wearContentChecksum";
+    static final String PREF_FIRST_DAY_CHECKSUM = "wearFirstDayChecksum";
+    // Data version of that payload, which the wearable reports back when it asks for an update.
+    static final String PREF_DATA_VERSION = "wearDataVersion";
+
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final Object DEBOUNCE_TOKEN = new Object();
+
     /**
-     * Helper method that allows to initiate sending weather data to the wearables.
+     * Helper method that allows to initiate sending weather data to the wearables. Launches
+     * within {@link #DEBOUNCE_MS} of each other are collapsed into one, and nothing is sent if
+     * the wearable already has the forecast.
      *
      * @param context the context.
      */
     public static void launchService(Context context) {
+        final Context appContext = context.getApplicationContext();
+        sHandler.removeCallbacksAndMessages(DEBOUNCE_TOKEN);
+        sHandler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                Intent intent = new Intent(appContext, SendWeatherDataService.class);
+                intent.setAction(ACTION_SEND_WEATHER_DATA);
+                appContext.startService(intent);
+            }
+        }, DEBOUNCE_TOKEN, SystemClock.uptimeMillis() + DEBOUNCE_MS);
+    }
+
+    /**
+     * Sends the forecast right away, whether or not it changed since it was last sent. Used when
+     * the wearable asks for it.
+     *
+     * @param context the context.
+     */
+    public static void launchServiceForced(Context context) {
         Intent intent = new Intent(context, SendWeatherDataService.class);
         intent.setAction(ACTION_SEND_WEATHER_DATA);
+        intent.putExtra(EXTRA_FORCE, true);
         context.startService(intent);
     }
 
+    // Days of forecast sent to the wearable.
+    static final int WEARABLE_DAYS = 7;
+
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+
     // The projection with required for wearables data.
     private static final String[] WEARABLE_WEATHER_PROJECTION = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
 
     // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+
+    private static final Histogram sSendLatency = MetricsRegistry.histogram("wear.send_us");
+    private static final Histogram sPayloadBytes = MetricsRegistry.histogram("wear.payload_bytes");
+    private static final Counter sSent = MetricsRegistry.counter("wear.update.sent");
+    private static final Counter sSentUrgent = MetricsRegistry.counter("wear.update.urgent");
+    private static final Counter sSuppressed = MetricsRegistry.counter("wear.update.suppressed");
 
     @Override
     protected void onHandleIntent(Intent intent) {
         if (intent.getAction().equals(ACTION_SEND_WEATHER_DATA)) {
             Log.d(TAG, "Handling send weather data intent");
+            final long start = System.nanoTime();
+            final boolean force = intent.getBooleanExtra(EXTRA_FORCE, false);
+            final WeatherPayload payload = buildPayload(this);
+            if (null == payload) {
+                return;
+            }
+            final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
+            final long contentChecksum = payload.getContentChecksum();
+            final long firstDayChecksum = payload.getFirstDayChecksum();
+            if (!force && prefs.getLong(PREF_CONTENT_CHECKSUM, -1) == contentChecksum) {
+                // The wearable has this forecast already, do not even connect.
+                Log.d(TAG, "Forecast unchanged, not sending it");
+                sSuppressed.inc();
+                return;
+            }
+            // Only what the watch face shows right now is worth waking the wearable up for,
+            // later days can go with the next batch of the data layer.
+            final boolean urgent = force
+                    || prefs.getLong(PREF_FIRST_DAY_CHECKSUM, -1) != firstDayChecksum;
             new AbstractGoogleApiClientWrapper(this) {
                 @Override
                 public void executeAction(GoogleApiClient googleApiClient) {
-                    Context context = SendWeatherDataService.this;
-                    String locationQuery = Utility.getPreferredLocation(context);
-                    Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                            locationQuery, System.currentTimeMillis());
-
-                    // As always query the content provider.
-                    Cursor cursor = context.getContentResolver().query(weatherUri,
-                            WEARABLE_WEATHER_PROJECTION, null, null, null);
-
-                    if (null != cursor && cursor.moveToFirst()) {
-                        int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                        double high = cursor.getDouble(INDEX_MAX_TEMP);
-                        double low = cursor.getDouble(INDEX_MIN_TEMP);
-                        int resourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                        Bitmap art = BitmapFactory.decodeResource(context.getResources(), resourceId);
-
-                        PutDataMapRequest putDataMapReq = PutDataMapRequest.create(Constants.WEATHER_PATH);
+                    byte[] bytes = payload.toBytes();
+
+                    PutDataMapRequest putDataMapReq = PutDataMapRequest.create(Constants.WEATHER_PATH);
+                    if (urgent) {
                         putDataMapReq.setUrgent();
-                        putDataMapReq.getDataMap().putDouble(Constants.EXTRA_HIGH_TEMP, high);
-                        putDataMapReq.getDataMap().putDouble(Constants.EXTRA_LOW_TEMP, low);
-                        putDataMapReq.getDataMap().putBoolean(Constants.EXTRA_UNITS_METRIC,
-                                Utility.isMetric(SendWeatherDataService.this));
-                        putDataMapReq.getDataMap().putAsset(Constants.EXTRA_ART,
-                                Utils.createAssetFromBitmap(art));
-
-                        if (BuildConfig.DEBUG) {
-                            // For debug purposes only.
-                            putDataMapReq.getDataMap().putLong(Constants.EXTRA_TIME, System.currentTimeMillis());
-                        }
+                    }
+                    putDataMapReq.getDataMap().putByteArray(Constants.EXTRA_PAYLOAD, bytes);
+
+                    if (force || BuildConfig.DEBUG) {
+                        // Makes the item differ from the last one, so it reaches the wearable
+                        // even if the forecast did not change. Debug builds stamp every item
+                        // to measure the delivery latency.
+                        putDataMapReq.getDataMap().putLong(Constants.EXTRA_TIME, System.currentTimeMillis());
+                    }
 
-                        PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
+                    PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
 
-                        PendingResult<DataApi.DataItemResult> pendingResult =
-                                Wearable.DataApi.putDataItem(googleApiClient, putDataReq);
-                        DataApi.DataItemResult result = pendingResult.await();
+                    PendingResult<DataApi.DataItemResult> pendingResult =
+                            Wearable.DataApi.putDataItem(googleApiClient, putDataReq);
+                    DataApi.DataItemResult result = pendingResult.await();
 
-                        if (result.getStatus().isSuccess()) {
-                            Log.d(TAG, "Data item successfully set: " + result.getDataItem().getUri());
+                    if (result.getStatus().isSuccess()) {
+                        Log.d(TAG, "Data item successfully set: " + result.getDataItem().getUri());
+                        prefs.edit()
+                                .putLong(PREF_CONTENT_CHECKSUM, contentChecksum)
+                                .putLong(PREF_FIRST_DAY_CHECKSUM, firstDayChecksum)
+                                .putLong(PREF_DATA_VERSION, payload.getDataVersion())
+                                .apply();
+                        sSent.inc();
+                        if (urgent) {
+                            sSentUrgent.inc();
                         }
+                        sPayloadBytes.record(bytes.length);
+                        sSendLatency.recordSince(start);
                     }
-                    if (null != cursor) cursor.close();
                 }
             }.wrap();
         }
     }
+
+    /**
+     * Checks whether the wearable already shows the current forecast. Should never be called
+     * from the main thread.
+     *
+     * @param context     the context.
+     * @param dataVersion data version reported by the wearable.
+     * @return true if the wearable got the last payload sent and the forecast did not change
+     * since.
+     */
+    static boolean isDelivered(Context context, long dataVersion) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        if (!isDeliveredVersion(prefs, dataVersion)) {
+            return false;
+        }
+        WeatherPayload payload = buildPayload(context);
+        return null != payload && isDelivered(prefs, dataVersion, payload.getContentChecksum());
+    }
+
+    static boolean isDelivered(SharedPreferences prefs, long dataVersion, long contentChecksum) {
+        return isDeliveredVersion(prefs, dataVersion)
+                && prefs.getLong(PREF_CONTENT_CHECKSUM, -1) == contentChecksum;
+    }
+
+    private static boolean isDeliveredVersion(SharedPreferences prefs, long dataVersion) {
+        return dataVersion != WeatherRequest.NO_DATA_VERSION
+                && prefs.getLong(PREF_DATA_VERSION, WeatherRequest.NO_DATA_VERSION) == dataVersion;
+    }
+
+    /**
+     * Packs the upcoming days of the forecast for the preferred location.
+     *
+     * @return the payload or null if there is no forecast yet.
+     */
+    static WeatherPayload buildPayload(Context context) {
+        String locationQuery = Utility.getPreferredLocation(context);
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationQuery, System.currentTimeMillis());
+
+        // As always query the content provider.
+        Cursor cursor = context.getContentResolver().query(weatherUri,
+                WEARABLE_WEATHER_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (null == cursor) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            int count = Math.min(cursor.getCount(), WEARABLE_DAYS);
+            int[] weatherIds = new int[count];
+            double[] highs = new double[count];
+            double[] lows = new double[count];
+            long firstDate = cursor.getLong(INDEX_DATE);
+            for (int i = 0; i < count; i++, cursor.moveToNext()) {
+                weatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                highs[i] = cursor.getDouble(INDEX_MAX_TEMP);
+                lows[i] = cursor.getDouble(INDEX_MIN_TEMP);
+            }
+            // Local calendar day, the wearable shares the time zone of the handheld
+            int firstDay = (int) ((firstDate + TimeZone.getDefault().getOffset(firstDate))
+                    / DAY_IN_MILLIS);
+            return WeatherPayload.create(ForecastSnapshot.getWrittenAt(context), firstDay,
+                    Utility.isMetric(context), weatherIds, highs, lows);
+        } finally {
+            cursor.close();
+        }
+    }
 }
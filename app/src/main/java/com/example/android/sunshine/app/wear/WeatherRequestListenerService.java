@@ -3,6 +3,9 @@ package com.example.android.sunshine.app.wear;
 import android.util.Log;
 
 import com.geaden.android.shunshine.shared.Constants;
+import com.geaden.android.shunshine.shared.WeatherRequest;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
 import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.WearableListenerService;
 
@@ -14,12 +17,21 @@ import com.google.android.gms.wearable.WearableListenerService;
 public class WeatherRequestListenerService extends WearableListenerService {
     private static final String TAG = "WeatherRequestListener";
 
+    private static final Counter sNotModified = MetricsRegistry.counter("wear.request.not_modified");
+
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
         super.onMessageReceived(messageEvent);
         if (messageEvent.getPath().equals(Constants.WEATHER_REQUEST_PATH)) {
+            long dataVersion = WeatherRequest.getDataVersion(messageEvent.getData());
+            if (SendWeatherDataService.isDelivered(this, dataVersion)) {
+                // The wearable has our latest forecast, it gets the next one with the next sync.
+                Log.d(TAG, "Wearable has the latest weather data already");
+                sNotModified.inc();
+                return;
+            }
             Log.d(TAG, "Message to update weather and send it to the wearable received!");
-            SendWeatherDataService.launchService(this);
+            SendWeatherDataService.launchServiceForced(this);
         }
     }
 }
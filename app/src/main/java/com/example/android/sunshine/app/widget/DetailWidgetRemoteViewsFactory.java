@@ -0,0 +1,283 @@
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Build;
+import android.util.Log;
+import android.util.SparseArray;
+import android.widget.AdapterView;
+import android.widget.RemoteViews;
+import android.widget.RemoteViewsService;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.ArtBitmapCache;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory of the rows of the scrollable weather detail widget.
+ * <p/>
+ * All rows are built in {@link #onDataSetChanged()}: the forecast is read once, the art of the
+ * distinct conditions is loaded in parallel on a small pool, and whatever art is not ready by
+ * {@link #ART_DEADLINE_MS} falls back to the bundled icon. {@link #getViewAt(int)} then only
+ * returns a prebuilt {@link RemoteViews}, so scrolling never waits on an image.
+ *
+ * @author Gennady Denisov
+ */
+@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+class DetailWidgetRemoteViewsFactory implements RemoteViewsService.RemoteViewsFactory {
+    private static final String LOG_TAG = DetailWidgetRemoteViewsFactory.class.getSimpleName();
+
+    private static final String[] FORECAST_COLUMNS = {
+            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+    };
+    // these indices must match the projection
+    static final int INDEX_WEATHER_ID = 0;
+    static final int INDEX_WEATHER_DATE = 1;
+    static final int INDEX_WEATHER_CONDITION_ID = 2;
+    static final int INDEX_WEATHER_DESC = 3;
+    static final int INDEX_WEATHER_MAX_TEMP = 4;
+    static final int INDEX_WEATHER_MIN_TEMP = 5;
+
+    // Time all art of a refresh may take before rows fall back to the bundled icons.
+    static final long ART_DEADLINE_MS = 1500;
+
+    private static final int ART_THREADS = 3;
+
+    private static final Histogram sRefreshLatency =
+            MetricsRegistry.histogram("widget.detail.refresh_us");
+    private static final Histogram sRowLatency =
+            MetricsRegistry.histogram("widget.detail.row_us");
+    private static final Histogram sArtLatency =
+            MetricsRegistry.histogram("widget.detail.art_us");
+
+    // Shared by all widgets, idle threads go away after a while.
+    private static final ThreadPoolExecutor sArtExecutor = new ThreadPoolExecutor(ART_THREADS,
+            ART_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    static {
+        sArtExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private final Context mContext;
+    private final int mIconSize;
+
+    private long[] mIds = new long[0];
+    private RemoteViews[] mViews = new RemoteViews[0];
+
+    DetailWidgetRemoteViewsFactory(Context context) {
+        mContext = context;
+        mIconSize = context.getResources().getDimensionPixelSize(R.dimen.list_icon);
+    }
+
+    @Override
+    public void onCreate() {
+        // Nothing to do
+    }
+
+    @Override
+    public void onDataSetChanged() {
+        long start = System.nanoTime();
+        // This method is called by the app hosting the widget (e.g., the launcher)
+        // However, our ContentProvider is not exported so it doesn't have access to the
+        // data. Therefore we need to clear (and finally restore) the calling identity so
+        // that calls use our process and permission
+        final long identityToken = Binder.clearCallingIdentity();
+        try {
+            String location = Utility.getPreferredLocation(mContext);
+            Uri weatherForLocationUri = WeatherContract.WeatherEntry
+                    .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+            Cursor data = mContext.getContentResolver().query(weatherForLocationUri,
+                    FORECAST_COLUMNS,
+                    null,
+                    null,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            if (data == null) {
+                mIds = new long[0];
+                mViews = new RemoteViews[0];
+                return;
+            }
+            try {
+                buildRows(data, location);
+            } finally {
+                data.close();
+            }
+        } finally {
+            Binder.restoreCallingIdentity(identityToken);
+            sRefreshLatency.recordSince(start);
+        }
+    }
+
+    private void buildRows(Cursor data, String location) {
+        int count = data.getCount();
+        long[] ids = new long[count];
+        int[] weatherIds = new int[count];
+        RemoteViews[] views = new RemoteViews[count];
+        for (int position = 0; data.moveToPosition(position); position++) {
+            ids[position] = data.getLong(INDEX_WEATHER_ID);
+            weatherIds[position] = data.getInt(INDEX_WEATHER_CONDITION_ID);
+            views[position] = buildRow(data, location);
+        }
+
+        SparseArray<Bitmap> art = loadArt(weatherIds);
+        for (int position = 0; position < count; position++) {
+            Bitmap weatherArtImage = art.get(weatherIds[position]);
+            if (weatherArtImage != null) {
+                views[position].setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+            } else {
+                views[position].setImageViewResource(R.id.widget_icon,
+                        Utility.getIconResourceForWeatherCondition(weatherIds[position]));
+            }
+        }
+        mIds = ids;
+        mViews = views;
+    }
+
+    private RemoteViews buildRow(Cursor data, String location) {
+        long start = System.nanoTime();
+        RemoteViews views = new RemoteViews(mContext.getPackageName(),
+                R.layout.widget_detail_list_item);
+        String description = data.getString(INDEX_WEATHER_DESC);
+        long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+        String formattedDate = Utility.getFriendlyDayString(mContext, dateInMillis, false);
+        double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+        double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+        String formattedMaxTemperature = Utility.formatTemperature(mContext, maxTemp);
+        String formattedMinTemperature = Utility.formatTemperature(mContext, minTemp);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_date, formattedDate);
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+        final Intent fillInIntent = new Intent();
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                location,
+                dateInMillis);
+        fillInIntent.setData(weatherUri);
+        views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+        sRowLatency.recordSince(start);
+        return views;
+    }
+
+    /**
+     * Loads the art of every distinct condition in parallel, waiting at most
+     * {@link #ART_DEADLINE_MS}.
+     *
+     * @return art by condition id, missing for conditions that should use the bundled icon.
+     */
+    private SparseArray<Bitmap> loadArt(int[] weatherIds) {
+        SparseArray<Bitmap> art = new SparseArray<>();
+        if (Utility.usingLocalGraphics(mContext)) {
+            return art;
+        }
+        long start = System.nanoTime();
+        final ArtBitmapCache cache = ArtBitmapCache.getInstance(mContext);
+        List<Integer> distinct = new ArrayList<>();
+        List<Callable<Bitmap>> tasks = new ArrayList<>();
+        for (final int weatherId : weatherIds) {
+            if (distinct.contains(weatherId)) {
+                continue;
+            }
+            distinct.add(weatherId);
+            tasks.add(new Callable<Bitmap>() {
+                @Override
+                public Bitmap call() throws Exception {
+                    return cache.getArt(weatherId, mIconSize);
+                }
+            });
+        }
+        try {
+            List<Future<Bitmap>> futures = sArtExecutor.invokeAll(tasks, ART_DEADLINE_MS,
+                    TimeUnit.MILLISECONDS);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Bitmap bitmap = futures.get(i).get();
+                    if (bitmap != null) {
+                        art.put(distinct.get(i), bitmap);
+                    }
+                } catch (CancellationException e) {
+                    Log.w(LOG_TAG, "Art for " + distinct.get(i) + " missed the deadline");
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Error loading art for " + distinct.get(i), e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sArtLatency.recordSince(start);
+        return art;
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+
+    @Override
+    public void onDestroy() {
+        mIds = new long[0];
+        mViews = new RemoteViews[0];
+    }
+
+    @Override
+    public int getCount() {
+        return mViews.length;
+    }
+
+    @Override
+    public RemoteViews getViewAt(int position) {
+        RemoteViews[] views = mViews;
+        if (position == AdapterView.INVALID_POSITION || position >= views.length) {
+            return null;
+        }
+        return views[position];
+    }
+
+    @Override
+    public RemoteViews getLoadingView() {
+        return new RemoteViews(mContext.getPackageName(), R.layout.widget_detail_list_item);
+    }
+
+    @Override
+    public int getViewTypeCount() {
+        return 1;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        long[] ids = mIds;
+        if (position >= 0 && position < ids.length)
+            return ids[position];
+        return position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+}
@@ -26,6 +26,7 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -33,6 +34,12 @@ import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
@@ -50,16 +57,25 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    private static final Histogram sUpdateLatency =
+            MetricsRegistry.histogram("widget.today.update_us");
+    private static final Counter sUpdated = MetricsRegistry.counter("widget.today.updated");
+    private static final Counter sSkipped = MetricsRegistry.counter("widget.today.skipped");
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        long start = System.nanoTime();
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
@@ -85,12 +101,23 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
+        // Widgets of the same size bucket share the same views, and widgets already showing
+        // this content are not updated at all
+        boolean metric = Utility.isMetric(this);
+        int dataHash = TodayWidgetRenderCache.hashData(weatherId, description,
+                formattedMaxTemperature, formattedMinTemperature);
+        TodayWidgetRenderCache renderCache = TodayWidgetRenderCache.getInstance();
+        int[] forcedIds = intent != null
+                ? intent.getIntArrayExtra(AppWidgetManager.EXTRA_APPWIDGET_IDS) : null;
+        if (forcedIds != null) {
+            renderCache.forget(forcedIds);
+        }
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<List<Integer>> pendingIds = new SparseArray<>();
         for (int appWidgetId : appWidgetIds) {
             // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId, defaultWidth);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,40 +126,75 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
-
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+            if (renderCache.isRendered(appWidgetId,
+                    new TodayWidgetRenderCache.Key(layoutId, dataHash, metric))) {
+                sSkipped.inc();
+                continue;
+            }
+            List<Integer> ids = pendingIds.get(layoutId);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                pendingIds.put(layoutId, ids);
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+            ids.add(appWidgetId);
+        }
+
+        PendingIntent pendingIntent = null;
+        for (int i = 0; i < pendingIds.size(); i++) {
+            TodayWidgetRenderCache.Key key =
+                    new TodayWidgetRenderCache.Key(pendingIds.keyAt(i), dataHash, metric);
+            RemoteViews views = renderCache.getViews(key);
+            if (views == null) {
+                views = new RemoteViews(getPackageName(), key.layoutId);
+
+                // Add the data to the RemoteViews
+                views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                // Content Descriptions for RemoteViews were only added in ICS MR1
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                    setRemoteContentDescription(views, description);
+                }
+                views.setTextViewText(R.id.widget_description, description);
+                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+                // Create an Intent to launch MainActivity, shared by all widgets
+                if (pendingIntent == null) {
+                    Intent launchIntent = new Intent(this, MainActivity.class);
+                    pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+                }
+                views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+                renderCache.putViews(key, views);
+            }
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on all widgets of this bucket
+            List<Integer> ids = pendingIds.valueAt(i);
+            int[] bucketIds = new int[ids.size()];
+            for (int j = 0; j < bucketIds.length; j++) {
+                bucketIds[j] = ids.get(j);
+            }
+            appWidgetManager.updateAppWidget(bucketIds, views);
+            for (int appWidgetId : bucketIds) {
+                renderCache.setRendered(appWidgetId, key);
+            }
+            sUpdated.add(bucketIds.length);
         }
+        sUpdateLatency.recordSince(start);
     }
 
-    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId,
+                               int defaultWidth) {
         // Prior to Jelly Bean, widgets were always their default size
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+            return defaultWidth;
         }
         // For Jelly Bean and higher devices, widgets can be resized - the current size can be
         // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
+        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId, defaultWidth);
     }
 
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
+    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId,
+                                          int defaultWidth) {
         Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
         if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
             int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
@@ -141,7 +203,7 @@ public class TodayWidgetIntentService extends IntentService {
             return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
                     displayMetrics);
         }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        return defaultWidth;
     }
 
     @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
@@ -0,0 +1,108 @@
+package com.example.android.sunshine.app.widget;
+
+import android.util.SparseArray;
+import android.widget.RemoteViews;
+
+/**
+ * Remembers what was last pushed to each Today widget, so a refresh only updates the widgets
+ * whose content actually changed.
+ * <p/>
+ * Content is identified by a {@link Key} of the layout bucket, a hash of the displayed data
+ * and the units. The built {@link RemoteViews} of each layout bucket are kept as well and
+ * shared by all widgets of that bucket. The cache lives as long as the process; after a
+ * restart every widget is simply pushed once more.
+ *
+ * @author Gennady Denisov
+ */
+final class TodayWidgetRenderCache {
+    private static TodayWidgetRenderCache sInstance;
+
+    // Last key pushed per widget id.
+    private final SparseArray<Key> mRendered = new SparseArray<>();
+    // Built views and the key they were built for, per layout bucket.
+    private final SparseArray<Key> mViewKeys = new SparseArray<>();
+    private final SparseArray<RemoteViews> mViews = new SparseArray<>();
+
+    static synchronized TodayWidgetRenderCache getInstance() {
+        if (sInstance == null) {
+            sInstance = new TodayWidgetRenderCache();
+        }
+        return sInstance;
+    }
+
+    /**
+     * @return true if the widget already shows the content identified by the key.
+     */
+    synchronized boolean isRendered(int appWidgetId, Key key) {
+        return key.equals(mRendered.get(appWidgetId));
+    }
+
+    synchronized void setRendered(int appWidgetId, Key key) {
+        mRendered.put(appWidgetId, key);
+    }
+
+    /**
+     * Forgets the given widgets, so they are pushed on the next refresh. Called when widgets
+     * are deleted or the host asks for a full update.
+     */
+    synchronized void forget(int[] appWidgetIds) {
+        for (int appWidgetId : appWidgetIds) {
+            mRendered.delete(appWidgetId);
+        }
+    }
+
+    /**
+     * @return views previously built for exactly this key or null.
+     */
+    synchronized RemoteViews getViews(Key key) {
+        return key.equals(mViewKeys.get(key.layoutId)) ? mViews.get(key.layoutId) : null;
+    }
+
+    synchronized void putViews(Key key, RemoteViews views) {
+        mViewKeys.put(key.layoutId, key);
+        mViews.put(key.layoutId, views);
+    }
+
+    /**
+     * Hash of everything the Today widget displays.
+     */
+    static int hashData(int weatherId, String description, String formattedMaxTemperature,
+                        String formattedMinTemperature) {
+        int hash = weatherId;
+        hash = 31 * hash + (description != null ? description.hashCode() : 0);
+        hash = 31 * hash + formattedMaxTemperature.hashCode();
+        hash = 31 * hash + formattedMinTemperature.hashCode();
+        return hash;
+    }
+
+    /**
+     * Identifies the content of a rendered widget.
+     */
+    static final class Key {
+        final int layoutId;
+        final int dataHash;
+        final boolean metric;
+
+        Key(int layoutId, int dataHash, boolean metric) {
+            this.layoutId = layoutId;
+            this.dataHash = dataHash;
+            this.metric = metric;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return layoutId == key.layoutId && dataHash == key.dataHash && metric == key.metric;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = layoutId;
+            result = 31 * result + dataHash;
+            result = 31 * result + (metric ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.android.sunshine.app.gcm;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PushQueueTest {
+    private static final String HOME = "94043";
+    private static final String AWAY = "10001";
+
+    private PushQueue<String> mQueue;
+
+    @Before
+    public void setUp() {
+        mQueue = new PushQueue<>();
+    }
+
+    /**
+     * Replays messages given as {@code id, location, seq} triples, the payload being the id.
+     */
+    private void replay(Object... messages) {
+        for (int i = 0; i < messages.length; i += 3) {
+            mQueue.offer((String) messages[i], (String) messages[i + 1],
+                    ((Number) messages[i + 2]).longValue(), (String) messages[i]);
+        }
+    }
+
+    @Test
+    public void outOfOrderBurstIsAppliedInSequence() {
+        replay("c", HOME, 3, "a", HOME, 1, "d", HOME, 4, "b", HOME, 2);
+        Map<String, List<String>> batches = mQueue.drain();
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList("a", "b", "c", "d"), batches.get(HOME));
+        assertEquals(4, mQueue.getHighWaterMark(HOME));
+    }
+
+    @Test
+    public void redeliveredMessageIsDropped() {
+        assertEquals(PushQueue.ACCEPTED, mQueue.offer("a", HOME, 1, "a"));
+        assertEquals(PushQueue.DUPLICATE, mQueue.offer("a", HOME, 1, "a"));
+        mQueue.drain();
+        // Also after the burst was applied
+        assertEquals(PushQueue.DUPLICATE, mQueue.offer("a", HOME, 1, "a"));
+    }
+
+    @Test
+    public void staleMessageAfterDrainIsDropped() {
+        replay("a", HOME, 5);
+        mQueue.drain();
+        assertEquals(PushQueue.STALE, mQueue.offer("b", HOME, 3, "b"));
+        assertEquals(PushQueue.STALE, mQueue.offer("c", HOME, 5, "c"));
+        assertEquals(PushQueue.ACCEPTED, mQueue.offer("d", HOME, 6, "d"));
+        assertEquals(Arrays.asList("d"), mQueue.drain().get(HOME));
+    }
+
+    @Test
+    public void resentSequenceIsAppliedOnce() {
+        // Same delta sent twice under different message ids
+        replay("a", HOME, 7, "b", HOME, 7);
+        assertEquals(Arrays.asList("a"), mQueue.drain().get(HOME));
+    }
+
+    @Test
+    public void locationsAreSequencedIndependently() {
+        replay("a", HOME, 10, "b", AWAY, 2, "c", AWAY, 1, "d", HOME, 9);
+        Map<String, List<String>> batches = mQueue.drain();
+        assertEquals(Arrays.asList("d", "a"), batches.get(HOME));
+        assertEquals(Arrays.asList("c", "b"), batches.get(AWAY));
+        assertEquals(PushQueue.ACCEPTED, mQueue.offer("e", AWAY, 3, "e"));
+        assertEquals(PushQueue.STALE, mQueue.offer("f", HOME, 3, "f"));
+    }
+
+    @Test
+    public void unsequencedMessagesComeLast() {
+        replay("legacy", HOME, PushQueue.UNSEQUENCED, "b", HOME, 2, "a", HOME, 1);
+        assertEquals(Arrays.asList("a", "b", "legacy"), mQueue.drain().get(HOME));
+        // Never stale, they carry no sequence to compare
+        assertEquals(PushQueue.ACCEPTED,
+                mQueue.offer("legacy2", HOME, PushQueue.UNSEQUENCED, "legacy2"));
+    }
+
+    @Test
+    public void messagesWithoutIdAreNotDeduplicated() {
+        assertEquals(PushQueue.ACCEPTED, mQueue.offer(null, HOME, PushQueue.UNSEQUENCED, "x"));
+        assertEquals(PushQueue.ACCEPTED, mQueue.offer(null, HOME, PushQueue.UNSEQUENCED, "x"));
+        assertEquals(2, mQueue.getPendingCount());
+    }
+
+    @Test
+    public void oldMessageIdsAreForgotten() {
+        for (int i = 0; i <= PushQueue.MAX_MESSAGE_IDS; i++) {
+            mQueue.offer("m" + i, HOME, PushQueue.UNSEQUENCED, "m" + i);
+        }
+        assertEquals(PushQueue.ACCEPTED, mQueue.offer("m0", HOME, PushQueue.UNSEQUENCED, "m0"));
+        assertEquals(PushQueue.DUPLICATE,
+                mQueue.offer("m" + PushQueue.MAX_MESSAGE_IDS, HOME, PushQueue.UNSEQUENCED, "x"));
+    }
+
+    @Test
+    public void emptyDrain() {
+        assertTrue(mQueue.drain().isEmpty());
+    }
+
+    @Test
+    public void highWaterMarksSurviveRestart() throws IOException {
+        replay("a", HOME, 4, "b", AWAY, 8);
+        mQueue.drain();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mQueue.writeTo(new DataOutputStream(bytes));
+
+        PushQueue<String> restored = new PushQueue<>();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(4, restored.getHighWaterMark(HOME));
+        assertEquals(8, restored.getHighWaterMark(AWAY));
+        assertEquals(PushQueue.DUPLICATE, restored.offer("a", HOME, 5, "a"));
+        assertEquals(PushQueue.STALE, restored.offer("c", AWAY, 7, "c"));
+        assertEquals(PushQueue.ACCEPTED, restored.offer("d", HOME, 5, "d"));
+    }
+
+    @Test
+    public void replayedBurstAfterRestartIsIgnored() throws IOException {
+        replay("c", HOME, 3, "a", HOME, 1, "b", HOME, 2);
+        mQueue.drain();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mQueue.writeTo(new DataOutputStream(bytes));
+
+        PushQueue<String> restored = new PushQueue<>();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        // GCM redelivers the burst in yet another order
+        assertEquals(PushQueue.DUPLICATE, restored.offer("b", HOME, 2, "b"));
+        assertEquals(PushQueue.DUPLICATE, restored.offer("c", HOME, 3, "c"));
+        assertEquals(PushQueue.DUPLICATE, restored.offer("a", HOME, 1, "a"));
+        assertTrue(restored.drain().isEmpty());
+    }
+}
@@ -0,0 +1,264 @@
+package com.example.android.sunshine.app.notification;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AlertEngineTest {
+    private static final long DAY = AlertRule.DAY_IN_MILLIS;
+    private static final long HOUR = DAY / 24;
+    // Midnight of a day, forecast dates fall on midnights as well.
+    private static final long TODAY = 1419033600000L;
+    private static final String LOCATION = "94043";
+
+    private static final int CLEAR = 800;
+    private static final int RAIN = 500;
+
+    private FakeClock mClock;
+    private AlertEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock(TODAY + 8 * HOUR);
+        mEngine = new AlertEngine(mClock, AlertEngine.createDefaultRules());
+    }
+
+    /**
+     * A quiet fortnight: clear, 20°C highs and steady pressure.
+     */
+    private static List<ForecastDay> quietForecast(long from) {
+        List<ForecastDay> days = new ArrayList<>();
+        for (int i = 0; i < 14; i++) {
+            days.add(new ForecastDay(from + i * DAY, CLEAR, 20, 10, 1015));
+        }
+        return days;
+    }
+
+    private static ForecastDay day(long date, int weatherId, double high, double pressure) {
+        return new ForecastDay(date, weatherId, high, high - 10, pressure);
+    }
+
+    @Test
+    public void quietForecastRaisesNothing() {
+        assertEquals(0, mEngine.update(LOCATION, quietForecast(TODAY)).size());
+    }
+
+    @Test
+    public void temperatureDropWithinHorizon() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(2, day(TODAY + 2 * DAY, CLEAR, 10, 1015));
+        // Beyond the horizon, too far ahead to bother the user
+        days.set(8, day(TODAY + 8 * DAY, CLEAR, 5, 1015));
+
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(TemperatureDropRule.ID, alerts.get(0).getRuleId());
+        assertEquals(TODAY + 2 * DAY, alerts.get(0).getDate());
+        assertEquals(10, alerts.get(0).getValue(), 0.001);
+    }
+
+    @Test
+    public void smallDropIsIgnored() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, CLEAR, 13, 1015));
+        assertEquals(0, mEngine.update(LOCATION, days).size());
+    }
+
+    @Test
+    public void rainTomorrow() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, RAIN, 20, 1015));
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(RainTomorrowRule.ID, alerts.get(0).getRuleId());
+        assertEquals(RAIN, alerts.get(0).getWeatherId());
+    }
+
+    @Test
+    public void fallingPressure() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, CLEAR, 20, 1010));
+        days.set(2, day(TODAY + 2 * DAY, CLEAR, 20, 1004));
+        days.set(3, day(TODAY + 3 * DAY, CLEAR, 20, 1004));
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(PressureTrendRule.ID, alerts.get(0).getRuleId());
+        assertEquals(TODAY + 2 * DAY, alerts.get(0).getDate());
+        assertEquals(11, alerts.get(0).getValue(), 0.001);
+    }
+
+    @Test
+    public void sameAlertIsRaisedOnce() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, RAIN, 20, 1015));
+        assertEquals(1, mEngine.update(LOCATION, days).size());
+
+        // A later sync with the same rain, and after the rate limit with slightly different rain
+        mClock.advance(HOUR);
+        assertEquals(0, mEngine.update(LOCATION, days).size());
+        mClock.advance(13 * HOUR);
+        days.set(1, day(TODAY + DAY, 501, 19, 1015));
+        assertEquals(0, mEngine.update(LOCATION, days).size());
+    }
+
+    @Test
+    public void alertsAreRateLimitedPerRule() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, CLEAR, 10, 1015));
+        days.set(3, day(TODAY + 3 * DAY, CLEAR, 0, 1015));
+        // Both days drop, the rule only speaks once a day
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(TODAY + DAY, alerts.get(0).getDate());
+
+        // Half a day later the second drop is still held back, a day later it gets through
+        mClock.advance(12 * HOUR);
+        days.set(3, day(TODAY + 3 * DAY, CLEAR, -1, 1015));
+        assertEquals(0, mEngine.update(LOCATION, days).size());
+        mClock.advance(13 * HOUR);
+        days.set(3, day(TODAY + 3 * DAY, CLEAR, -2, 1015));
+        alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(TODAY + 3 * DAY, alerts.get(0).getDate());
+    }
+
+    @Test
+    public void heldBackAlertIsRaisedWhenOnlyTimePasses() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, CLEAR, 10, 1015));
+        days.set(3, day(TODAY + 3 * DAY, CLEAR, 0, 1015));
+        assertEquals(1, mEngine.update(LOCATION, days).size());
+
+        // Same forecast a day later: the drop held back by the rate limit is raised now
+        mClock.advance(25 * HOUR);
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(TemperatureDropRule.ID, alerts.get(0).getRuleId());
+        assertEquals(TODAY + 3 * DAY, alerts.get(0).getDate());
+    }
+
+    @Test
+    public void dayEnteringHorizonIsEvaluatedWhenOnlyTimePasses() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(4, day(TODAY + 4 * DAY, RAIN, 20, 1015));
+        days.set(5, day(TODAY + 5 * DAY, CLEAR, 5, 1015));
+        assertEquals(0, mEngine.update(LOCATION, days).size());
+
+        // Same forecast two days later: the drop is within the horizon now
+        mClock.advance(2 * DAY);
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(TemperatureDropRule.ID, alerts.get(0).getRuleId());
+        assertEquals(TODAY + 5 * DAY, alerts.get(0).getDate());
+
+        // And on the next day the rain is tomorrow
+        mClock.advance(DAY);
+        alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(RainTomorrowRule.ID, alerts.get(0).getRuleId());
+        assertEquals(TODAY + 4 * DAY, alerts.get(0).getDate());
+    }
+
+    @Test
+    public void heldBackAlertSurvivesRestart() throws Exception {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, CLEAR, 10, 1015));
+        days.set(3, day(TODAY + 3 * DAY, CLEAR, 0, 1015));
+        assertEquals(1, mEngine.update(LOCATION, days).size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mEngine.writeTo(new DataOutputStream(bytes));
+        AlertEngine restarted = new AlertEngine(mClock, AlertEngine.createDefaultRules());
+        restarted.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        mClock.advance(25 * HOUR);
+        List<Alert> alerts = restarted.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertEquals(TODAY + 3 * DAY, alerts.get(0).getDate());
+    }
+
+    @Test
+    public void onlyChangedDaysAreEvaluated() {
+        int rules = AlertEngine.createDefaultRules().size();
+        List<ForecastDay> days = quietForecast(TODAY);
+        mEngine.update(LOCATION, days);
+        assertEquals(days.size() * rules, mEngine.getEvaluationCount());
+
+        // Nothing changed, nothing evaluated
+        mEngine.update(LOCATION, days);
+        assertEquals(days.size() * rules, mEngine.getEvaluationCount());
+
+        // One day changed: it and the two days looking back at it
+        int before = mEngine.getEvaluationCount();
+        days.set(5, day(TODAY + 5 * DAY, RAIN, 18, 1012));
+        mEngine.update(LOCATION, days);
+        assertEquals(3 * rules, mEngine.getEvaluationCount() - before);
+    }
+
+    @Test
+    public void newLocationStartsOver() {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, RAIN, 20, 1015));
+        assertEquals(1, mEngine.update(LOCATION, days).size());
+
+        mClock.advance(DAY / 2);
+        List<Alert> alerts = mEngine.update("10001", days);
+        assertEquals("Error: Rain at the new location should be raised", 1, alerts.size());
+    }
+
+    @Test
+    public void stateSurvivesRestart() throws Exception {
+        List<ForecastDay> days = quietForecast(TODAY);
+        days.set(1, day(TODAY + DAY, RAIN, 20, 1015));
+        assertEquals(1, mEngine.update(LOCATION, days).size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        mEngine.writeTo(new DataOutputStream(bytes));
+        AlertEngine restarted = new AlertEngine(mClock, AlertEngine.createDefaultRules());
+        restarted.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        mClock.advance(HOUR);
+        assertEquals(0, restarted.update(LOCATION, days).size());
+        assertEquals("Error: The restored forecast should not be evaluated again",
+                0, restarted.getEvaluationCount());
+    }
+
+    @Test
+    public void oldDaysAreForgotten() {
+        mEngine.update(LOCATION, quietForecast(TODAY));
+        // A week later the forecast has moved on
+        mClock.advance(7 * DAY);
+        List<ForecastDay> days = quietForecast(TODAY + 7 * DAY);
+        days.set(1, day(TODAY + 8 * DAY, RAIN, 20, 1015));
+        List<Alert> alerts = mEngine.update(LOCATION, days);
+        assertEquals(1, alerts.size());
+        assertTrue(mEngine.update(LOCATION, Collections.<ForecastDay>emptyList()).isEmpty());
+    }
+
+    private static final class FakeClock implements Clock {
+        private long mNow;
+
+        FakeClock(long now) {
+            mNow = now;
+        }
+
+        void advance(long millis) {
+            mNow += millis;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return mNow;
+        }
+    }
+}
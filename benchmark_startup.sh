@@ -0,0 +1,81 @@
+#!/usr/bin/env bash
+# Cold and warm start benchmark for MainActivity.
+#
+# Usage: ./benchmark_startup.sh [iterations] [report file]
+#
+# Needs a single device or emulator (or ANDROID_SERIAL) with the app installed, e.g. after
+# ./gradlew installDebug. Launch times come from "am start -W", the per-phase timings from the
+# StartupTrace sections logged by the app (release builds only log them with the tag enabled).
+# Prints p50/p90/p99 for everything and writes the same report to the given file.
+set -e
+
+ITERATIONS=${1:-20}
+REPORT=${2:-build/startup-report.txt}
+PACKAGE=com.example.android.sunshine.app
+ACTIVITY=$PACKAGE/.MainActivity
+
+WORK_DIR=$(mktemp -d)
+trap 'rm -rf "$WORK_DIR"' EXIT
+
+# Prints "p50 p90 p99" for the numbers in the given file (one per line).
+percentiles() {
+    sort -n "$1" | awk '{ v[NR] = $1 }
+        END {
+            if (NR == 0) { print "n/a"; exit }
+            split("50 90 99", p, " ")
+            out = ""
+            for (i = 1; i <= 3; i++) {
+                idx = int((p[i] / 100) * NR + 0.999999)
+                if (idx < 1) idx = 1
+                if (idx > NR) idx = NR
+                out = out sprintf("p%s=%s ", p[i], v[idx])
+            }
+            print out "n=" NR
+        }'
+}
+
+# Launches the activity and appends TotalTime (ms) to the given file.
+launch() {
+    adb shell am start -W -n $ACTIVITY | tr -d '\r' | awk -F': ' '/^TotalTime/ { print $2 }' >> "$1"
+}
+
+adb wait-for-device
+# Read by the app at start-up, every launch below starts a new process or follows one that did
+adb shell setprop log.tag.StartupTrace DEBUG
+adb logcat -c
+
+echo "Cold start x$ITERATIONS"
+for i in $(seq "$ITERATIONS"); do
+    adb shell am force-stop $PACKAGE
+    sleep 1
+    launch "$WORK_DIR/cold.txt"
+done
+
+echo "Warm start x$ITERATIONS"
+for i in $(seq "$ITERATIONS"); do
+    adb shell input keyevent KEYCODE_HOME
+    sleep 1
+    launch "$WORK_DIR/warm.txt"
+done
+
+adb shell am force-stop $PACKAGE
+adb logcat -d -s StartupTrace:I | tr -d '\r' > "$WORK_DIR/trace.txt"
+
+mkdir -p "$(dirname "$REPORT")"
+{
+    echo "MainActivity start-up ($ITERATIONS iterations, ms)"
+    echo "cold  $(percentiles "$WORK_DIR/cold.txt")"
+    echo "warm  $(percentiles "$WORK_DIR/warm.txt")"
+    echo
+    echo "Trace sections (us, [main] = ran on the main thread)"
+    for section in $(sed -n 's/.*section=\([^ ]*\) .*/\1/p' "$WORK_DIR/trace.txt" | sort -u); do
+        grep "section=$section " "$WORK_DIR/trace.txt" | sed -n 's/.* us=\([0-9]*\).*/\1/p' \
+            > "$WORK_DIR/section.txt"
+        if grep -q "section=$section .*main=true" "$WORK_DIR/trace.txt"; then
+            thread="[main]"
+        else
+            thread=""
+        fi
+        echo "$section $thread $(percentiles "$WORK_DIR/section.txt")"
+    done
+} | tee "$REPORT"
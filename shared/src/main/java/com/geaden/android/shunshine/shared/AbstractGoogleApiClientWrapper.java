@@ -1,13 +1,8 @@
 package com.geaden.android.shunshine.shared;
 
 import android.content.Context;
-import android.util.Log;
 
-import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Wearable;
-
-import java.util.concurrent.TimeUnit;
 
 /**
  * Helper class to wrap {@link GoogleApiClient} initialization.
@@ -15,7 +10,6 @@ import java.util.concurrent.TimeUnit;
  * @author Gennady Denisov
  */
 public abstract class AbstractGoogleApiClientWrapper {
-    private static final String TAG = "GoogleApiClientHandler";
     private final Context mContext;
 
     public AbstractGoogleApiClientWrapper(Context context) {
@@ -23,26 +17,22 @@ public abstract class AbstractGoogleApiClientWrapper {
     }
 
     /**
-     * Wraps initialization, connection and disconnection of {@link GoogleApiClient} to call #executeAction method.
+     * Runs #executeAction method with the {@link GoogleApiClient} shared through
+     * {@link GoogleApiClientManager}, which connects it first if needed and keeps it connected
+     * for the next caller for a while.
      * Should never be called from Main/UI thread.
      */
     public void wrap() {
-        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(mContext)
-                .addApi(Wearable.API)
-                .build();
-
-        ConnectionResult connectionResult = googleApiClient.blockingConnect(
-                Constants.GOOGLE_API_CLIENT_TIMEOUT_S, TimeUnit.SECONDS);
-
-        if (!connectionResult.isSuccess() || !googleApiClient.isConnected()) {
-            Log.e(TAG, String.format(Constants.GOOGLE_API_CLIENT_ERROR_MSG,
-                    connectionResult.getErrorCode()));
+        GoogleApiClientManager manager = GoogleApiClientManager.getInstance(mContext);
+        GoogleApiClient googleApiClient = manager.acquire();
+        if (googleApiClient == null) {
             return;
         }
-
-        executeAction(googleApiClient);
-
-        googleApiClient.disconnect();
+        try {
+            executeAction(googleApiClient);
+        } finally {
+            manager.release();
+        }
     }
 
     /**
@@ -11,11 +11,8 @@ public final class Constants {
     }
 
     // Data layer keys
-    public static final String EXTRA_HIGH_TEMP = "extra_high_temp";
-    public static final String EXTRA_LOW_TEMP = "extra_low_temp";
-    public static final String EXTRA_ART = "extra_art";
+    public static final String EXTRA_PAYLOAD = "extra_payload";
     public static final String EXTRA_TIME = "extra_time";
-    public static final String EXTRA_UNITS_METRIC = "extra_units";
 
     // Wear Data API path
     public static final String WEATHER_PATH = "/weather";
@@ -26,4 +23,5 @@ public final class Constants {
     // 30 seconds
     public static final long GOOGLE_API_CLIENT_TIMEOUT_S = 30;
     public static final long GET_CAPABILITY_TIMEOUT_S = 30;
+    public static final long SEND_MESSAGE_TIMEOUT_S = 10;
 }
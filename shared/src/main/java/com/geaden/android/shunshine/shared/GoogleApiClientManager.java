@@ -0,0 +1,173 @@
+package com.geaden.android.shunshine.shared;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one {@link GoogleApiClient} connected for the whole process, shared by everyone who
+ * talks to the data layer.
+ * <p/>
+ * Users hold a reference with {@link #acquire()}/{@link #release()} while they need the client.
+ * When the last reference is released, the client stays connected for {@link #IDLE_TIMEOUT_MS}
+ * more, so a burst of sends or data events pays for the connection only once. The reference
+ * counting itself is done by {@link SharedConnection}.
+ *
+ * @author Gennady Denisov
+ */
+public final class GoogleApiClientManager implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+    private static final String TAG = "GoogleApiClientManager";
+
+    /**
+     * How long the client stays connected after the last reference is released.
+     */
+    public static final long IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final Histogram sConnectLatency =
+            MetricsRegistry.histogram("google_api.connect_us");
+    private static final Counter sConnects = MetricsRegistry.counter("google_api.connects");
+    private static final Counter sConnectFailures =
+            MetricsRegistry.counter("google_api.connect_failures");
+    private static final Counter sReuses = MetricsRegistry.counter("google_api.reuses");
+    private static final Counter sIdleDisconnects =
+            MetricsRegistry.counter("google_api.idle_disconnects");
+
+    private static GoogleApiClientManager sInstance;
+
+    private final GoogleApiClient mClient;
+    // Delivers the connection callbacks and runs the idle disconnect.
+    private final Handler mHandler;
+    private final SharedConnection mConnection;
+    private long mConnectStart;
+
+    private GoogleApiClientManager(Context context) {
+        HandlerThread thread = new HandlerThread(TAG);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+        mClient = new GoogleApiClient.Builder(context)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .setHandler(mHandler)
+                .build();
+        mConnection = new SharedConnection(new SharedConnection.Connection() {
+            @Override
+            public boolean isConnected() {
+                return mClient.isConnected();
+            }
+
+            @Override
+            public boolean isConnecting() {
+                return mClient.isConnecting();
+            }
+
+            @Override
+            public void connect() {
+                mConnectStart = System.nanoTime();
+                mClient.connect();
+            }
+
+            @Override
+            public void disconnect() {
+                // Only ever called once the client has been idle
+                Log.d(TAG, "Disconnecting idle client");
+                mClient.disconnect();
+                sIdleDisconnects.inc();
+            }
+        }, new SharedConnection.Scheduler() {
+            @Override
+            public void schedule(Runnable runnable, long delayMillis) {
+                mHandler.postDelayed(runnable, delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable runnable) {
+                mHandler.removeCallbacks(runnable);
+            }
+        }, IDLE_TIMEOUT_MS);
+    }
+
+    public static synchronized GoogleApiClientManager getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new GoogleApiClientManager(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Takes a reference to the client, connecting it if needed, and waits for the connection.
+     * Should never be called from Main/UI thread. Every successful call has to be followed by
+     * {@link #release()}.
+     *
+     * @return the connected client, or null if it failed to connect in
+     * {@link Constants#GOOGLE_API_CLIENT_TIMEOUT_S}.
+     */
+    public synchronized GoogleApiClient acquire() {
+        if (Looper.myLooper() == mHandler.getLooper()) {
+            throw new IllegalStateException("acquire() would wait for its own thread");
+        }
+        if (mConnection.retain()) {
+            sReuses.inc();
+        }
+        long deadline = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(Constants.GOOGLE_API_CLIENT_TIMEOUT_S);
+        long remaining;
+        while (!mClient.isConnected() && mClient.isConnecting()
+                && (remaining = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!mClient.isConnected()) {
+            Log.e(TAG, Constants.GOOGLE_API_CLIENT_ERROR_MSG);
+            release();
+            return null;
+        }
+        return mClient;
+    }
+
+    /**
+     * Drops a reference taken by {@link #acquire()}. The client disconnects after
+     * {@link #IDLE_TIMEOUT_MS} unless it is taken again.
+     */
+    public synchronized void release() {
+        mConnection.release();
+    }
+
+    @Override
+    public synchronized void onConnected(Bundle bundle) {
+        sConnects.inc();
+        sConnectLatency.recordSince(mConnectStart);
+        notifyAll();
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+        // The client reconnects by itself.
+        Log.d(TAG, "Connection suspended, cause " + cause);
+    }
+
+    @Override
+    public synchronized void onConnectionFailed(@NonNull ConnectionResult connectionResult) {
+        Log.e(TAG, Constants.GOOGLE_API_CLIENT_ERROR_MSG + " " + connectionResult.getErrorCode());
+        sConnectFailures.inc();
+        notifyAll();
+    }
+}
@@ -0,0 +1,95 @@
+package com.geaden.android.shunshine.shared;
+
+/**
+ * Reference count of a connection shared by several users. The first reference connects, and
+ * when the last one is dropped the connection stays up for an idle timeout, so a burst of users
+ * pays for connecting only once.
+ * <p/>
+ * Free of Android dependencies; {@link GoogleApiClientManager} backs it with a
+ * {@code GoogleApiClient} and a {@code Handler}.
+ *
+ * @author Gennady Denisov
+ */
+final class SharedConnection {
+    /**
+     * The connection being shared.
+     */
+    interface Connection {
+        boolean isConnected();
+
+        boolean isConnecting();
+
+        void connect();
+
+        void disconnect();
+    }
+
+    /**
+     * Runs the idle disconnect after a delay.
+     */
+    interface Scheduler {
+        void schedule(Runnable runnable, long delayMillis);
+
+        void cancel(Runnable runnable);
+    }
+
+    private final Connection mConnection;
+    private final Scheduler mScheduler;
+    private final long mIdleTimeoutMillis;
+    private int mRefCount;
+
+    private final Runnable mIdleDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            disconnectIfIdle();
+        }
+    };
+
+    SharedConnection(Connection connection, Scheduler scheduler, long idleTimeoutMillis) {
+        mConnection = connection;
+        mScheduler = scheduler;
+        mIdleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     * Takes a reference and makes sure the connection is connected or connecting. Cancels a
+     * pending idle disconnect.
+     *
+     * @return true if the connection was already connected.
+     */
+    synchronized boolean retain() {
+        mRefCount++;
+        mScheduler.cancel(mIdleDisconnect);
+        if (mConnection.isConnected()) {
+            return true;
+        }
+        if (!mConnection.isConnecting()) {
+            mConnection.connect();
+        }
+        return false;
+    }
+
+    /**
+     * Drops a reference taken by {@link #retain()}. Dropping the last one schedules the idle
+     * disconnect.
+     */
+    synchronized void release() {
+        if (mRefCount <= 0) {
+            throw new IllegalStateException("release() without retain()");
+        }
+        mRefCount--;
+        if (mRefCount == 0) {
+            mScheduler.schedule(mIdleDisconnect, mIdleTimeoutMillis);
+        }
+    }
+
+    synchronized int getRefCount() {
+        return mRefCount;
+    }
+
+    private synchronized void disconnectIfIdle() {
+        if (mRefCount == 0 && (mConnection.isConnected() || mConnection.isConnecting())) {
+            mConnection.disconnect();
+        }
+    }
+}
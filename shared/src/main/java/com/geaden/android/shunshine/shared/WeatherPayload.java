@@ -0,0 +1,217 @@
+package com.geaden.android.shunshine.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+/**
+ * Forecast sent from the handheld to the wearable, in a compact versioned binary form.
+ * <p/>
+ * Each day is its condition id and its high and low in tenths of a degree Celsius, six bytes
+ * in total. The wearable renders the art from its own resources, so no image crosses the
+ * link. Layout of version 1:
+ * <pre>
+ * byte  version
+ * byte  flags, bit 0: metric units
+ * long  data version, when the handheld last synced the forecast
+ * int   first day, days since the epoch
+ * byte  day count
+ * day count times:
+ *   short condition id
+ *   short high, tenths of a degree Celsius
+ *   short low, tenths of a degree Celsius
+ * </pre>
+ *
+ * @author Gennady Denisov
+ */
+public final class WeatherPayload {
+    public static final int VERSION = 1;
+
+    // Days a payload carries at most.
+    public static final int MAX_DAYS = 14;
+
+    private static final int FLAG_METRIC = 1;
+
+    private static final int HEADER_BYTES = 1 + 1 + 8 + 4 + 1;
+    private static final int DAY_BYTES = 2 + 2 + 2;
+
+    private final long mDataVersion;
+    private final int mFirstDay;
+    private final boolean mMetric;
+    private final int[] mWeatherIds;
+    private final short[] mHighs;
+    private final short[] mLows;
+
+    private WeatherPayload(long dataVersion, int firstDay, boolean metric, int[] weatherIds,
+                           short[] highs, short[] lows) {
+        mDataVersion = dataVersion;
+        mFirstDay = firstDay;
+        mMetric = metric;
+        mWeatherIds = weatherIds;
+        mHighs = highs;
+        mLows = lows;
+    }
+
+    /**
+     * Builds a payload from the forecast, temperatures in Celsius.
+     *
+     * @param dataVersion when the forecast was synced.
+     * @param firstDay    day of the first entry, in days since the epoch.
+     * @param metric      whether the user wants metric units.
+     */
+    public static WeatherPayload create(long dataVersion, int firstDay, boolean metric,
+                                        int[] weatherIds, double[] highs, double[] lows) {
+        int count = Math.min(weatherIds.length, MAX_DAYS);
+        if (highs.length < count || lows.length < count) {
+            throw new IllegalArgumentException("Missing temperatures");
+        }
+        int[] packedIds = new int[count];
+        short[] packedHighs = new short[count];
+        short[] packedLows = new short[count];
+        for (int i = 0; i < count; i++) {
+            packedIds[i] = weatherIds[i];
+            packedHighs[i] = packTemperature(highs[i]);
+            packedLows[i] = packTemperature(lows[i]);
+        }
+        return new WeatherPayload(dataVersion, firstDay, metric, packedIds, packedHighs,
+                packedLows);
+    }
+
+    public static WeatherPayload fromBytes(byte[] bytes) throws IOException {
+        if (bytes == null || bytes.length < HEADER_BYTES) {
+            throw new IOException("Truncated weather payload");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported weather payload version " + version);
+        }
+        int flags = in.readUnsignedByte();
+        long dataVersion = in.readLong();
+        int firstDay = in.readInt();
+        int count = in.readUnsignedByte();
+        if (count > MAX_DAYS || bytes.length < HEADER_BYTES + count * DAY_BYTES) {
+            throw new IOException("Truncated weather payload");
+        }
+        int[] weatherIds = new int[count];
+        short[] highs = new short[count];
+        short[] lows = new short[count];
+        for (int i = 0; i < count; i++) {
+            weatherIds[i] = in.readUnsignedShort();
+            highs[i] = in.readShort();
+            lows[i] = in.readShort();
+        }
+        return new WeatherPayload(dataVersion, firstDay, (flags & FLAG_METRIC) != 0,
+                weatherIds, highs, lows);
+    }
+
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes =
+                new ByteArrayOutputStream(HEADER_BYTES + mWeatherIds.length * DAY_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(mMetric ? FLAG_METRIC : 0);
+            out.writeLong(mDataVersion);
+            out.writeInt(mFirstDay);
+            out.writeByte(mWeatherIds.length);
+            for (int i = 0; i < mWeatherIds.length; i++) {
+                out.writeShort(mWeatherIds[i]);
+                out.writeShort(mHighs[i]);
+                out.writeShort(mLows[i]);
+            }
+        } catch (IOException e) {
+            // Not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public long getDataVersion() {
+        return mDataVersion;
+    }
+
+    /**
+     * @return day of the first entry, in days since the epoch.
+     */
+    public int getFirstDay() {
+        return mFirstDay;
+    }
+
+    /**
+     * @param day in days since the epoch.
+     * @return the entry of the day, or -1 if the payload does not cover it.
+     */
+    public int indexOfDay(long day) {
+        long index = day - mFirstDay;
+        return index >= 0 && index < mWeatherIds.length ? (int) index : -1;
+    }
+
+    public boolean isMetric() {
+        return mMetric;
+    }
+
+    public int getDayCount() {
+        return mWeatherIds.length;
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    /**
+     * @return the high of the day in Celsius, to a tenth of a degree.
+     */
+    public double getHigh(int day) {
+        return mHighs[day] / 10.0;
+    }
+
+    /**
+     * @return the low of the day in Celsius, to a tenth of a degree.
+     */
+    public double getLow(int day) {
+        return mLows[day] / 10.0;
+    }
+
+    /**
+     * @return CRC32 of everything the wearable shows, i.e. all but the data version, which
+     * changes with every sync even if the forecast does not.
+     */
+    public long getContentChecksum() {
+        return checksum(mWeatherIds.length);
+    }
+
+    /**
+     * @return CRC32 of the units and the first day only, what the wearable shows right now.
+     */
+    public long getFirstDayChecksum() {
+        return checksum(Math.min(1, mWeatherIds.length));
+    }
+
+    private long checksum(int days) {
+        CRC32 crc = new CRC32();
+        crc.update(mMetric ? FLAG_METRIC : 0);
+        updateInt(crc, mFirstDay);
+        for (int i = 0; i < days; i++) {
+            updateInt(crc, mWeatherIds[i]);
+            updateInt(crc, mHighs[i]);
+            updateInt(crc, mLows[i]);
+        }
+        return crc.getValue();
+    }
+
+    private static void updateInt(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    private static short packTemperature(double celsius) {
+        long tenths = Math.round(celsius * 10);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, tenths));
+    }
+}
@@ -0,0 +1,37 @@
+package com.geaden.android.shunshine.shared;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Body of the message the wearable sends on {@link Constants#WEATHER_REQUEST_PATH}: the data
+ * version of the forecast it already has, so the handheld can skip sending the same one again.
+ *
+ * @author Gennady Denisov
+ */
+public final class WeatherRequest {
+    /**
+     * Data version of a wearable without any forecast, or of a request that does not say.
+     */
+    public static final long NO_DATA_VERSION = 0;
+
+    private static final int BYTES = 8;
+
+    private WeatherRequest() {
+
+    }
+
+    public static byte[] toBytes(long dataVersion) {
+        return ByteBuffer.allocate(BYTES).putLong(dataVersion).array();
+    }
+
+    /**
+     * @return the data version the wearable has, or {@link #NO_DATA_VERSION} for anything else,
+     * e.g. a request of an older wearable app.
+     */
+    public static long getDataVersion(byte[] bytes) {
+        if (bytes == null || bytes.length != BYTES) {
+            return NO_DATA_VERSION;
+        }
+        return ByteBuffer.wrap(bytes).getLong();
+    }
+}
@@ -0,0 +1,33 @@
+package com.geaden.android.shunshine.shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonically increasing count of events.
+ *
+ * @author Gennady Denisov
+ */
+public final class Counter {
+    private final String mName;
+    private final AtomicLong mValue = new AtomicLong();
+
+    Counter(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void inc() {
+        mValue.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        mValue.addAndGet(delta);
+    }
+
+    public long get() {
+        return mValue.get();
+    }
+}
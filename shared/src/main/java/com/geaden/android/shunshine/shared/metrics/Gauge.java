@@ -0,0 +1,29 @@
+package com.geaden.android.shunshine.shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Last observed value of something, e.g. the number of rows written by the last sync.
+ *
+ * @author Gennady Denisov
+ */
+public final class Gauge {
+    private final String mName;
+    private final AtomicLong mValue = new AtomicLong();
+
+    Gauge(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public void set(long value) {
+        mValue.set(value);
+    }
+
+    public long get() {
+        return mValue.get();
+    }
+}
@@ -0,0 +1,108 @@
+package com.geaden.android.shunshine.shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Distribution of values over fixed buckets. Recording is lock-free and does not allocate, so
+ * it is safe to use on hot paths such as {@code onDraw} or content provider queries.
+ *
+ * @author Gennady Denisov
+ */
+public final class Histogram {
+    private final String mName;
+    // Inclusive upper bounds of each bucket, ascending. The last bucket catches everything else.
+    private final long[] mBounds;
+    private final AtomicLongArray mCounts;
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSum = new AtomicLong();
+    private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+    Histogram(String name, long[] bounds) {
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i] <= bounds[i - 1]) {
+                throw new IllegalArgumentException("Bucket bounds must be ascending: " + name);
+            }
+        }
+        mName = name;
+        mBounds = bounds.clone();
+        mCounts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Records a single value.
+     *
+     * @param value the value, in the unit the histogram was registered with.
+     */
+    public void record(long value) {
+        mCounts.incrementAndGet(bucketFor(value));
+        mCount.incrementAndGet();
+        mSum.addAndGet(value);
+        long max;
+        do {
+            max = mMax.get();
+        } while (value > max && !mMax.compareAndSet(max, value));
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()} reading in microseconds.
+     *
+     * @param startNanos the start of the measured interval.
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    public long getCount() {
+        return mCount.get();
+    }
+
+    public long getSum() {
+        return mSum.get();
+    }
+
+    public long getMax() {
+        return mCount.get() == 0 ? 0 : mMax.get();
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls into.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the estimate, or the maximum when it falls into the overflow bucket.
+     */
+    public long getPercentile(double percentile) {
+        long count = mCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < mBounds.length; i++) {
+            seen += mCounts.get(i);
+            if (seen >= rank) {
+                return mBounds[i];
+            }
+        }
+        return getMax();
+    }
+
+    private int bucketFor(long value) {
+        // Binary search over a handful of bounds, no allocations.
+        int low = 0;
+        int high = mBounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (value <= mBounds[mid]) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+}
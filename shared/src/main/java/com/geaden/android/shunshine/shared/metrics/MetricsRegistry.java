@@ -0,0 +1,156 @@
+package com.geaden.android.shunshine.shared.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Process wide registry of counters, gauges and histograms.
+ * <p/>
+ * Metrics are looked up by name once, typically into a static final field, and then recorded
+ * without locks or allocations. {@link #writeSnapshot(File)} dumps all of them as plain text,
+ * one metric per line, for a debug screen or for pulling with {@code adb}.
+ *
+ * @author Gennady Denisov
+ */
+public final class MetricsRegistry {
+    /**
+     * Default latency buckets in microseconds, from 50us up to 30s.
+     */
+    public static final long[] LATENCY_BUCKETS_US = {
+            50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 500000,
+            1000000, 2500000, 5000000, 10000000, 30000000
+    };
+
+    /**
+     * Name of the snapshot file written into the files directory.
+     */
+    public static final String SNAPSHOT_FILE_NAME = "metrics.txt";
+
+    private static final ConcurrentMap<String, Counter> sCounters = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Gauge> sGauges = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Histogram> sHistograms = new ConcurrentHashMap<>();
+
+    private static final Executor sWriteExecutor = Executors.newSingleThreadExecutor();
+
+    private MetricsRegistry() {
+
+    }
+
+    public static Counter counter(String name) {
+        Counter counter = sCounters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = sCounters.putIfAbsent(name, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        return counter;
+    }
+
+    public static Gauge gauge(String name) {
+        Gauge gauge = sGauges.get(name);
+        if (gauge == null) {
+            Gauge created = new Gauge(name);
+            gauge = sGauges.putIfAbsent(name, created);
+            if (gauge == null) {
+                gauge = created;
+            }
+        }
+        return gauge;
+    }
+
+    /**
+     * Returns the latency histogram with the given name, using {@link #LATENCY_BUCKETS_US}.
+     */
+    public static Histogram histogram(String name) {
+        return histogram(name, LATENCY_BUCKETS_US);
+    }
+
+    /**
+     * Returns the histogram with the given name. Bounds only apply when it is first created.
+     */
+    public static Histogram histogram(String name, long[] bounds) {
+        Histogram histogram = sHistograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name, bounds);
+            histogram = sHistograms.putIfAbsent(name, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * Writes a text snapshot of all metrics, sorted by name.
+     *
+     * @param writer where to write the snapshot.
+     */
+    public static void dump(Writer writer) throws IOException {
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(sCounters).entrySet()) {
+            writer.write("counter " + entry.getKey() + " " + entry.getValue().get() + "\n");
+        }
+        for (Map.Entry<String, Gauge> entry : new TreeMap<>(sGauges).entrySet()) {
+            writer.write("gauge " + entry.getKey() + " " + entry.getValue().get() + "\n");
+        }
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(sHistograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            writer.write("histogram " + entry.getKey()
+                    + " count=" + count
+                    + " mean=" + (count == 0 ? 0 : histogram.getSum() / count)
+                    + " p50=" + histogram.getPercentile(50)
+                    + " p90=" + histogram.getPercentile(90)
+                    + " p99=" + histogram.getPercentile(99)
+                    + " max=" + histogram.getMax() + "\n");
+        }
+    }
+
+    /**
+     * Writes the snapshot to the given file, replacing its content. Does disk I/O.
+     *
+     * @param file the snapshot file.
+     * @return true if the snapshot has been written.
+     */
+    public static boolean writeSnapshot(File file) {
+        Writer writer = null;
+        try {
+            writer = new FileWriter(file);
+            dump(writer);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ignored) {
+                    // Nothing else to do.
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot to the given file on a background thread.
+     *
+     * @param file the snapshot file.
+     */
+    public static void writeSnapshotAsync(final File file) {
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeSnapshot(file);
+            }
+        });
+    }
+}
@@ -0,0 +1,156 @@
+package com.geaden.android.shunshine.shared;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SharedConnectionTest {
+    private static final long IDLE_TIMEOUT_MS = 15000;
+
+    private FakeConnection mConnection;
+    private FakeScheduler mScheduler;
+    private SharedConnection mShared;
+
+    @Before
+    public void setUp() {
+        mConnection = new FakeConnection();
+        mScheduler = new FakeScheduler();
+        mShared = new SharedConnection(mConnection, mScheduler, IDLE_TIMEOUT_MS);
+    }
+
+    @Test
+    public void releaseWithoutRetainThrows() {
+        try {
+            mShared.release();
+            fail("Error: release() without retain() should throw");
+        } catch (IllegalStateException expected) {
+        }
+        mShared.retain();
+        mShared.release();
+        try {
+            mShared.release();
+            fail("Error: Unbalanced release() should throw");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void connectsOnceForAllReferences() {
+        assertFalse(mShared.retain());
+        // Still connecting
+        assertFalse(mShared.retain());
+        mConnection.mConnected = true;
+        assertTrue(mShared.retain());
+        assertEquals(1, mConnection.mConnects);
+        assertEquals(3, mShared.getRefCount());
+    }
+
+    @Test
+    public void lastReleaseSchedulesDisconnect() {
+        mShared.retain();
+        mShared.retain();
+        mConnection.mConnected = true;
+
+        mShared.release();
+        assertTrue("Error: Disconnect scheduled while still referenced",
+                mScheduler.mPending.isEmpty());
+        mShared.release();
+        assertEquals(1, mScheduler.mPending.size());
+        assertEquals(IDLE_TIMEOUT_MS, mScheduler.mLastDelay);
+        assertEquals(0, mConnection.mDisconnects);
+
+        mScheduler.runPending();
+        assertEquals(1, mConnection.mDisconnects);
+        assertFalse(mConnection.mConnected);
+    }
+
+    @Test
+    public void reacquireCancelsDisconnect() {
+        mShared.retain();
+        mConnection.mConnected = true;
+        mShared.release();
+        assertEquals(1, mScheduler.mPending.size());
+
+        assertTrue("Error: Client should be reused", mShared.retain());
+        assertTrue("Error: Disconnect should be cancelled", mScheduler.mPending.isEmpty());
+        assertEquals(0, mConnection.mDisconnects);
+        assertEquals(1, mConnection.mConnects);
+    }
+
+    @Test
+    public void idleDisconnectRacingAReferenceDoesNothing() {
+        mShared.retain();
+        mConnection.mConnected = true;
+        mShared.release();
+        Runnable idleDisconnect = mScheduler.mPending.get(0);
+
+        // Taken again after the disconnect already started running
+        mShared.retain();
+        idleDisconnect.run();
+        assertEquals(0, mConnection.mDisconnects);
+        assertTrue(mConnection.mConnected);
+    }
+
+    private static final class FakeConnection implements SharedConnection.Connection {
+        boolean mConnected;
+        boolean mConnecting;
+        int mConnects;
+        int mDisconnects;
+
+        @Override
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        @Override
+        public boolean isConnecting() {
+            return mConnecting;
+        }
+
+        @Override
+        public void connect() {
+            mConnects++;
+            mConnecting = true;
+        }
+
+        @Override
+        public void disconnect() {
+            mDisconnects++;
+            mConnected = false;
+            mConnecting = false;
+        }
+    }
+
+    private static final class FakeScheduler implements SharedConnection.Scheduler {
+        final List<Runnable> mPending = new ArrayList<>();
+        long mLastDelay;
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            mPending.add(runnable);
+            mLastDelay = delayMillis;
+        }
+
+        @Override
+        public void cancel(Runnable runnable) {
+            // Removes every posting, like Handler#removeCallbacks
+            mPending.removeAll(Collections.singleton(runnable));
+        }
+
+        void runPending() {
+            List<Runnable> pending = new ArrayList<>(mPending);
+            mPending.clear();
+            for (Runnable runnable : pending) {
+                runnable.run();
+            }
+        }
+    }
+}
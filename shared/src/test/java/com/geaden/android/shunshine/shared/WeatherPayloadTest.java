@@ -0,0 +1,132 @@
+package com.geaden.android.shunshine.shared;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WeatherPayloadTest {
+    private static final long DATA_VERSION = 1450569600000L;
+    private static final int FIRST_DAY = 16789;
+
+    private static WeatherPayload forecast(int days) {
+        int[] weatherIds = new int[days];
+        double[] highs = new double[days];
+        double[] lows = new double[days];
+        for (int i = 0; i < days; i++) {
+            weatherIds[i] = 800 + i % 5;
+            highs[i] = 21.37 - i;
+            lows[i] = -3.04 - i;
+        }
+        return WeatherPayload.create(DATA_VERSION, FIRST_DAY, true, weatherIds, highs, lows);
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        WeatherPayload payload = WeatherPayload.fromBytes(forecast(7).toBytes());
+        assertEquals(DATA_VERSION, payload.getDataVersion());
+        assertEquals(FIRST_DAY, payload.getFirstDay());
+        assertTrue(payload.isMetric());
+        assertEquals(7, payload.getDayCount());
+        assertEquals(800, payload.getWeatherId(0));
+        assertEquals(801, payload.getWeatherId(6));
+        assertEquals(21.4, payload.getHigh(0), 1e-9);
+        assertEquals(-3.0, payload.getLow(0), 1e-9);
+        assertEquals(-9.0, payload.getLow(6), 1e-9);
+    }
+
+    @Test
+    public void imperialFlagRoundTrips() throws Exception {
+        WeatherPayload payload = WeatherPayload.fromBytes(WeatherPayload.create(DATA_VERSION,
+                FIRST_DAY, false, new int[]{500}, new double[]{10}, new double[]{5}).toBytes());
+        assertFalse(payload.isMetric());
+    }
+
+    @Test
+    public void daysAreCapped() throws Exception {
+        assertEquals(WeatherPayload.MAX_DAYS,
+                WeatherPayload.fromBytes(forecast(20).toBytes()).getDayCount());
+    }
+
+    @Test
+    public void temperaturesAreClamped() throws Exception {
+        WeatherPayload payload = WeatherPayload.fromBytes(WeatherPayload.create(DATA_VERSION,
+                FIRST_DAY, true, new int[]{800}, new double[]{1e6}, new double[]{-1e6}).toBytes());
+        assertEquals(Short.MAX_VALUE / 10.0, payload.getHigh(0), 1e-9);
+        assertEquals(Short.MIN_VALUE / 10.0, payload.getLow(0), 1e-9);
+    }
+
+    @Test
+    public void unknownVersionIsRejected() {
+        byte[] bytes = forecast(1).toBytes();
+        bytes[0] = WeatherPayload.VERSION + 1;
+        try {
+            WeatherPayload.fromBytes(bytes);
+            fail("Error: Payload of an unknown version should be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void truncatedPayloadIsRejected() {
+        byte[] bytes = forecast(3).toBytes();
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                WeatherPayload.fromBytes(Arrays.copyOf(bytes, length));
+                fail("Error: Payload cut at " + length + " bytes should be rejected");
+            } catch (IOException expected) {
+            }
+        }
+        try {
+            WeatherPayload.fromBytes(null);
+            fail("Error: Missing payload should be rejected");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void checksumsIgnoreDataVersion() {
+        WeatherPayload payload = forecast(7);
+        WeatherPayload resynced = WeatherPayload.create(DATA_VERSION + 1, FIRST_DAY, true,
+                new int[]{800, 801, 802, 803, 804, 800, 801},
+                new double[]{21.37, 20.37, 19.37, 18.37, 17.37, 16.37, 15.37},
+                new double[]{-3.04, -4.04, -5.04, -6.04, -7.04, -8.04, -9.04});
+        assertEquals(payload.getContentChecksum(), resynced.getContentChecksum());
+        assertEquals(payload.getFirstDayChecksum(), resynced.getFirstDayChecksum());
+    }
+
+    @Test
+    public void laterDaysOnlyChangeContentChecksum() {
+        WeatherPayload payload = WeatherPayload.create(DATA_VERSION, FIRST_DAY, true,
+                new int[]{800, 500}, new double[]{20, 15}, new double[]{10, 8});
+        WeatherPayload tomorrowChanged = WeatherPayload.create(DATA_VERSION, FIRST_DAY, true,
+                new int[]{800, 501}, new double[]{20, 15}, new double[]{10, 8});
+        assertNotEquals(payload.getContentChecksum(), tomorrowChanged.getContentChecksum());
+        assertEquals(payload.getFirstDayChecksum(), tomorrowChanged.getFirstDayChecksum());
+
+        WeatherPayload todayChanged = WeatherPayload.create(DATA_VERSION, FIRST_DAY, true,
+                new int[]{800, 500}, new double[]{20.5, 15}, new double[]{10, 8});
+        assertNotEquals(payload.getFirstDayChecksum(), todayChanged.getFirstDayChecksum());
+
+        WeatherPayload imperial = WeatherPayload.create(DATA_VERSION, FIRST_DAY, false,
+                new int[]{800, 500}, new double[]{20, 15}, new double[]{10, 8});
+        assertNotEquals(payload.getFirstDayChecksum(), imperial.getFirstDayChecksum());
+
+        WeatherPayload nextDay = WeatherPayload.create(DATA_VERSION, FIRST_DAY + 1, true,
+                new int[]{800, 500}, new double[]{20, 15}, new double[]{10, 8});
+        assertNotEquals(payload.getFirstDayChecksum(), nextDay.getFirstDayChecksum());
+    }
+
+    @Test
+    public void size() {
+        assertEquals(21, forecast(1).toBytes().length);
+        assertEquals(57, forecast(7).toBytes().length);
+        assertEquals(99, forecast(WeatherPayload.MAX_DAYS).toBytes().length);
+    }
+}
@@ -0,0 +1,91 @@
+package com.geaden.android.shunshine.shared.metrics;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void lookupReturnsSameInstance() throws Exception {
+        assertSame(MetricsRegistry.counter("test.lookup"), MetricsRegistry.counter("test.lookup"));
+        assertSame(MetricsRegistry.gauge("test.lookup"), MetricsRegistry.gauge("test.lookup"));
+        assertSame(MetricsRegistry.histogram("test.lookup"),
+                MetricsRegistry.histogram("test.lookup"));
+    }
+
+    @Test
+    public void counterAndGauge() throws Exception {
+        Counter counter = MetricsRegistry.counter("test.counter");
+        counter.inc();
+        counter.add(41);
+        assertEquals(42, counter.get());
+
+        Gauge gauge = MetricsRegistry.gauge("test.gauge");
+        gauge.set(7);
+        gauge.set(3);
+        assertEquals(3, gauge.get());
+    }
+
+    @Test
+    public void histogramPercentilesUseBucketBounds() throws Exception {
+        Histogram histogram = MetricsRegistry.histogram("test.percentiles", new long[]{10, 20, 30});
+        for (int i = 1; i <= 100; i++) {
+            // 1..10 -> first bucket, 11..20 -> second, everything above -> later buckets.
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5050, histogram.getSum());
+        assertEquals(100, histogram.getMax());
+        assertEquals(10, histogram.getPercentile(10));
+        assertEquals(20, histogram.getPercentile(20));
+        assertEquals(30, histogram.getPercentile(30));
+        // Overflow bucket reports the maximum.
+        assertEquals(100, histogram.getPercentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void histogramRejectsUnsortedBounds() throws Exception {
+        MetricsRegistry.histogram("test.unsorted", new long[]{10, 5});
+    }
+
+    @Test
+    public void concurrentRecordsAreNotLost() throws Exception {
+        final Histogram histogram = MetricsRegistry.histogram("test.concurrent");
+        final Counter counter = MetricsRegistry.counter("test.concurrent");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        histogram.record(i);
+                        counter.inc();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40000, histogram.getCount());
+        assertEquals(40000, counter.get());
+        assertEquals(9999, histogram.getMax());
+    }
+
+    @Test
+    public void dumpListsAllMetrics() throws Exception {
+        MetricsRegistry.counter("test.dump.counter").inc();
+        MetricsRegistry.histogram("test.dump.histogram").record(75);
+        StringWriter writer = new StringWriter();
+        MetricsRegistry.dump(writer);
+        String snapshot = writer.toString();
+        assertTrue(snapshot.contains("counter test.dump.counter 1\n"));
+        assertTrue(snapshot.contains("histogram test.dump.histogram count=1 mean=75 p50=100"));
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Renders a whole day of ambient ticks into a bitmap the size of a watch face and reports the
+ * draw time per tick, the number to watch when changing what ambient mode draws.
+ *
+ * @author Gennady Denisov
+ */
+public class TestAmbientRenderer extends AndroidTestCase {
+    private static final String LOG_TAG = TestAmbientRenderer.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final float SHIFT_STEP = 4;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    // 2015-12-20 00:00 UTC
+    private static final long MIDNIGHT = 1450569600000L;
+
+    // A tick has to fit in a frame with plenty to spare.
+    private static final long MAX_MEDIAN_TICK_US = 4000;
+
+    private Canvas mCanvas;
+    private Bitmap mBitmap;
+    private LayerCache mLayers;
+    private WatchFaceText mText;
+    private AmbientRenderer mRenderer;
+    private final float[] mHourWidths = new float[24];
+    private final float[] mMinuteWidths = new float[60];
+    private float mColonWidth;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+
+        Paint hourPaint = new Paint();
+        hourPaint.setColor(Color.WHITE);
+        hourPaint.setTextSize(40);
+        Paint minutePaint = new Paint(hourPaint);
+        for (int i = 0; i < mHourWidths.length; i++) {
+            mHourWidths[i] = hourPaint.measureText(WatchFaceText.TWO_DIGITS[i]);
+        }
+        for (int i = 0; i < mMinuteWidths.length; i++) {
+            mMinuteWidths[i] = minutePaint.measureText(WatchFaceText.TWO_DIGITS[i]);
+        }
+        mColonWidth = hourPaint.measureText(":");
+
+        mText = new WatchFaceText("EEE, MMM d yyyy", Locale.US, TimeZone.getTimeZone("UTC"));
+        mText.setTime(MIDNIGHT);
+
+        // Static layers as in ambient mode: black background and the date.
+        mLayers = new LayerCache();
+        Canvas layerCanvas = mLayers.beginRender(SIZE, SIZE, mText.getDateVersion(), 0, 0, false);
+        layerCanvas.drawColor(Color.BLACK);
+        Paint datePaint = new Paint(hourPaint);
+        datePaint.setTextSize(14);
+        layerCanvas.drawText(mText.getDateString(), 80, 120, datePaint);
+
+        mRenderer = new AmbientRenderer(hourPaint, minutePaint, SHIFT_STEP);
+        mRenderer.layout(SIZE, 0, 100, mHourWidths, mColonWidth, mMinuteWidths);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mLayers.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testTimeIsCentered() {
+        for (int minuteOfDay = 0; minuteOfDay < AmbientRenderer.MINUTES_PER_DAY; minuteOfDay++) {
+            float start = mRenderer.getHourX(minuteOfDay);
+            float end = mRenderer.getMinuteX(minuteOfDay) + mMinuteWidths[minuteOfDay % 60];
+            assertEquals("Error: Time at minute " + minuteOfDay + " is off center",
+                    SIZE / 2f, (start + end) / 2, 0.01f);
+            assertEquals(start + mHourWidths[minuteOfDay / 60], mRenderer.getColonX(minuteOfDay),
+                    0.01f);
+        }
+    }
+
+    public void testBurnInShiftMovesEveryMinute() {
+        for (int minuteOfDay = 1; minuteOfDay < AmbientRenderer.MINUTES_PER_DAY; minuteOfDay++) {
+            float dx = mRenderer.getShiftX(minuteOfDay);
+            float dy = mRenderer.getShiftY(minuteOfDay);
+            assertTrue(Math.abs(dx) <= SHIFT_STEP && Math.abs(dy) <= SHIFT_STEP);
+            assertFalse("Error: Face should move at minute " + minuteOfDay,
+                    dx == mRenderer.getShiftX(minuteOfDay - 1)
+                            && dy == mRenderer.getShiftY(minuteOfDay - 1));
+        }
+    }
+
+    private long[] renderDay(boolean burnInProtection, Histogram histogram) {
+        long[] ticks = new long[AmbientRenderer.MINUTES_PER_DAY];
+        for (int minuteOfDay = 0; minuteOfDay < ticks.length; minuteOfDay++) {
+            long start = System.nanoTime();
+            // What SunshineWatchFaceService.Engine#onDraw does on an ambient tick.
+            mText.setTime(MIDNIGHT + minuteOfDay * MINUTE_IN_MILLIS);
+            mRenderer.draw(mCanvas, mLayers, mText, burnInProtection);
+            ticks[minuteOfDay] = (System.nanoTime() - start) / 1000;
+            histogram.record(ticks[minuteOfDay]);
+        }
+        return ticks;
+    }
+
+    private void measure(boolean burnInProtection, String name) {
+        Histogram histogram = MetricsRegistry.histogram("test.ambient.tick_us." + name);
+        // Warm up
+        renderDay(burnInProtection, histogram);
+        long cpuStart = Debug.threadCpuTimeNanos();
+        long[] ticks = renderDay(burnInProtection, histogram);
+        long cpuPerTick = (Debug.threadCpuTimeNanos() - cpuStart) / 1000 / ticks.length;
+        Arrays.sort(ticks);
+        long median = ticks[ticks.length / 2];
+        Log.i(LOG_TAG, name + " ambient tick: median " + median + "us, p95 "
+                + ticks[ticks.length * 95 / 100] + "us, max " + ticks[ticks.length - 1]
+                + "us, cpu " + cpuPerTick + "us");
+        assertTrue("Error: Median " + name + " ambient tick took " + median + "us",
+                median <= MAX_MEDIAN_TICK_US);
+    }
+
+    public void testTickDrawTime() {
+        measure(false, "plain");
+    }
+
+    public void testTickDrawTimeWithBurnInProtection() {
+        measure(true, "burn_in");
+    }
+}
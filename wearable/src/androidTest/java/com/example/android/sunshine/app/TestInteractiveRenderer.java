@@ -0,0 +1,103 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws interactive frames into a bitmap the size of a watch face, the way
+ * {@code SunshineWatchFaceService.Engine#onDraw} does, and checks that they do not allocate.
+ *
+ * @author Gennady Denisov
+ */
+public class TestInteractiveRenderer extends AndroidTestCase {
+    private static final int SIZE = 320;
+    private static final int FRAMES = 1000;
+    private static final float Y = 100;
+    private static final long INTERACTIVE_UPDATE_RATE_MS = 500;
+    // 2015-12-20 09:00 UTC
+    private static final long START = 1450569600000L + 9 * 60 * 60 * 1000;
+
+    private Canvas mCanvas;
+    private Bitmap mBitmap;
+    private LayerCache mLayers;
+    private WatchFaceText mText;
+    private InteractiveRenderer mRenderer;
+    private final float[] mHourWidths = new float[24];
+    private final float[] mMinuteWidths = new float[60];
+    private float mColonWidth;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+
+        Paint hourPaint = new Paint();
+        hourPaint.setColor(Color.WHITE);
+        hourPaint.setTextSize(40);
+        hourPaint.setAntiAlias(true);
+        Paint minutePaint = new Paint(hourPaint);
+        for (int i = 0; i < mHourWidths.length; i++) {
+            mHourWidths[i] = hourPaint.measureText(WatchFaceText.TWO_DIGITS[i]);
+        }
+        for (int i = 0; i < mMinuteWidths.length; i++) {
+            mMinuteWidths[i] = minutePaint.measureText(WatchFaceText.TWO_DIGITS[i]);
+        }
+        mColonWidth = hourPaint.measureText(":");
+
+        mText = new WatchFaceText("EEE, MMM d yyyy", Locale.US, TimeZone.getTimeZone("UTC"));
+        mText.setTime(START);
+
+        // Static layers as in interactive mode: background and the date.
+        mLayers = new LayerCache();
+        Canvas layerCanvas = mLayers.beginRender(SIZE, SIZE, mText.getDateVersion(), 0, 0, false);
+        layerCanvas.drawColor(Color.DKGRAY);
+        Paint datePaint = new Paint(hourPaint);
+        datePaint.setTextSize(14);
+        layerCanvas.drawText(mText.getDateString(), 80, 120, datePaint);
+
+        mRenderer = new InteractiveRenderer(hourPaint, minutePaint);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mLayers.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    private void drawFrames() {
+        for (int i = 0; i < FRAMES; i++) {
+            long now = START + i * INTERACTIVE_UPDATE_RATE_MS;
+            mText.layoutTime(now, SIZE / 2f, mHourWidths, mColonWidth, mMinuteWidths);
+            mRenderer.draw(mCanvas, mLayers, mText, Y, now);
+        }
+    }
+
+    public void testColonBlinks() {
+        assertTrue(InteractiveRenderer.isColonShown(START));
+        assertTrue(InteractiveRenderer.isColonShown(START + 499));
+        assertFalse(InteractiveRenderer.isColonShown(START + 500));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testSteadyStateFramesDoNotAllocate() {
+        // Warm up: formats the date of the day and resolves the glyphs
+        drawFrames();
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        drawFrames();
+        int allocations = Debug.getThreadAllocCount();
+        Debug.stopAllocCounting();
+        assertEquals("Error: " + FRAMES + " interactive frames allocated " + allocations
+                + " objects", 0, allocations);
+    }
+}
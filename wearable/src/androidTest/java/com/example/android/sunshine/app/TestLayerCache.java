@@ -0,0 +1,94 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+/**
+ * Checks that the static layers are rendered again exactly when one of their inputs changes,
+ * and that the interactive and ambient caches do not invalidate each other.
+ *
+ * @author Gennady Denisov
+ */
+public class TestLayerCache extends AndroidTestCase {
+    private static final int SIZE = 64;
+
+    private LayerCache mInteractiveLayers;
+    private LayerCache mAmbientLayers;
+    private Bitmap mBitmap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mInteractiveLayers = new LayerCache();
+        mAmbientLayers = new LayerCache();
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mInteractiveLayers.release();
+        mAmbientLayers.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testFirstRenderReturnsCanvas() {
+        assertNotNull(mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false));
+    }
+
+    public void testUnchangedInputsReturnNull() {
+        mInteractiveLayers.beginRender(SIZE, SIZE, 1, 2, 3, true);
+        assertNull(mInteractiveLayers.beginRender(SIZE, SIZE, 1, 2, 3, true));
+        assertNull(mInteractiveLayers.beginRender(SIZE, SIZE, 1, 2, 3, true));
+    }
+
+    public void testEachChangedInputReturnsCanvas() {
+        mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false);
+        assertNotNull("Error: Date change should render",
+                mInteractiveLayers.beginRender(SIZE, SIZE, 1, 0, 0, false));
+        assertNotNull("Error: Weather change should render",
+                mInteractiveLayers.beginRender(SIZE, SIZE, 1, 1, 0, false));
+        assertNotNull("Error: Layout change should render",
+                mInteractiveLayers.beginRender(SIZE, SIZE, 1, 1, 1, false));
+        assertNotNull("Error: Peek card change should render",
+                mInteractiveLayers.beginRender(SIZE, SIZE, 1, 1, 1, true));
+        assertNotNull("Error: Size change should render",
+                mInteractiveLayers.beginRender(SIZE, SIZE / 2, 1, 1, 1, true));
+        assertNull(mInteractiveLayers.beginRender(SIZE, SIZE / 2, 1, 1, 1, true));
+    }
+
+    public void testReleaseRendersAgain() {
+        mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false);
+        mInteractiveLayers.release();
+        assertNotNull(mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false));
+    }
+
+    public void testInteractiveAndAmbientAreIndependent() {
+        assertNotNull(mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false));
+        assertNotNull(mAmbientLayers.beginRender(SIZE, SIZE, 0, 0, 1, false));
+
+        // Toggling ambient mode back and forth renders nothing
+        for (int i = 0; i < 3; i++) {
+            assertNull(mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false));
+            assertNull(mAmbientLayers.beginRender(SIZE, SIZE, 0, 0, 1, false));
+        }
+
+        // A change seen by one cache still renders the other when it is next drawn
+        assertNotNull(mInteractiveLayers.beginRender(SIZE, SIZE, 1, 0, 0, false));
+        assertNotNull(mAmbientLayers.beginRender(SIZE, SIZE, 1, 0, 1, false));
+    }
+
+    public void testDrawCopiesRenderedLayers() {
+        mInteractiveLayers.beginRender(SIZE, SIZE, 0, 0, 0, false).drawColor(Color.RED);
+        mInteractiveLayers.draw(new Canvas(mBitmap));
+        assertEquals(Color.RED, mBitmap.getPixel(SIZE / 2, SIZE / 2));
+
+        // Rendering again starts from a cleared bitmap
+        assertNotNull(mInteractiveLayers.beginRender(SIZE, SIZE, 1, 0, 0, false));
+        mBitmap.eraseColor(Color.BLUE);
+        mInteractiveLayers.draw(new Canvas(mBitmap));
+        assertEquals(Color.BLUE, mBitmap.getPixel(SIZE / 2, SIZE / 2));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * Draws the watch face in ambient mode, where it is redrawn once a minute and every frame
+ * should cost as little power as possible.
+ * <p/>
+ * The positions of the hours, colon and minutes are worked out for every minute of the day
+ * when the layout changes, so a tick only copies the cached static layers and draws three
+ * strings. With burn-in protection the whole face moves by a few pixels every minute, so no
+ * pixel stays lit for long.
+ *
+ * @author Gennady Denisov
+ */
+final class AmbientRenderer {
+    static final int MINUTES_PER_DAY = 24 * 60;
+
+    private static final String COLON_STRING = ":";
+
+    // Burn-in shift in steps of mShiftStep per minute of the day: walks a 3x3 grid around the
+    // centre, so a pixel moves at least one step every minute.
+    private static final int SHIFT_GRID = 3;
+
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final float mShiftStep;
+
+    private final float[] mHourX = new float[MINUTES_PER_DAY];
+    private final float[] mColonX = new float[MINUTES_PER_DAY];
+    private final float[] mMinuteX = new float[MINUTES_PER_DAY];
+    private float mY;
+    private int mWidth = -1;
+    private int mLayoutVersion = -1;
+
+    /**
+     * @param hourPaint   paint of the hours and the colon.
+     * @param minutePaint paint of the minutes.
+     * @param shiftStep   burn-in shift in pixels.
+     */
+    AmbientRenderer(Paint hourPaint, Paint minutePaint, float shiftStep) {
+        mHourPaint = hourPaint;
+        mMinutePaint = minutePaint;
+        mShiftStep = shiftStep;
+    }
+
+    /**
+     * Works out the positions of the time for every minute of the day, unless they are
+     * current for the width and layout version already.
+     *
+     * @param width         width of the surface.
+     * @param layoutVersion changes whenever the text sizes do.
+     * @param y             baseline of the time.
+     * @param hourWidths    width of each hour string.
+     * @param colonWidth    width of the colon.
+     * @param minuteWidths  width of each minute string.
+     */
+    void layout(int width, int layoutVersion, float y, float[] hourWidths, float colonWidth,
+                float[] minuteWidths) {
+        if (width == mWidth && layoutVersion == mLayoutVersion) {
+            return;
+        }
+        mWidth = width;
+        mLayoutVersion = layoutVersion;
+        mY = y;
+        float centerX = width / 2f;
+        for (int minuteOfDay = 0; minuteOfDay < MINUTES_PER_DAY; minuteOfDay++) {
+            float hourWidth = hourWidths[minuteOfDay / 60];
+            float x = centerX - (hourWidth + colonWidth + minuteWidths[minuteOfDay % 60]) / 2;
+            mHourX[minuteOfDay] = x;
+            mColonX[minuteOfDay] = x + hourWidth;
+            mMinuteX[minuteOfDay] = x + hourWidth + colonWidth;
+        }
+    }
+
+    float getHourX(int minuteOfDay) {
+        return mHourX[minuteOfDay];
+    }
+
+    float getColonX(int minuteOfDay) {
+        return mColonX[minuteOfDay];
+    }
+
+    float getMinuteX(int minuteOfDay) {
+        return mMinuteX[minuteOfDay];
+    }
+
+    /**
+     * @return horizontal burn-in shift at the given minute of the day.
+     */
+    float getShiftX(int minuteOfDay) {
+        return (minuteOfDay % SHIFT_GRID - 1) * mShiftStep;
+    }
+
+    /**
+     * @return vertical burn-in shift at the given minute of the day.
+     */
+    float getShiftY(int minuteOfDay) {
+        return (minuteOfDay / SHIFT_GRID % SHIFT_GRID - 1) * mShiftStep;
+    }
+
+    /**
+     * Draws the ambient face. {@link #layout} has to be called first.
+     *
+     * @param layers            the ambient static layers, already rendered.
+     * @param text              the time text, already set to the current time.
+     * @param burnInProtection  whether to shift the face to protect the display.
+     */
+    void draw(Canvas canvas, LayerCache layers, WatchFaceText text, boolean burnInProtection) {
+        int minuteOfDay = text.getHour() * 60 + text.getMinute();
+        int saveCount = canvas.save();
+        if (burnInProtection) {
+            // The shifted layers leave an edge of the surface uncovered.
+            canvas.drawColor(Color.BLACK);
+            canvas.translate(getShiftX(minuteOfDay), getShiftY(minuteOfDay));
+        }
+        layers.draw(canvas);
+        canvas.drawText(text.getHourString(), mHourX[minuteOfDay], mY, mHourPaint);
+        // In ambient mode always draw the colon.
+        canvas.drawText(COLON_STRING, mColonX[minuteOfDay], mY, mHourPaint);
+        canvas.drawText(text.getMinuteString(), mMinuteX[minuteOfDay], mY, mMinutePaint);
+        canvas.restoreToCount(saveCount);
+    }
+}
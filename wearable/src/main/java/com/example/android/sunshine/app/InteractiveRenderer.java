@@ -0,0 +1,53 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Draws the watch face in interactive mode, where it is redrawn twice a second.
+ * <p/>
+ * A frame copies the cached static layers and draws the time at the positions worked out by
+ * {@link WatchFaceText#layoutTime}, so it allocates nothing in steady state.
+ *
+ * @author Gennady Denisov
+ */
+final class InteractiveRenderer {
+    private static final String COLON_STRING = ":";
+
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+
+    /**
+     * @param hourPaint   paint of the hours and the colon.
+     * @param minutePaint paint of the minutes.
+     */
+    InteractiveRenderer(Paint hourPaint, Paint minutePaint) {
+        mHourPaint = hourPaint;
+        mMinutePaint = minutePaint;
+    }
+
+    /**
+     * @return whether the colon is shown at the given time: for the first half of each second,
+     * so it blinks on when the time updates.
+     */
+    static boolean isColonShown(long now) {
+        return (now % 1000) < 500;
+    }
+
+    /**
+     * Draws the interactive face.
+     *
+     * @param layers the interactive static layers, already rendered.
+     * @param text   the time text, already laid out for the current time.
+     * @param y      baseline of the time.
+     * @param now    current time.
+     */
+    void draw(Canvas canvas, LayerCache layers, WatchFaceText text, float y, long now) {
+        layers.draw(canvas);
+        canvas.drawText(text.getHourString(), text.getHourX(), y, mHourPaint);
+        if (isColonShown(now)) {
+            canvas.drawText(COLON_STRING, text.getColonX(), y, mHourPaint);
+        }
+        canvas.drawText(text.getMinuteString(), text.getMinuteX(), y, mMinutePaint);
+    }
+}
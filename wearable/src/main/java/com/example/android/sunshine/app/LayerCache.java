@@ -0,0 +1,72 @@
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+/**
+ * Offscreen bitmap with the static layers of the watch face: background, date, divider and
+ * weather row. They change a few times a day at most, so each frame only copies the bitmap and
+ * draws the time on top of it.
+ * <p/>
+ * The layers are rendered again only when one of their inputs changed: the date string, the
+ * weather, the layout (surface size and insets) or whether a peek card covers the temperatures.
+ * Interactive and ambient mode each keep their own cache, so toggling between them does not
+ * render anything either.
+ *
+ * @author Gennady Denisov
+ */
+final class LayerCache {
+    private final Canvas mCanvas = new Canvas();
+    private Bitmap mBitmap;
+
+    private int mDateVersion = -1;
+    private int mWeatherVersion = -1;
+    private int mLayoutVersion = -1;
+    private boolean mPeekCardShown;
+
+    /**
+     * Checks the inputs of the layers against the ones they were last rendered with.
+     *
+     * @return the cleared canvas to render the layers into if the inputs changed, or null if
+     * the cached bitmap is still current.
+     */
+    Canvas beginRender(int width, int height, int dateVersion, int weatherVersion,
+                       int layoutVersion, boolean peekCardShown) {
+        boolean resized = mBitmap == null
+                || mBitmap.getWidth() != width || mBitmap.getHeight() != height;
+        if (!resized && mDateVersion == dateVersion && mWeatherVersion == weatherVersion
+                && mLayoutVersion == layoutVersion && mPeekCardShown == peekCardShown) {
+            return null;
+        }
+        if (resized) {
+            release();
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCanvas.setBitmap(mBitmap);
+        } else {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+        }
+        mDateVersion = dateVersion;
+        mWeatherVersion = weatherVersion;
+        mLayoutVersion = layoutVersion;
+        mPeekCardShown = peekCardShown;
+        return mCanvas;
+    }
+
+    void draw(Canvas canvas) {
+        if (mBitmap != null) {
+            canvas.drawBitmap(mBitmap, 0, 0, null);
+        }
+    }
+
+    /**
+     * Drops the bitmap, the next {@link #beginRender} allocates and renders it again.
+     */
+    void release() {
+        if (mBitmap != null) {
+            mCanvas.setBitmap(null);
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.sunshine.app;
+
+import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers which nodes can answer weather requests, so a request does not have to look up the
+ * capability first.
+ * <p/>
+ * The cache is kept current by capability change events; it also expires after
+ * {@link #CACHE_TTL_MS} in case one was missed. Routes list the nearby nodes first: a request
+ * goes to the first node and only falls back to the next if sending fails.
+ *
+ * @author Gennady Denisov
+ */
+final class NodeRouter {
+    static final long CACHE_TTL_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final NodeRouter sInstance = new NodeRouter();
+
+    private List<String> mRoute;
+    private long mUpdatedAt;
+
+    static NodeRouter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Replaces the cached nodes with the ones of the capability.
+     */
+    void update(CapabilityInfo capabilityInfo, long now) {
+        List<String> nearby = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (Node node : capabilityInfo.getNodes()) {
+            (node.isNearby() ? nearby : others).add(node.getId());
+        }
+        setNodes(nearby, others, now);
+    }
+
+    /**
+     * Replaces the cached nodes.
+     *
+     * @param nearby ids of the nodes directly connected to this one.
+     * @param others ids of the nodes only reachable through others, e.g. the cloud.
+     */
+    synchronized void setNodes(Collection<String> nearby, Collection<String> others, long now) {
+        List<String> route = new ArrayList<>(nearby.size() + others.size());
+        route.addAll(nearby);
+        route.addAll(others);
+        mRoute = Collections.unmodifiableList(route);
+        mUpdatedAt = now;
+    }
+
+    /**
+     * @return ids of the nodes to try in order, empty if none can answer, or null if the cache
+     * is empty or expired and the capability has to be looked up.
+     */
+    synchronized List<String> getRoute(long now) {
+        if (mRoute == null || now - mUpdatedAt >= CACHE_TTL_MS || now < mUpdatedAt) {
+            return null;
+        }
+        return mRoute;
+    }
+
+    synchronized void invalidate() {
+        mRoute = null;
+    }
+}
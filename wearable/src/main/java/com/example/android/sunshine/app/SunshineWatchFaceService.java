@@ -22,28 +22,31 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
-import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.Typeface;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Message;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
-import android.text.format.DateFormat;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
+import com.geaden.android.shunshine.shared.Utils;
+import com.geaden.android.shunshine.shared.WeatherPayload;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+
+import java.io.File;
 import java.lang.ref.WeakReference;
-import java.util.Calendar;
-import java.util.Date;
+import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -78,14 +81,20 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private static final int MSG_UPDATE_TIME = 0;
 
     public static final String ACTION_REQUEST_WEATHER = "com.geaden.android.sunshine.wearable.ACTION_REQUEST_WEATHER";
-    public static final String ACTION_WEATHER_RECEIVED = "com.geaden.android.sunshine.wearable.ACTION_WEATHER_RECEIVED";
-
-    public static final String EXTRA_HI = "extra_hi";
-    public static final String EXTRA_LO = "extra_lo";
-    public static final String EXTRA_ART = "extra_art";
 
     private static final String TEMPERATURE_PLACEHOLDER = "-";
 
+    // Wall and CPU time of a frame per mode, the CPU time is what costs battery.
+    private static final Histogram sInteractiveDrawLatency =
+            MetricsRegistry.histogram("watchface.draw_us.interactive");
+    private static final Histogram sAmbientDrawLatency =
+            MetricsRegistry.histogram("watchface.draw_us.ambient");
+    private static final Histogram sInteractiveDrawCpu =
+            MetricsRegistry.histogram("watchface.draw_cpu_us.interactive");
+    private static final Histogram sAmbientDrawCpu =
+            MetricsRegistry.histogram("watchface.draw_cpu_us.ambient");
+    private static final Counter sLayerRenders = MetricsRegistry.counter("watchface.layer_renders");
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -112,13 +121,13 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
     }
 
     private class Engine extends CanvasWatchFaceService.Engine {
-        final CharSequence DATE_FORMAT = "EEE, MMM d yyyy";
+        static final String DATE_FORMAT = "EEE, MMM d yyyy";
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
         static final String COLON_STRING = ":";
 
         boolean mRegisteredTimeZoneReceiver = false;
-        boolean mRegisteredWeatherChangeReceiver = false;
+        boolean mRegisteredWeatherListener = false;
 
         Paint mBackgroundPaint;
         Paint mHourPaint;
@@ -130,11 +139,21 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         Paint mLoPaint;
         float mColonWidth;
         float mPadding;
+        // Interactive colors of the paints that turn white in low-bit ambient mode.
+        int mDateColor;
+        int mLoColor;
+
+        InteractiveRenderer mInteractiveRenderer;
+        AmbientRenderer mAmbientRenderer;
 
-        // Actual weather data
+        // Forecast of the coming days and the day shown from it.
+        WeatherState mWeather;
+        long mForecastDay = Long.MIN_VALUE;
+
+        // Actual weather data, the art comes scaled from the WeatherState.
         double mLoTemp;
         double mHiTemp;
-        Bitmap mBitmap;
+        Bitmap mArt;
 
         boolean mAmbient;
         boolean mBurnInProtection;
@@ -148,7 +167,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mText.setTimeZone(TimeZone.getDefault());
+                mText.setLocale(Locale.getDefault());
                 invalidate();
             }
         };
@@ -156,20 +176,14 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         /**
          * Handles weather changes.
          */
-        final BroadcastReceiver mWeatherChangeReceiver = new BroadcastReceiver() {
+        final WeatherStateHolder.Listener mWeatherListener = new WeatherStateHolder.Listener() {
             @Override
-            public void onReceive(Context context, Intent intent) {
-                Log.d("mWeatherChangeReceiver", intent.getAction());
-                if (intent.getAction().equals(ACTION_WEATHER_RECEIVED)) {
-                    Log.d("mWeatherChangeReceiver", "Weather Changed");
-                    mHiTemp = intent.getDoubleExtra(EXTRA_HI, 0.0);
-                    mLoTemp = intent.getDoubleExtra(EXTRA_LO, 0.0);
-                    byte[] bytes = intent.getByteArrayExtra(EXTRA_ART);
-                    mBitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-                    // Display results.
-                    mWeatherReceived = true;
-                    invalidate();
-                }
+            public void onWeatherStateChanged(WeatherState state) {
+                Log.d("mWeatherListener", "Weather Changed");
+                // Display results, the next frame picks the day to show.
+                mWeather = state;
+                mForecastDay = Long.MIN_VALUE;
+                invalidate();
             }
         };
 
@@ -181,13 +195,25 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
-        Calendar mCalendar;
-        Date mDate;
+        WatchFaceText mText;
+
+        // Text widths, measured when the text or its size changes rather than every frame.
+        final float[] mHourWidths = new float[24];
+        final float[] mMinuteWidths = new float[60];
+        String mHiTempString = TEMPERATURE_PLACEHOLDER;
+        String mLoTempString = TEMPERATURE_PLACEHOLDER;
+        float mHiTempWidth;
+        float mLoTempWidth;
+
+        // Static layers of the interactive and the ambient face, with the versions of their
+        // inputs which are not kept elsewhere.
+        final LayerCache mInteractiveLayers = new LayerCache();
+        final LayerCache mAmbientLayers = new LayerCache();
+        int mWeatherVersion;
+        int mLayoutVersion;
 
-        boolean mShouldDrawColons;
         float mLineHeight;
         float mDecorLineLength;
-        float mArtSize;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
@@ -208,7 +234,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     R.color.background));
 
             mLineHeight = resources.getDimension(R.dimen.digital_line_height);
-            mArtSize = resources.getDimension(R.dimen.digital_art_size);
 
             // Hours text paint.
             mHourPaint = createTextPaint(ContextCompat.getColor(SunshineWatchFaceService.this,
@@ -223,8 +248,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     R.color.digital_text));
 
             // Date text paint.
-            mDatePaint = createTextPaint(ContextCompat.getColor(SunshineWatchFaceService.this,
-                    R.color.digital_date), CONDENSED_TYPEFACE);
+            mDateColor = ContextCompat.getColor(SunshineWatchFaceService.this,
+                    R.color.digital_date);
+            mDatePaint = createTextPaint(mDateColor, CONDENSED_TYPEFACE);
 
             // Line paint.
             mLinePaint = createTextPaint(ContextCompat.getColor(SunshineWatchFaceService.this,
@@ -235,13 +261,19 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     R.color.digital_text), BOLD_TYPEFACE);
 
             // Lo text paint.
-            mLoPaint = createTextPaint(ContextCompat.getColor(SunshineWatchFaceService.this,
-                    R.color.digital_lo_temp));
+            mLoColor = ContextCompat.getColor(SunshineWatchFaceService.this,
+                    R.color.digital_lo_temp);
+            mLoPaint = createTextPaint(mLoColor);
+
+            mInteractiveRenderer = new InteractiveRenderer(mHourPaint, mMinutePaint);
+            mAmbientRenderer = new AmbientRenderer(mHourPaint, mMinutePaint,
+                    resources.getDimension(R.dimen.burn_in_shift));
 
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
+            mText = new WatchFaceText(DATE_FORMAT, Locale.getDefault(), TimeZone.getDefault());
 
-            // Request weather data from handheld device.
+            mWeather = WeatherStateHolder.get();
+
+            // Request weather data, answered from the store while it is fresh.
             Intent intent = new Intent(SunshineWatchFaceService.this, WeatherRequestService.class);
             intent.setAction(ACTION_REQUEST_WEATHER);
             startService(intent);
@@ -250,6 +282,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            unregisterReceiver();
+            mInteractiveLayers.release();
+            mAmbientLayers.release();
             super.onDestroy();
         }
 
@@ -285,11 +320,14 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             if (visible) {
                 registerReceiver();
-                // Update time zone in case it changed while we weren't visible.
                 // Update time zone and date formats, in case they changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mText.setTimeZone(TimeZone.getDefault());
+                mText.setLocale(Locale.getDefault());
             } else {
                 unregisterReceiver();
+                // Nobody is looking, a good moment to persist the draw timings.
+                MetricsRegistry.writeSnapshotAsync(new File(getFilesDir(),
+                        MetricsRegistry.SNAPSHOT_FILE_NAME));
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -301,13 +339,18 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             if (!mRegisteredTimeZoneReceiver) {
                 mRegisteredTimeZoneReceiver = true;
                 IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+                filter.addAction(Intent.ACTION_LOCALE_CHANGED);
                 SunshineWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
             }
-            if (!mRegisteredWeatherChangeReceiver) {
-                mRegisteredWeatherChangeReceiver = true;
-                IntentFilter weatherFilter = new IntentFilter(ACTION_WEATHER_RECEIVED);
-                LocalBroadcastManager.getInstance(SunshineWatchFaceService.this)
-                        .registerReceiver(mWeatherChangeReceiver, weatherFilter);
+            if (!mRegisteredWeatherListener) {
+                mRegisteredWeatherListener = true;
+                WeatherStateHolder.addListener(mWeatherListener);
+                // Catch up with a forecast received while we weren't visible.
+                WeatherState state = WeatherStateHolder.get();
+                if (state != mWeather) {
+                    mWeather = state;
+                    mForecastDay = Long.MIN_VALUE;
+                }
             }
         }
 
@@ -316,10 +359,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 mRegisteredTimeZoneReceiver = false;
                 SunshineWatchFaceService.this.unregisterReceiver(mTimeZoneReceiver);
             }
-            if (mRegisteredWeatherChangeReceiver) {
-                mRegisteredWeatherChangeReceiver = false;
-                LocalBroadcastManager.getInstance(SunshineWatchFaceService.this)
-                        .unregisterReceiver(mWeatherChangeReceiver);
+            if (mRegisteredWeatherListener) {
+                mRegisteredWeatherListener = false;
+                WeatherStateHolder.removeListener(mWeatherListener);
             }
         }
 
@@ -347,6 +389,56 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mColonPaint.setTextSize(timeTextSize);
 
             mColonWidth = mColonPaint.measureText(COLON_STRING);
+            for (int i = 0; i < mHourWidths.length; i++) {
+                mHourWidths[i] = mHourPaint.measureText(WatchFaceText.TWO_DIGITS[i]);
+            }
+            for (int i = 0; i < mMinuteWidths.length; i++) {
+                mMinuteWidths[i] = mMinutePaint.measureText(WatchFaceText.TWO_DIGITS[i]);
+            }
+            mLayoutVersion++;
+            updateTemperatureText();
+        }
+
+        /**
+         * Formats and measures the temperatures, once per weather update.
+         */
+        private void updateTemperatureText() {
+            // If no data received just show placeholders for the temperature.
+            if (mWeatherReceived) {
+                mHiTempString = getString(R.string.format_temperature, mHiTemp);
+                mLoTempString = getString(R.string.format_temperature, mLoTemp);
+            } else {
+                mHiTempString = TEMPERATURE_PLACEHOLDER;
+                mLoTempString = TEMPERATURE_PLACEHOLDER;
+            }
+            mHiTempWidth = mHiPaint.measureText(mHiTempString);
+            mLoTempWidth = mLoPaint.measureText(mLoTempString);
+        }
+
+        /**
+         * Shows the entry of the current day from the forecast, or placeholders if the forecast
+         * does not cover it. Called from onDraw when the forecast or the day changed.
+         */
+        private void showForecastDay() {
+            mForecastDay = mText.getDay();
+            WeatherPayload forecast = mWeather == null ? null : mWeather.getPayload();
+            int index = forecast == null ? -1 : forecast.indexOfDay(mForecastDay);
+            mWeatherReceived = index != -1;
+            if (mWeatherReceived) {
+                mHiTemp = forecast.getHigh(index);
+                mLoTemp = forecast.getLow(index);
+                // Temperature is in Celsius by default. If unit changed, do transformation.
+                if (!forecast.isMetric()) {
+                    mHiTemp = Utils.convertToImperial(mHiTemp);
+                    mLoTemp = Utils.convertToImperial(mLoTemp);
+                }
+                // Art comes with the wearable, decoded and scaled by whoever got the forecast.
+                mArt = mWeather.getArt(forecast.getWeatherId(index));
+            } else {
+                mArt = null;
+            }
+            mWeatherVersion++;
+            updateTemperatureText();
         }
 
         @Override
@@ -355,6 +447,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION,
                     false);
+            // The ambient layers depend on both.
+            mLayoutVersion++;
         }
 
         @Override
@@ -379,6 +473,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     }) {
                         paint.setAntiAlias(!inAmbientMode);
                     }
+                    // Shades of grey would be dithered away with few bits per color.
+                    mDatePaint.setColor(inAmbientMode ? Color.WHITE : mDateColor);
+                    mLoPaint.setColor(inAmbientMode ? Color.WHITE : mLoColor);
                 }
                 invalidate();
             }
@@ -422,55 +519,65 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
+            long drawStart = System.nanoTime();
+            long cpuStart = Debug.threadCpuTimeNanos();
+            boolean ambient = isInAmbientMode();
 
             long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-            // Show colons for the first half of each second so the colons blink on when the time
-            // updates.
-            mShouldDrawColons = (System.currentTimeMillis() % 1000) < 500;
-
-            String hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-
-            // Beginning of the time line.
-            float x = getStartOfLine(bounds, (mHourPaint.measureText(hourString) + mColonWidth +
-                    mMinutePaint.measureText(minuteString)));
-
-            float y = mYOffset;
-
-            canvas.drawText(hourString, x, y, mHourPaint);
-            x += mHourPaint.measureText(hourString);
+            mText.layoutTime(now, bounds.centerX(), mHourWidths, mColonWidth, mMinuteWidths);
+            if (mForecastDay != mText.getDay()) {
+                // Midnight, move on to the next day of the forecast without asking the handheld.
+                showForecastDay();
+            }
 
-            // In ambient mode always draw the first colon. Otherwise, draw the
-            // first colon for the first half of each second.
-            if (isInAmbientMode() || mShouldDrawColons) {
-                canvas.drawText(COLON_STRING, x, y, mHourPaint);
+            // Background, date, divider and weather row come from the cache of the mode.
+            LayerCache layers = ambient ? mAmbientLayers : mInteractiveLayers;
+            boolean peekCardShown = !getPeekCardPosition().isEmpty();
+            Canvas layerCanvas = layers.beginRender(bounds.width(), bounds.height(),
+                    mText.getDateVersion(), mWeatherVersion, mLayoutVersion, peekCardShown);
+            if (layerCanvas != null) {
+                drawStaticLayers(layerCanvas, bounds, ambient, peekCardShown);
+                sLayerRenders.inc();
             }
 
-            x += mColonWidth;
+            if (ambient) {
+                // Once a minute: copy the layers and draw the time at precomputed positions.
+                mAmbientRenderer.layout(bounds.width(), mLayoutVersion, mYOffset, mHourWidths,
+                        mColonWidth, mMinuteWidths);
+                mAmbientRenderer.draw(canvas, layers, mText, mBurnInProtection);
+                sAmbientDrawLatency.recordSince(drawStart);
+                sAmbientDrawCpu.record((Debug.threadCpuTimeNanos() - cpuStart) / 1000);
+                return;
+            }
+            mInteractiveRenderer.draw(canvas, layers, mText, mYOffset, now);
+            sInteractiveDrawLatency.recordSince(drawStart);
+            sInteractiveDrawCpu.record((Debug.threadCpuTimeNanos() - cpuStart) / 1000);
+        }
 
-            // Draw the minutes.
-            canvas.drawText(minuteString, x, y, mMinutePaint);
+        /**
+         * Draws everything but the time, into the layer cache.
+         */
+        private void drawStaticLayers(Canvas canvas, Rect bounds, boolean ambient,
+                                      boolean peekCardShown) {
+            // Draw the background.
+            if (ambient) {
+                canvas.drawColor(Color.BLACK);
+            } else {
+                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+            }
 
             // Date
-            String dateString = DateFormat.format(DATE_FORMAT, mDate).toString().toUpperCase();
+            String dateString = mText.getDateString();
 
             // Beginning of the date.
-            x = getStartOfLine(bounds, mDatePaint.measureText(dateString));
+            float x = getStartOfLine(bounds, mDatePaint.measureText(dateString));
 
-            y += mLineHeight;
+            float y = mYOffset + mLineHeight;
 
             canvas.drawText(dateString, x, y, mDatePaint);
 
             // Draw a line
-            if (!isInAmbientMode()) {
+            if (!ambient) {
                 x = getStartOfLine(bounds, mDecorLineLength);
                 y += 0.75f * mLineHeight;
                 canvas.drawLine(x, y, x + mDecorLineLength, y, mLinePaint);
@@ -481,40 +588,23 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             y += 0.25f * mLineHeight;
 
-            // If no data received just show placeholders for the temperature.
-            String hiTempString = mWeatherReceived ? getString(R.string.format_temperature, mHiTemp) :
-                    TEMPERATURE_PLACEHOLDER;
-            String loTempString = mWeatherReceived ? getString(R.string.format_temperature, mLoTemp) :
-                    TEMPERATURE_PLACEHOLDER;
-
             // Only draw weather art if not in ambient mode and we actually have the data.
-            if (!isInAmbientMode() && null != mBitmap) {
-                tempX = getStartOfLine(bounds, mArtSize + mPadding + mHiPaint.measureText(hiTempString)
-                        + mPadding + mLoPaint.measureText(loTempString));
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-                int width = mBitmap.getWidth();
-                int height = mBitmap.getHeight();
-                float scale = mArtSize / width;
-                Matrix matrix = new Matrix();
-                // resize the bit map
-                matrix.postScale(scale, scale);
-                // recreate the new Bitmap
-                Bitmap resizedArt = Bitmap.createBitmap(mBitmap, 0, 0, width, height, matrix, false);
-                canvas.drawBitmap(resizedArt, tempX, y, mLinePaint);
-                tempX += resizedArt.getWidth() + mPadding;
+            if (!ambient && null != mArt) {
+                tempX = getStartOfLine(bounds, mArt.getWidth() + mPadding + mHiTempWidth
+                        + mPadding + mLoTempWidth);
+                canvas.drawBitmap(mArt, tempX, y, mLinePaint);
+                tempX += mArt.getWidth() + mPadding;
             } else {
-                tempX = getStartOfLine(bounds, mHiPaint.measureText(hiTempString) + mPadding
-                        + mLoPaint.measureText(hiTempString));
+                tempX = getStartOfLine(bounds, mHiTempWidth + mPadding + mLoTempWidth);
             }
 
             // Only render the temperature if there is no peek card, so they do not bleed
             // into each other in ambient mode.
-            if (getPeekCardPosition().isEmpty()) {
+            if (!peekCardShown) {
                 y += 1.15f * mLineHeight;
-                canvas.drawText(hiTempString, tempX, y, mHiPaint);
-                tempX += mHiPaint.measureText(hiTempString) + mPadding;
-                canvas.drawText(loTempString, tempX, y, mLoPaint);
+                canvas.drawText(mHiTempString, tempX, y, mHiPaint);
+                tempX += mHiTempWidth + mPadding;
+                canvas.drawText(mLoTempString, tempX, y, mLoPaint);
             }
         }
 
@@ -549,15 +639,5 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
-
-        /**
-         * Heler method to format two digit number.
-         *
-         * @param hour the hour.
-         * @return formatted hour.
-         */
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
     }
 }
@@ -1,23 +1,24 @@
 package com.example.android.sunshine.app;
 
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.support.v4.content.LocalBroadcastManager;
+import android.content.Context;
 import android.util.Log;
 
-import com.geaden.android.shunshine.shared.AbstractGoogleApiClientWrapper;
 import com.geaden.android.shunshine.shared.Constants;
-import com.geaden.android.shunshine.shared.Utils;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.wearable.Asset;
+import com.geaden.android.shunshine.shared.WeatherPayload;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
+import com.google.android.gms.wearable.CapabilityInfo;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.WearableListenerService;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -30,62 +31,87 @@ public class SunshineWeatherListenerService extends WearableListenerService {
 
     private static final String TAG = "SunshineWeatherService";
 
+    // From receiving the payload to handing it to the watch face.
+    private static final Histogram sApplyLatency = MetricsRegistry.histogram("wear.apply_us");
+    // From the handheld sending the payload to handing it to the watch face, debug builds only.
+    private static final Histogram sUpdateLatency = MetricsRegistry.histogram("wear.update_us");
+    // Weather events superseded by a newer one of the same buffer.
+    private static final Counter sCollapsedEvents = MetricsRegistry.counter("wear.events.collapsed");
+
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
         super.onMessageReceived(messageEvent);
         Log.d(TAG, "Message received " + Arrays.toString(messageEvent.getData()));
     }
 
+    @Override
+    public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+        super.onCapabilityChanged(capabilityInfo);
+        if (getString(R.string.sunshine_weather_capability).equals(capabilityInfo.getName())) {
+            Log.d(TAG, "Weather capability changed, " + capabilityInfo.getNodes().size()
+                    + " nodes");
+            NodeRouter.getInstance().update(capabilityInfo, System.currentTimeMillis());
+        }
+    }
+
     @Override
     public void onDataChanged(DataEventBuffer dataEvents) {
         super.onDataChanged(dataEvents);
+        long start = System.nanoTime();
+        WeatherEventBatcher batcher = new WeatherEventBatcher();
         for (final DataEvent event : dataEvents) {
             if (event.getType() == DataEvent.TYPE_CHANGED &&
                     event.getDataItem().getUri().getPath().equals(Constants.WEATHER_PATH)) {
-                Log.d(TAG, "Weather data received!");
-
-                new AbstractGoogleApiClientWrapper(this) {
-                    @Override
-                    public void executeAction(GoogleApiClient googleApiClient) {
-                        DataMapItem dataMapItem = DataMapItem.fromDataItem(event.getDataItem());
-                        Asset artAsset = dataMapItem.getDataMap().getAsset(Constants.EXTRA_ART);
-                        double hi = dataMapItem.getDataMap().getDouble(Constants.EXTRA_HIGH_TEMP);
-                        double lo = dataMapItem.getDataMap().getDouble(Constants.EXTRA_LOW_TEMP);
-                        boolean isMetric = dataMapItem.getDataMap().getBoolean(Constants.EXTRA_UNITS_METRIC);
-                        Bitmap bitmap = Utils.loadBitmapFromAsset(googleApiClient, artAsset);
-                        updateWatchFaceWeatherInfo(hi, lo, isMetric, bitmap);
-                    }
-                }.wrap();
+                DataMap dataMap = DataMapItem.fromDataItem(event.getDataItem()).getDataMap();
+                batcher.add(dataMap.getByteArray(Constants.EXTRA_PAYLOAD),
+                        dataMap.getLong(Constants.EXTRA_TIME, WeatherEventBatcher.NOT_STAMPED));
             }
         }
+        // Everything needed is copied out, no reason to hold on to the buffer while writing
+        // the store.
+        dataEvents.release();
+        int size = batcher.size();
+        if (size == 0) {
+            return;
+        }
+        Log.d(TAG, "Weather data received, " + size + " events");
+        try {
+            batcher.flush(new WeatherEventBatcher.Target() {
+                @Override
+                public void onWeather(byte[] bytes, WeatherPayload payload) {
+                    updateWatchFaceWeatherInfo(SunshineWeatherListenerService.this, payload);
+                    try {
+                        new WeatherStore(getFilesDir()).save(bytes);
+                    } catch (IOException e) {
+                        // The watch face still got the forecast, it is just asked for again later
+                        Log.e(TAG, "Unable to store weather payload", e);
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // Most likely sent by a different version of the handheld app
+            Log.w(TAG, "Unable to read weather payload", e);
+            return;
+        }
+        sApplyLatency.recordSince(start);
+        sCollapsedEvents.add(size - 1);
+        long sentAt = batcher.getSentAt();
+        if (sentAt != WeatherEventBatcher.NOT_STAMPED) {
+            // Debug builds stamp the send time, both clocks follow the network time.
+            sUpdateLatency.record(TimeUnit.MILLISECONDS.toMicros(
+                    System.currentTimeMillis() - sentAt));
+        }
     }
 
     /**
-     * Updates weather info on the watch face.
+     * Hands the forecast to the watch face, which picks the day to show from it. Decodes the
+     * art, so should not be called from the main thread.
      *
-     * @param hi       max temperature.
-     * @param lo       min temperature.
-     * @param isMetric indicates whether units in Celsius of in Fahrenheits.
-     * @param bitmap   art based on weather.
+     * @param context the context.
+     * @param payload the forecast as sent by the handheld.
      */
-    private void updateWatchFaceWeatherInfo(double hi, double lo, boolean isMetric, Bitmap bitmap) {
+    static void updateWatchFaceWeatherInfo(Context context, WeatherPayload payload) {
         Log.d(TAG, "Updating wearable weather info");
-        Intent intent = new Intent(SunshineWatchFaceService.ACTION_WEATHER_RECEIVED);
-
-        // Temperature is in Celsius by default. If unit changed, do transformation.
-        if (!isMetric) {
-            hi = Utils.convertToImperial(hi);
-            lo = Utils.convertToImperial(lo);
-        }
-
-        intent.putExtra(SunshineWatchFaceService.EXTRA_HI, hi);
-        intent.putExtra(SunshineWatchFaceService.EXTRA_LO, lo);
-        ByteArrayOutputStream bs = new ByteArrayOutputStream();
-        if (null != bitmap) {
-            bitmap.compress(Bitmap.CompressFormat.PNG, 50, bs);
-        }
-        intent.putExtra(SunshineWatchFaceService.EXTRA_ART, bs.toByteArray());
-        Log.d(TAG, "Sending broadcast");
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+        WeatherStateHolder.set(WeatherState.create(context.getResources(), payload));
     }
 }
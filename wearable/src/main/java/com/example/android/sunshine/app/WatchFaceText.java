@@ -0,0 +1,164 @@
+package com.example.android.sunshine.app;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Time and date text of the watch face, kept so that a frame allocates nothing in steady state.
+ * <p/>
+ * Hours and minutes come from a table of two digit strings, and the date string is only
+ * formatted again when the day changes. {@link #setTime(long)} works out the fields from the
+ * time zone offset instead of going through a {@link java.util.Calendar}, and
+ * {@link #layoutTime} places the time line from widths measured up front.
+ *
+ * @author Gennady Denisov
+ */
+final class WatchFaceText {
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    private static final long DAY_IN_MILLIS = 24 * 60 * MINUTE_IN_MILLIS;
+
+    /**
+     * "00" to "59", enough for both hours and minutes.
+     */
+    static final String[] TWO_DIGITS = new String[60];
+
+    static {
+        for (int i = 0; i < TWO_DIGITS.length; i++) {
+            TWO_DIGITS[i] = (i < 10 ? "0" : "") + i;
+        }
+    }
+
+    private final String mDatePattern;
+    private Locale mLocale;
+    private SimpleDateFormat mDateFormat;
+    private final Date mDate = new Date();
+    private TimeZone mTimeZone;
+
+    private long mDay = Long.MIN_VALUE;
+    private int mHour;
+    private int mMinute;
+    private String mDateString;
+    private int mDateVersion;
+    private float mHourX;
+    private float mColonX;
+    private float mMinuteX;
+
+    WatchFaceText(String datePattern, Locale locale, TimeZone timeZone) {
+        mDatePattern = datePattern;
+        mLocale = locale;
+        mDateFormat = new SimpleDateFormat(datePattern, locale);
+        setTimeZone(timeZone);
+    }
+
+    void setLocale(Locale locale) {
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mDateFormat = new SimpleDateFormat(mDatePattern, locale);
+        mDateFormat.setTimeZone(mTimeZone);
+        // Names of the day and month are different in the new locale
+        mDay = Long.MIN_VALUE;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mDateFormat.setTimeZone(timeZone);
+        // The date string may be different in the new zone
+        mDay = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return the day of the given time in days since the epoch, in the given time zone.
+     */
+    static long getLocalDay(long now, TimeZone timeZone) {
+        long local = now + timeZone.getOffset(now);
+        long day = local / DAY_IN_MILLIS;
+        if (local < 0 && local % DAY_IN_MILLIS != 0) {
+            day--;
+        }
+        return day;
+    }
+
+    void setTime(long now) {
+        long local = now + mTimeZone.getOffset(now);
+        long day = getLocalDay(now, mTimeZone);
+        int minuteOfDay = (int) ((local - day * DAY_IN_MILLIS) / MINUTE_IN_MILLIS);
+        mHour = minuteOfDay / 60;
+        mMinute = minuteOfDay % 60;
+        if (day != mDay) {
+            mDay = day;
+            mDate.setTime(now);
+            mDateString = mDateFormat.format(mDate).toUpperCase(mLocale);
+            mDateVersion++;
+        }
+    }
+
+    /**
+     * Sets the time and works out where the hours, colon and minutes of the time line start,
+     * centered horizontally.
+     *
+     * @param now          current time.
+     * @param centerX      center of the time line.
+     * @param hourWidths   width of each hour string.
+     * @param colonWidth   width of the colon.
+     * @param minuteWidths width of each minute string.
+     */
+    void layoutTime(long now, float centerX, float[] hourWidths, float colonWidth,
+                    float[] minuteWidths) {
+        setTime(now);
+        float hourWidth = hourWidths[mHour];
+        mHourX = centerX - (hourWidth + colonWidth + minuteWidths[mMinute]) / 2;
+        mColonX = mHourX + hourWidth;
+        mMinuteX = mColonX + colonWidth;
+    }
+
+    float getHourX() {
+        return mHourX;
+    }
+
+    float getColonX() {
+        return mColonX;
+    }
+
+    float getMinuteX() {
+        return mMinuteX;
+    }
+
+    /**
+     * @return the current day in days since the epoch, in the local time zone.
+     */
+    long getDay() {
+        return mDay;
+    }
+
+    int getHour() {
+        return mHour;
+    }
+
+    int getMinute() {
+        return mMinute;
+    }
+
+    String getHourString() {
+        return TWO_DIGITS[mHour];
+    }
+
+    String getMinuteString() {
+        return TWO_DIGITS[mMinute];
+    }
+
+    String getDateString() {
+        return mDateString;
+    }
+
+    /**
+     * @return a number that changes whenever the date string does, so measurements of it can
+     * be kept as well.
+     */
+    int getDateVersion() {
+        return mDateVersion;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.sunshine.app;
+
+import com.geaden.android.shunshine.shared.WeatherPayload;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collapses the weather events of one data event buffer to the newest one. After a reconnect
+ * the data layer delivers every queued update at once; each of them replaces the previous
+ * forecast, so only the last one is decoded, stored and shown. Should the newest payload be
+ * unreadable, the newest readable one before it is shown instead.
+ *
+ * @author Gennady Denisov
+ */
+final class WeatherEventBatcher {
+    /**
+     * Send time of an event the handheld did not stamp.
+     */
+    static final long NOT_STAMPED = -1;
+
+    /**
+     * Receives the forecast a batch collapsed to.
+     */
+    interface Target {
+        /**
+         * @param bytes   the payload as sent by the handheld.
+         * @param payload the decoded payload.
+         */
+        void onWeather(byte[] bytes, WeatherPayload payload);
+    }
+
+    private final List<byte[]> mPayloads = new ArrayList<>();
+    private final List<Long> mSentAts = new ArrayList<>();
+    private long mFlushedSentAt = NOT_STAMPED;
+
+    /**
+     * Adds the payload of a weather event, in the order of the buffer.
+     *
+     * @param sentAt when the handheld sent it, or {@link #NOT_STAMPED}.
+     */
+    void add(byte[] payload, long sentAt) {
+        mPayloads.add(payload);
+        mSentAts.add(sentAt);
+    }
+
+    /**
+     * @return the number of events added since the last flush.
+     */
+    int size() {
+        return mPayloads.size();
+    }
+
+    /**
+     * @return when the event handed to the target by the last flush was sent, or
+     * {@link #NOT_STAMPED}.
+     */
+    long getSentAt() {
+        return mFlushedSentAt;
+    }
+
+    /**
+     * Decodes the newest readable event and hands it to the target, then starts a new batch.
+     *
+     * @return the payload handed to the target, or null if the batch was empty.
+     * @throws IOException if none of the payloads can be read, nothing is handed over then.
+     */
+    WeatherPayload flush(Target target) throws IOException {
+        mFlushedSentAt = NOT_STAMPED;
+        IOException newestError = null;
+        try {
+            for (int i = mPayloads.size() - 1; i >= 0; i--) {
+                byte[] bytes = mPayloads.get(i);
+                WeatherPayload payload;
+                try {
+                    payload = WeatherPayload.fromBytes(bytes);
+                } catch (IOException e) {
+                    if (newestError == null) {
+                        newestError = e;
+                    }
+                    continue;
+                }
+                mFlushedSentAt = mSentAts.get(i);
+                target.onWeather(bytes, payload);
+                return payload;
+            }
+        } finally {
+            mPayloads.clear();
+            mSentAts.clear();
+        }
+        if (newestError != null) {
+            throw newestError;
+        }
+        return null;
+    }
+}
@@ -2,22 +2,24 @@ package com.example.android.sunshine.app;
 
 import android.app.IntentService;
 import android.content.Intent;
-import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.geaden.android.shunshine.shared.AbstractGoogleApiClientWrapper;
 import com.geaden.android.shunshine.shared.Constants;
+import com.geaden.android.shunshine.shared.WeatherPayload;
+import com.geaden.android.shunshine.shared.WeatherRequest;
+import com.geaden.android.shunshine.shared.metrics.Counter;
+import com.geaden.android.shunshine.shared.metrics.Histogram;
+import com.geaden.android.shunshine.shared.metrics.MetricsRegistry;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.CapabilityApi;
-import com.google.android.gms.wearable.CapabilityInfo;
 import com.google.android.gms.wearable.MessageApi;
-import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.Wearable;
 
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -33,14 +35,66 @@ public class WeatherRequestService extends IntentService {
         super("WeatherUpdateService");
     }
 
-    Set<String> weatherNodeIds;
+    // Requests answered from the store and requests that had to go to the handheld.
+    private static final Counter sLocalAnswers = MetricsRegistry.counter("wear.request.local");
+    private static final Counter sRemoteRequests = MetricsRegistry.counter("wear.request.remote");
+    // Capability lookups the node cache could not spare, and nodes that failed a request.
+    private static final Counter sCapabilityLookups =
+            MetricsRegistry.counter("wear.request.capability_lookups");
+    private static final Counter sSendFailures =
+            MetricsRegistry.counter("wear.request.send_failures");
+    private static final Histogram sRequestLatency = MetricsRegistry.histogram("wear.request_us");
 
     /**
-     * Sets up nodes with weather update capabilities.
+     * @return the stored forecast, or null if there is none or it can not be read.
+     */
+    private WeatherPayload loadStored() {
+        try {
+            return new WeatherStore(getFilesDir()).load();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read stored weather", e);
+            return null;
+        }
+    }
+
+    /**
+     * Hands the stored forecast to the watch face. If it is fresh, the handheld does not have to
+     * be woken up.
+     *
+     * @return true if the request was answered.
+     */
+    private boolean answerLocally(WeatherPayload payload) {
+        if (payload == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean fresh = WeatherStore.isFresh(payload,
+                now, WatchFaceText.getLocalDay(now, TimeZone.getDefault()));
+        if (fresh || WeatherStateHolder.get() == null) {
+            // Even a stale forecast beats placeholders until the handheld answers.
+            SunshineWeatherListenerService.updateWatchFaceWeatherInfo(this, payload);
+        }
+        if (fresh) {
+            Log.d(TAG, "Stored weather is fresh, not asking the handheld.");
+        }
+        return fresh;
+    }
+
+    /**
+     * Gets the nodes with weather update capabilities, from the cache of {@link NodeRouter} if
+     * it is current.
      *
      * @param googleApiClient the {@link GoogleApiClient}
+     * @return ids of the nodes to try in order.
      */
-    private void setupWeatherUpdateNode(GoogleApiClient googleApiClient) {
+    private List<String> getRoute(GoogleApiClient googleApiClient) {
+        NodeRouter router = NodeRouter.getInstance();
+        long now = System.currentTimeMillis();
+        List<String> route = router.getRoute(now);
+        if (route != null) {
+            return route;
+        }
+        sCapabilityLookups.inc();
         CapabilityApi.GetCapabilityResult result =
                 Wearable.CapabilityApi.getCapability(
                         googleApiClient,
@@ -48,68 +102,57 @@ public class WeatherRequestService extends IntentService {
                         CapabilityApi.FILTER_REACHABLE).await(Constants.GET_CAPABILITY_TIMEOUT_S,
                         TimeUnit.SECONDS);
 
-        if (result.getStatus().isSuccess()) {
-            updateNodes(result.getCapability());
-        } else {
+        if (!result.getStatus().isSuccess()) {
             Log.d(TAG, "Failed to get capabilities.");
+            return Collections.emptyList();
         }
+        router.update(result.getCapability(), now);
+        return router.getRoute(now);
     }
 
     /**
-     * Updates information about available nodes.
-     *
-     * @param capabilityInfo information to get nodes with required capabilities.
-     */
-    private void updateNodes(CapabilityInfo capabilityInfo) {
-        Set<Node> connectedNodes = capabilityInfo.getNodes();
-        weatherNodeIds = getNodes(connectedNodes);
-    }
-
-    /**
-     * Picks nearest node with the requested capabilities.
+     * Sends the request to the first node of the route that takes it, nearby nodes first.
      *
-     * @param nodes set of nodes.
-     * @return nearest node.
+     * @param googleApiClient the {@link GoogleApiClient}
+     * @param request         the body of the request.
      */
-    private Set<String> getNodes(Set<Node> nodes) {
-        weatherNodeIds = new HashSet<>();
-        // Find a nearby node or pick one arbitrarily
-        for (Node node : nodes) {
-            weatherNodeIds.add(node.getId());
+    private void sendRequest(GoogleApiClient googleApiClient, byte[] request) {
+        long start = System.nanoTime();
+        for (String nodeId : getRoute(googleApiClient)) {
+            Log.d(TAG, "Sending message to " + nodeId);
+            MessageApi.SendMessageResult result = Wearable.MessageApi.sendMessage(
+                    googleApiClient, nodeId, Constants.WEATHER_REQUEST_PATH, request)
+                    .await(Constants.SEND_MESSAGE_TIMEOUT_S, TimeUnit.SECONDS);
+            if (result.getStatus().isSuccess()) {
+                Log.d(TAG, "Message is delivered");
+                sRequestLatency.recordSince(start);
+                return;
+            }
+            // Failed to send message, try the next node
+            Log.d(TAG, "Failed to deliver a message.");
+            sSendFailures.inc();
         }
-        return weatherNodeIds;
+        // The nodes may be gone, look them up again next time.
+        NodeRouter.getInstance().invalidate();
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
         if (intent.getAction().equals(SunshineWatchFaceService.ACTION_REQUEST_WEATHER)) {
+            WeatherPayload stored = loadStored();
+            if (answerLocally(stored)) {
+                sLocalAnswers.inc();
+                return;
+            }
             Log.d(TAG, "Requesting weather info.");
+            sRemoteRequests.inc();
+            // Tells the handheld what we have, so it does not send the same forecast again.
+            final byte[] request = WeatherRequest.toBytes(stored == null
+                    ? WeatherRequest.NO_DATA_VERSION : stored.getDataVersion());
             new AbstractGoogleApiClientWrapper(this) {
                 @Override
                 public void executeAction(GoogleApiClient googleApiClient) {
-                    setupWeatherUpdateNode(googleApiClient);
-
-                    Random random = new Random();
-                    for (String nodeId : weatherNodeIds) {
-                        Log.d(TAG, "Sending message to " + nodeId);
-                        byte[] data = new byte[10];
-                        random.nextBytes(data);
-                        Wearable.MessageApi.sendMessage(googleApiClient, nodeId,
-                                Constants.WEATHER_REQUEST_PATH, data).setResultCallback(
-                                new ResultCallback<MessageApi.SendMessageResult>() {
-                                    @Override
-                                    public void onResult(@NonNull MessageApi.SendMessageResult
-                                                                 result) {
-                                        if (!result.getStatus().isSuccess()) {
-                                            // Failed to send message
-                                            Log.d(TAG, "Failed to deliver a message.");
-                                        } else {
-                                            Log.d(TAG, "Message is delivered");
-                                        }
-                                    }
-                                }
-                        );
-                    }
+                    sendRequest(googleApiClient, request);
                 }
             }.wrap();
         }
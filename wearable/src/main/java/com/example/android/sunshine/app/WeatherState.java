@@ -0,0 +1,71 @@
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.SparseArray;
+
+import com.geaden.android.shunshine.shared.WeatherPayload;
+
+/**
+ * Immutable forecast as the watch face shows it: the payload from the handheld and the art of
+ * each condition in it, decoded and scaled to its size on the face.
+ * <p/>
+ * Built off the main thread by whoever received the forecast and published through
+ * {@link WeatherStateHolder}, so the watch face never decodes anything itself.
+ *
+ * @author Gennady Denisov
+ */
+final class WeatherState {
+    private final WeatherPayload mPayload;
+    private final SparseArray<Bitmap> mArt;
+
+    private WeatherState(WeatherPayload payload, SparseArray<Bitmap> art) {
+        mPayload = payload;
+        mArt = art;
+    }
+
+    /**
+     * Decodes and scales the art of every condition of the forecast. Should not be called from
+     * the main thread.
+     */
+    static WeatherState create(Resources resources, WeatherPayload payload) {
+        float artSize = resources.getDimension(R.dimen.digital_art_size);
+        SparseArray<Bitmap> art = new SparseArray<>();
+        for (int i = 0; i < payload.getDayCount(); i++) {
+            int weatherId = payload.getWeatherId(i);
+            if (art.indexOfKey(weatherId) >= 0) {
+                continue;
+            }
+            int artResourceId = WeatherIcons.getIconResourceForWeatherCondition(weatherId);
+            art.put(weatherId, artResourceId == -1 ? null
+                    : scale(BitmapFactory.decodeResource(resources, artResourceId), artSize));
+        }
+        return new WeatherState(payload, art);
+    }
+
+    private static Bitmap scale(Bitmap art, float size) {
+        if (art == null || art.getWidth() == 0) {
+            return art;
+        }
+        float scale = size / art.getWidth();
+        Bitmap scaled = Bitmap.createScaledBitmap(art,
+                Math.max(1, Math.round(art.getWidth() * scale)),
+                Math.max(1, Math.round(art.getHeight() * scale)), true);
+        if (scaled != art) {
+            art.recycle();
+        }
+        return scaled;
+    }
+
+    WeatherPayload getPayload() {
+        return mPayload;
+    }
+
+    /**
+     * @return the scaled art of a condition of the forecast, or null if there is none.
+     */
+    Bitmap getArt(int weatherId) {
+        return mArt.get(weatherId);
+    }
+}
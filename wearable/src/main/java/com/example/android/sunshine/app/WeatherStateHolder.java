@@ -0,0 +1,64 @@
+package com.example.android.sunshine.app;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the current {@link WeatherState} from the services that receive the forecast to the
+ * watch face, within the process and without copying it.
+ *
+ * @author Gennady Denisov
+ */
+final class WeatherStateHolder {
+    /**
+     * Notified on the main thread when a new state is published.
+     */
+    interface Listener {
+        void onWeatherStateChanged(WeatherState state);
+    }
+
+    private static final AtomicReference<WeatherState> sState = new AtomicReference<>();
+    private static final CopyOnWriteArrayList<Listener> sListeners = new CopyOnWriteArrayList<>();
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private static final Runnable sNotifyListeners = new Runnable() {
+        @Override
+        public void run() {
+            WeatherState state = sState.get();
+            for (Listener listener : sListeners) {
+                listener.onWeatherStateChanged(state);
+            }
+        }
+    };
+
+    private WeatherStateHolder() {
+    }
+
+    /**
+     * @return the current state, or null if no forecast was received since the process started.
+     */
+    static WeatherState get() {
+        return sState.get();
+    }
+
+    /**
+     * Publishes a new state, from any thread.
+     */
+    static void set(WeatherState state) {
+        sState.set(state);
+        // Listeners only care about the latest state, one pending notification is enough.
+        sMainHandler.removeCallbacks(sNotifyListeners);
+        sMainHandler.post(sNotifyListeners);
+    }
+
+    static void addListener(Listener listener) {
+        sListeners.addIfAbsent(listener);
+    }
+
+    static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+}
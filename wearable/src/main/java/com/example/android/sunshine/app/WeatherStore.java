@@ -0,0 +1,90 @@
+package com.example.android.sunshine.app;
+
+import com.geaden.android.shunshine.shared.WeatherPayload;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Last forecast received from the handheld, kept on the wearable as the payload bytes it came
+ * in. The forecast covers several days, so the watch face moves on to the next day at midnight
+ * and answers its own requests from here while the forecast is fresh, without waking up the
+ * Bluetooth link.
+ *
+ * @author Gennady Denisov
+ */
+final class WeatherStore {
+    static final String FILE_NAME = "weather.payload";
+
+    /**
+     * Longest the handheld goes between syncs (twelve hours plus flex time when it gets pushes),
+     * a forecast older than this is asked for again.
+     */
+    static final long MAX_AGE_MS = TimeUnit.HOURS.toMillis(16);
+
+    private final File mFile;
+
+    WeatherStore(File dir) {
+        mFile = new File(dir, FILE_NAME);
+    }
+
+    /**
+     * Replaces the stored forecast.
+     *
+     * @param bytes the payload as received from the handheld.
+     */
+    void save(byte[] bytes) throws IOException {
+        // Write next to the real file and rename, so readers never see a half written payload.
+        File tmp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(mFile)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            throw new IOException("Unable to rename " + tmp);
+        }
+    }
+
+    /**
+     * @return the stored forecast or null if there is none yet.
+     * @throws IOException if it can not be read, e.g. it was written by an older version.
+     */
+    WeatherPayload load() throws IOException {
+        if (!mFile.exists()) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) mFile.length()];
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return WeatherPayload.fromBytes(bytes);
+    }
+
+    /**
+     * @param now the current time.
+     * @param day the current day in days since the epoch, in the local time zone.
+     * @return whether the forecast can be shown without asking the handheld: it covers the
+     * day and the handheld synced it recently.
+     */
+    static boolean isFresh(WeatherPayload payload, long now, long day) {
+        return payload != null && payload.indexOfDay(day) != -1
+                && now - payload.getDataVersion() < MAX_AGE_MS;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.android.sunshine.app;
+
+import com.geaden.android.shunshine.shared.WeatherRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NodeRouterTest {
+    private static final long NOW = 1450569600000L;
+
+    private NodeRouter mRouter;
+
+    @Before
+    public void setUp() {
+        mRouter = new NodeRouter();
+    }
+
+    @Test
+    public void emptyCacheNeedsLookup() {
+        assertNull(mRouter.getRoute(NOW));
+    }
+
+    @Test
+    public void nearbyNodesComeFirst() {
+        mRouter.setNodes(Arrays.asList("watch-paired-phone"), Arrays.asList("cloud", "tablet"),
+                NOW);
+        assertEquals(Arrays.asList("watch-paired-phone", "cloud", "tablet"),
+                mRouter.getRoute(NOW));
+    }
+
+    @Test
+    public void noNodesIsCachedToo() {
+        mRouter.setNodes(Collections.<String>emptyList(), Collections.<String>emptyList(), NOW);
+        assertTrue(mRouter.getRoute(NOW + 1).isEmpty());
+    }
+
+    @Test
+    public void cacheExpires() {
+        mRouter.setNodes(Arrays.asList("phone"), Collections.<String>emptyList(), NOW);
+        assertEquals(1, mRouter.getRoute(NOW + NodeRouter.CACHE_TTL_MS - 1).size());
+        assertNull(mRouter.getRoute(NOW + NodeRouter.CACHE_TTL_MS));
+        assertNull("Error: Clock going back should not keep the cache forever",
+                mRouter.getRoute(NOW - 1));
+    }
+
+    @Test
+    public void changeEventReplacesNodes() {
+        mRouter.setNodes(Arrays.asList("old"), Collections.<String>emptyList(), NOW);
+        mRouter.setNodes(Collections.<String>emptyList(), Arrays.asList("new"), NOW + 1);
+        assertEquals(Arrays.asList("new"), mRouter.getRoute(NOW + 1));
+    }
+
+    @Test
+    public void invalidateForcesLookup() {
+        mRouter.setNodes(Arrays.asList("phone"), Collections.<String>emptyList(), NOW);
+        mRouter.invalidate();
+        assertNull(mRouter.getRoute(NOW));
+    }
+
+    @Test
+    public void requestCarriesDataVersion() {
+        assertEquals(NOW, WeatherRequest.getDataVersion(WeatherRequest.toBytes(NOW)));
+        assertEquals("Error: Requests of older wearables have random bodies",
+                WeatherRequest.NO_DATA_VERSION, WeatherRequest.getDataVersion(new byte[10]));
+        assertEquals(WeatherRequest.NO_DATA_VERSION, WeatherRequest.getDataVersion(null));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.android.sunshine.app;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class WatchFaceTextTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long HOUR = 60 * MINUTE;
+    // 2015-12-20 00:00 UTC
+    private static final long MIDNIGHT = 1450569600000L;
+
+    private static final float CENTER_X = 160;
+    private static final float COLON_WIDTH = 5;
+
+    private WatchFaceText mText;
+    private final float[] mHourWidths = new float[24];
+    private final float[] mMinuteWidths = new float[60];
+
+    @Before
+    public void setUp() {
+        mText = new WatchFaceText("EEE, MMM d yyyy", Locale.US, TimeZone.getTimeZone("UTC"));
+        for (int i = 0; i < mHourWidths.length; i++) {
+            mHourWidths[i] = i;
+        }
+        for (int i = 0; i < mMinuteWidths.length; i++) {
+            mMinuteWidths[i] = i;
+        }
+    }
+
+    @Test
+    public void twoDigitTable() {
+        assertEquals("00", WatchFaceText.TWO_DIGITS[0]);
+        assertEquals("07", WatchFaceText.TWO_DIGITS[7]);
+        assertEquals("10", WatchFaceText.TWO_DIGITS[10]);
+        assertEquals("59", WatchFaceText.TWO_DIGITS[59]);
+    }
+
+    @Test
+    public void timeFields() {
+        mText.setTime(MIDNIGHT + 13 * HOUR + 5 * MINUTE + 59 * 1000);
+        assertEquals("13", mText.getHourString());
+        assertEquals("05", mText.getMinuteString());
+        assertEquals("SUN, DEC 20 2015", mText.getDateString());
+
+        mText.setTime(MIDNIGHT - 1);
+        assertEquals("23", mText.getHourString());
+        assertEquals("59", mText.getMinuteString());
+        assertEquals("SAT, DEC 19 2015", mText.getDateString());
+    }
+
+    @Test
+    public void timeZoneOffsetIsApplied() {
+        mText.setTimeZone(TimeZone.getTimeZone("GMT+05:30"));
+        mText.setTime(MIDNIGHT + 20 * HOUR);
+        assertEquals("01", mText.getHourString());
+        assertEquals("30", mText.getMinuteString());
+        assertEquals("MON, DEC 21 2015", mText.getDateString());
+    }
+
+    @Test
+    public void dateIsFormattedOncePerDay() {
+        mText.setTime(MIDNIGHT + HOUR);
+        String date = mText.getDateString();
+        int version = mText.getDateVersion();
+        mText.setTime(MIDNIGHT + 23 * HOUR);
+        assertSame(date, mText.getDateString());
+        assertEquals(version, mText.getDateVersion());
+
+        mText.setTime(MIDNIGHT + 25 * HOUR);
+        assertNotEquals(version, mText.getDateVersion());
+        assertEquals("MON, DEC 21 2015", mText.getDateString());
+    }
+
+    @Test
+    public void timeZoneChangeFormatsDateAgain() {
+        mText.setTime(MIDNIGHT + HOUR);
+        int version = mText.getDateVersion();
+        mText.setTimeZone(TimeZone.getTimeZone("GMT-05:00"));
+        mText.setTime(MIDNIGHT + HOUR);
+        assertNotEquals(version, mText.getDateVersion());
+        assertEquals("SAT, DEC 19 2015", mText.getDateString());
+    }
+
+    @Test
+    public void localeChangeFormatsDateAgain() {
+        mText.setTime(MIDNIGHT + HOUR);
+        int version = mText.getDateVersion();
+        mText.setLocale(Locale.US);
+        mText.setTime(MIDNIGHT + HOUR);
+        assertEquals(version, mText.getDateVersion());
+
+        mText.setLocale(Locale.GERMANY);
+        mText.setTime(MIDNIGHT + HOUR);
+        assertNotEquals(version, mText.getDateVersion());
+        SimpleDateFormat format = new SimpleDateFormat("EEE, MMM d yyyy", Locale.GERMANY);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertEquals(format.format(new Date(MIDNIGHT + HOUR)).toUpperCase(Locale.GERMANY),
+                mText.getDateString());
+    }
+
+    @Test
+    public void timeLineIsCentered() {
+        mText.layoutTime(MIDNIGHT + 13 * HOUR + 5 * MINUTE, CENTER_X, mHourWidths, COLON_WIDTH,
+                mMinuteWidths);
+        assertEquals("13", mText.getHourString());
+        // 13 + 5 + 5 wide, centered
+        assertEquals(CENTER_X - 11.5f, mText.getHourX(), 1e-6);
+        assertEquals(mText.getHourX() + 13, mText.getColonX(), 1e-6);
+        assertEquals(mText.getColonX() + COLON_WIDTH, mText.getMinuteX(), 1e-6);
+        assertEquals(CENTER_X + 11.5f, mText.getMinuteX() + mMinuteWidths[5], 1e-6);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.sunshine.app;
+
+import com.geaden.android.shunshine.shared.WeatherPayload;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class WeatherEventBatcherTest {
+    private static final int BURST = 20;
+    private static final int FIRST_DAY = 16789;
+
+    private WeatherEventBatcher mBatcher;
+    private final List<WeatherPayload> mApplied = new ArrayList<>();
+    private final WeatherEventBatcher.Target mTarget = new WeatherEventBatcher.Target() {
+        @Override
+        public void onWeather(byte[] bytes, WeatherPayload payload) {
+            mApplied.add(payload);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mBatcher = new WeatherEventBatcher();
+        mApplied.clear();
+    }
+
+    private static byte[] payload(long dataVersion) {
+        return WeatherPayload.create(dataVersion, FIRST_DAY, true, new int[]{800},
+                new double[]{dataVersion}, new double[]{0}).toBytes();
+    }
+
+    @Test
+    public void burstCollapsesToNewestEvent() throws IOException {
+        // What the data layer delivers after a reconnect: every update queued meanwhile
+        for (int i = 1; i <= BURST; i++) {
+            mBatcher.add(payload(i), 1000 + i);
+        }
+        assertEquals(BURST, mBatcher.size());
+
+        WeatherPayload applied = mBatcher.flush(mTarget);
+        assertEquals("Error: A burst should be decoded and shown once", 1, mApplied.size());
+        assertEquals(BURST, applied.getDataVersion());
+        assertEquals(BURST, mApplied.get(0).getHigh(0), 1e-9);
+        assertEquals(1000 + BURST, mBatcher.getSentAt());
+
+        assertEquals(0, mBatcher.size());
+        assertNull("Error: Flushed batch should start empty", mBatcher.flush(mTarget));
+        assertEquals(WeatherEventBatcher.NOT_STAMPED, mBatcher.getSentAt());
+        assertEquals(1, mApplied.size());
+    }
+
+    @Test
+    public void unstampedNewestEventClearsSendTime() throws IOException {
+        mBatcher.add(payload(1), 1000);
+        mBatcher.add(payload(2), WeatherEventBatcher.NOT_STAMPED);
+        assertEquals(2, mBatcher.flush(mTarget).getDataVersion());
+        assertEquals(WeatherEventBatcher.NOT_STAMPED, mBatcher.getSentAt());
+    }
+
+    @Test
+    public void unreadableNewestEventFallsBackToOlderOne() throws IOException {
+        mBatcher.add(payload(1), 1000);
+        mBatcher.add(payload(2), 1001);
+        mBatcher.add(new byte[]{42}, 1002);
+        mBatcher.add(null, 1003);
+        WeatherPayload applied = mBatcher.flush(mTarget);
+        assertEquals(2, applied.getDataVersion());
+        assertEquals(1, mApplied.size());
+        assertEquals(2, mApplied.get(0).getDataVersion());
+        assertEquals(1001, mBatcher.getSentAt());
+        assertEquals(0, mBatcher.size());
+    }
+
+    @Test
+    public void batchWithoutReadableEventIsNotApplied() {
+        mBatcher.add(new byte[]{42}, 1000);
+        mBatcher.add(null, 1001);
+        try {
+            mBatcher.flush(mTarget);
+            fail("Error: Unreadable payloads should be reported");
+        } catch (IOException expected) {
+        }
+        assertEquals(0, mApplied.size());
+        assertEquals(0, mBatcher.size());
+        assertEquals(WeatherEventBatcher.NOT_STAMPED, mBatcher.getSentAt());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.android.sunshine.app;
+
+import com.geaden.android.shunshine.shared.WeatherPayload;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WeatherStoreTest {
+    private static final long HOUR = 60 * 60 * 1000;
+    // 2015-12-20 00:00 UTC
+    private static final long MIDNIGHT = 1450569600000L;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private File mDir;
+    private WeatherStore mStore;
+
+    @Before
+    public void setUp() throws IOException {
+        mDir = File.createTempFile("weather", "store");
+        assertTrue(mDir.delete() && mDir.mkdir());
+        mStore = new WeatherStore(mDir);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = mDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+        assertTrue(mDir.delete());
+    }
+
+    /**
+     * Three days starting today, synced by the handheld at the given time.
+     */
+    private static WeatherPayload forecast(long syncedAt) {
+        return WeatherPayload.create(syncedAt, (int) WatchFaceText.getLocalDay(MIDNIGHT, UTC),
+                true, new int[]{800, 500, 600}, new double[]{20, 15, 1},
+                new double[]{10, 8, -5});
+    }
+
+    @Test
+    public void missingStoreLoadsNothing() throws IOException {
+        assertNull(mStore.load());
+    }
+
+    @Test
+    public void savedPayloadLoadsBack() throws IOException {
+        mStore.save(forecast(MIDNIGHT).toBytes());
+        WeatherPayload payload = mStore.load();
+        assertEquals(3, payload.getDayCount());
+        assertEquals(MIDNIGHT, payload.getDataVersion());
+        assertEquals(600, payload.getWeatherId(2));
+        assertFalse("Error: Temporary file should be renamed",
+                new File(mDir, WeatherStore.FILE_NAME + ".tmp").exists());
+    }
+
+    @Test
+    public void newPayloadReplacesStored() throws IOException {
+        mStore.save(forecast(MIDNIGHT).toBytes());
+        mStore.save(forecast(MIDNIGHT + HOUR).toBytes());
+        assertEquals(MIDNIGHT + HOUR, mStore.load().getDataVersion());
+    }
+
+    @Test
+    public void corruptStoreIsReported() throws IOException {
+        FileOutputStream out = new FileOutputStream(new File(mDir, WeatherStore.FILE_NAME));
+        out.write(new byte[]{42});
+        out.close();
+        try {
+            mStore.load();
+            fail("Error: Corrupt store should not load");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void forecastAdvancesAtMidnight() {
+        WeatherPayload payload = forecast(MIDNIGHT);
+        long beforeMidnight = MIDNIGHT + 24 * HOUR - 1;
+        assertEquals(0, payload.indexOfDay(WatchFaceText.getLocalDay(beforeMidnight, UTC)));
+        assertEquals(1, payload.indexOfDay(WatchFaceText.getLocalDay(beforeMidnight + 1, UTC)));
+        assertEquals(-1, payload.indexOfDay(WatchFaceText.getLocalDay(MIDNIGHT - 1, UTC)));
+        assertEquals(-1, payload.indexOfDay(WatchFaceText.getLocalDay(MIDNIGHT + 72 * HOUR, UTC)));
+    }
+
+    @Test
+    public void freshWhileRecentAndCoveringToday() {
+        WeatherPayload payload = forecast(MIDNIGHT);
+        long now = MIDNIGHT + WeatherStore.MAX_AGE_MS - 1;
+        assertTrue(WeatherStore.isFresh(payload, now, WatchFaceText.getLocalDay(now, UTC)));
+
+        now = MIDNIGHT + WeatherStore.MAX_AGE_MS;
+        assertFalse("Error: Old forecast should be asked for again",
+                WeatherStore.isFresh(payload, now, WatchFaceText.getLocalDay(now, UTC)));
+
+        // Synced recently, but the forecast ran out
+        payload = forecast(MIDNIGHT + 72 * HOUR);
+        now = MIDNIGHT + 73 * HOUR;
+        assertFalse(WeatherStore.isFresh(payload, now, WatchFaceText.getLocalDay(now, UTC)));
+
+        assertFalse(WeatherStore.isFresh(null, now, WatchFaceText.getLocalDay(now, UTC)));
+    }
+}